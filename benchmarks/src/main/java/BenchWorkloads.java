@@ -0,0 +1,252 @@
+import adjust.bench.Workloads;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class does the work the JMH benchmarks measure, against a synthetic database made by SyntheticData. It is in
+ * the default package so it can use the program's classes, and the benchmarks reach it through the Workloads
+ * interface. See Workloads for how to run them.
+ */
+public final class BenchWorkloads implements Workloads {
+    // Seed for the synthetic databases and the review order, so every run measures the same work.
+    private static final long SEED = 20221018L;
+
+    // Longest synthetic line, in plies.
+    private static final int LINE_PLIES = 10;
+
+    // Share of the synthetic cards that are new.
+    private static final double NEW_FRACTION = 0.5;
+
+    // Time the synthetic review histories end at. The fixtures are made with this time, and their copies are moved to
+    // the present when they are opened, so the same cards are due on every run.
+    private static final long REFERENCE_TIME = SyntheticData.DEFAULT_REFERENCE_TIME;
+
+    // Version of the fixtures, to be raised whenever SyntheticData makes different rows from the same options, so that
+    // fixtures built by an older version are not used.
+    private static final int FIXTURE_VERSION = 2;
+
+    // Size of the board drawn by paintPosition, in pixels.
+    private static final int BOARD_SIZE = 480;
+
+    // The primary key of the deck SyntheticData creates first.
+    private static final int DECK_ID = 1;
+
+    // Copies of the fixtures moved to the present, by number of cards. Each is made once per process, as moving a
+    // large database takes several seconds, and every benchmark run in JMH is a process of its own.
+    private static final Map<Integer, Path> presentCopies = new HashMap<>();
+
+    // The copy of the database that is worked on.
+    private Path work;
+
+    // The review session used by nextCard and gradeNextCard.
+    private ReviewEngine engine;
+
+    // The positions drawn by paintPosition, and the board and image they are drawn on.
+    private final List<String> fens = new ArrayList<>();
+    private final Position pos = new Position();
+    private ChessBoardComponent board;
+    private BufferedImage image;
+    private Graphics2D graphics;
+
+    // The moves.csv file read by readMovesRow, the reader that is reading it, and the position used for the keys.
+    private byte[] csv;
+    private CsvReader reader;
+    private final Position check = new Position();
+
+    /**
+     * Constructor for BenchWorkloads. Workloads.open calls this by name.
+     */
+    public BenchWorkloads() {}
+
+    @Override
+    public void openDatabase(int cards) throws Exception {
+        // The board is drawn into an image, so no display is needed.
+        System.setProperty("java.awt.headless", "true");
+        Class.forName("org.sqlite.JDBC");
+
+        Path present = presentCopies.get(cards);
+        if (present == null) {
+            present = BenchWorkloads.copyToPresent(cards);
+            presentCopies.put(cards, present);
+        }
+        work = Paths.get("bench-work-" + cards + ".db");
+        BenchWorkloads.deleteDatabase(work);
+        Files.copy(present, work, StandardCopyOption.REPLACE_EXISTING);
+
+        ConnectionManager.Settings settings = ConnectionManager.Settings.fromSystemProperties();
+        Main.connections = new ConnectionManager("jdbc:sqlite:" + work, settings);
+        Main.conn = Main.connections.getWriter();
+        SchemaMigrator.migrate(Main.conn);
+    }
+
+    @Override
+    public Object loadReview() throws Exception {
+        ReviewEngine session = new ReviewEngine(DECK_ID, SEED, true);
+        session.endSession();
+        return session;
+    }
+
+    @Override
+    public void startReview(boolean writeBehind) throws Exception {
+        engine = new ReviewEngine(DECK_ID, SEED, writeBehind);
+    }
+
+    @Override
+    public Object nextCard() throws Exception { return engine.getNextCard(); }
+
+    @Override
+    public void gradeNextCard() throws Exception { engine.updateCard(4, engine.getNextCard().getId()); }
+
+    @Override
+    public int countDue() throws SQLException {
+        PreparedStatement stmt = Main.conn.prepareStatement("SELECT COUNT(*) FROM CARDS WHERE DECKS_ID = ? " +
+                "AND DUE_AT < ?");
+        stmt.setInt(1, DECK_ID);
+        stmt.setLong(2, System.currentTimeMillis());
+        ResultSet rs = stmt.executeQuery();
+        int due = rs.next() ? rs.getInt(1) : 0;
+        rs.close();
+        stmt.close();
+        return due;
+    }
+
+    @Override
+    public void prepareRender() throws SQLException {
+        Statement stmt = Main.conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT BEFORE_FEN FROM MOVES LIMIT 1000");
+        while (rs.next()) { fens.add(rs.getString(1)); }
+        rs.close();
+        stmt.close();
+
+        board = new ChessBoardComponent();
+        board.setSize(BOARD_SIZE, BOARD_SIZE);
+        image = new BufferedImage(BOARD_SIZE, BOARD_SIZE, BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+    }
+
+    @Override
+    public void paintPosition(int i) throws Exception {
+        pos.setFEN(fens.get(i % fens.size()));
+        board.setPosition(pos, i % 2 == 0);
+        board.paint(graphics);
+    }
+
+    @Override
+    public void prepareImport() throws SQLException {
+        StringBuilder out = new StringBuilder();
+        Statement stmt = Main.conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT ID, ORDER_IN_LINE, BEFORE_FEN, AFTER_FEN, LINES_ID FROM MOVES " +
+                "LIMIT 100000");
+        while (rs.next()) {
+            out.append(rs.getInt(1)).append(',').append(rs.getInt(2)).append(",\"").append(rs.getString(3))
+                    .append("\",\"").append(rs.getString(4)).append("\",").append(rs.getInt(5)).append('\n');
+        }
+        rs.close();
+        stmt.close();
+        csv = out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void readMovesRow() throws Exception {
+        if (reader == null || !reader.next()) {
+            reader = new CsvReader(Channels.newChannel(new ByteArrayInputStream(csv)));
+            reader.next();
+        }
+        reader.getInt(0);
+        reader.getInt(1);
+        Zobrist.key(reader.getField(2), check);
+        Zobrist.key(reader.getField(3), check);
+        reader.getString(2);
+        reader.getString(3);
+        reader.getInt(4);
+    }
+
+    @Override
+    public void loadDeckStats() throws SQLException { DeckStats.load(Main.conn); }
+
+    @Override
+    public Object deckSummaries() { return DeckStats.getSummaries(System.currentTimeMillis()); }
+
+    @Override
+    public void close() throws Exception {
+        if (graphics != null) { graphics.dispose(); }
+        if (engine != null) { engine.endSession(); }
+        Main.connections.close();
+        BenchWorkloads.deleteDatabase(work);
+    }
+
+    /**
+     * Copies the fixture with the given number of cards, building it first if needed, and moves every review time in
+     * the copy forward by the time between REFERENCE_TIME and now.
+     * @param cards The number of cards.
+     * @return The copy.
+     * @throws IOException If the fixture cannot be copied, throw an exception.
+     * @throws SQLException If the fixture cannot be built or the copy cannot be updated, throw an exception.
+     */
+    private static Path copyToPresent(int cards) throws IOException, SQLException {
+        Path fixture = Paths.get(BenchWorkloads.fixtureName(cards));
+        if (!Files.exists(fixture)) { BenchWorkloads.buildFixture(fixture, cards); }
+
+        Path present = Paths.get("bench-present-" + cards + ".db");
+        BenchWorkloads.deleteDatabase(present);
+        Files.copy(fixture, present);
+
+        // DUE_AT follows LAST_REVIEW through the CARDS_DUE_AT_UPDATE trigger.
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + present)) {
+            PreparedStatement stmt = conn.prepareStatement("UPDATE CARDS SET LAST_REVIEW = LAST_REVIEW + ?");
+            stmt.setLong(1, System.currentTimeMillis() - REFERENCE_TIME);
+            stmt.executeUpdate();
+            stmt.close();
+        }
+        return present;
+    }
+
+    // Names a fixture after the options it is built with, so a fixture is only reused for the same options.
+    private static String fixtureName(int cards) {
+        return String.format(Locale.ROOT, "bench-v%d-c%d-p%d-n%.2f-s%d-r%d.db", FIXTURE_VERSION, cards, LINE_PLIES,
+                NEW_FRACTION, SEED, REFERENCE_TIME);
+    }
+
+    /**
+     * Builds a database with one deck and the given number of cards, using SyntheticData with the benchmark's options.
+     * @param file The database file to create.
+     * @param cards The number of cards.
+     * @throws SQLException If the database cannot be written, throw an exception.
+     */
+    private static void buildFixture(Path file, int cards) throws SQLException {
+        SyntheticData.Options options = new SyntheticData.Options();
+        options.setCardsPerDeck(cards);
+        options.setMaxPlies(LINE_PLIES);
+        options.setNewFraction(NEW_FRACTION);
+        options.setSeed(SEED);
+        options.setReferenceTime(REFERENCE_TIME);
+        SyntheticData.generateFile(file.toString(), options);
+    }
+
+    // Deletes a database file together with its WAL and shared-memory files.
+    private static void deleteDatabase(Path file) throws IOException {
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            Files.deleteIfExists(Paths.get(file + suffix));
+        }
+    }
+}
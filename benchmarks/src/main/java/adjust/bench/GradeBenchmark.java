@@ -0,0 +1,62 @@
+package adjust.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of grading a card, which commits the new SuperMemo2 parameters. Every grade moves a card out of the due
+ * queue, so the deck would run out of due cards in a timed iteration. Instead, each iteration grades a fixed number of
+ * cards on a fresh copy of the database, and the time reported is for the whole batch.
+ *
+ * Both ways of writing a grade are measured. Without write-behind, every grade is committed before the next card is
+ * shown. With it, as in BoardGUI, grades are queued and written in batches on the database thread, so the time is what
+ * the user waits for. Grades still queued at the end of an iteration are written when the session ends, which is not
+ * timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = GradeBenchmark.GRADES)
+@Measurement(iterations = 10, batchSize = GradeBenchmark.GRADES)
+@Fork(1)
+public class GradeBenchmark {
+    // Grades per iteration. The smallest database has a few hundred due cards.
+    static final int GRADES = 200;
+
+    // The number of cards in the database.
+    @Param({"1000", "100000", "1000000"})
+    public int cards;
+
+    // Whether grades are written behind, as in BoardGUI, or committed one at a time.
+    @Param({"false", "true"})
+    public boolean writeBehind;
+
+    private Workloads workloads;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        workloads = Workloads.open(cards);
+        workloads.startReview(writeBehind);
+        if (workloads.countDue() < GRADES) {
+            throw new IllegalStateException("The database has fewer than " + GRADES + " due cards!");
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception { workloads.close(); }
+
+    @Benchmark
+    public void gradeNextCard() throws Exception { workloads.gradeNextCard(); }
+}
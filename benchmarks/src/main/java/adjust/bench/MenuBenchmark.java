@@ -0,0 +1,49 @@
+package adjust.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the main menu: rebuilding the deck counts when the program starts, and summarising them whenever the
+ * menu is shown.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MenuBenchmark {
+    // The number of cards in the database.
+    @Param({"1000", "100000", "1000000"})
+    public int cards;
+
+    private Workloads workloads;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workloads = Workloads.open(cards);
+        workloads.loadDeckStats();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception { workloads.close(); }
+
+    @Benchmark
+    public void loadDeckStats() throws Exception { workloads.loadDeckStats(); }
+
+    @Benchmark
+    public Object deckSummaries() { return workloads.deckSummaries(); }
+}
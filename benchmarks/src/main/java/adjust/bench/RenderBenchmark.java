@@ -0,0 +1,44 @@
+package adjust.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of parsing a position and drawing the board, as BoardGUI does for every card. The size of the database
+ * does not matter here, so only the smallest is used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+    private Workloads workloads;
+
+    // Number of positions drawn so far, which picks the next position.
+    private int calls = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workloads = Workloads.open(1000);
+        workloads.prepareRender();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception { workloads.close(); }
+
+    @Benchmark
+    public void paintPosition() throws Exception { workloads.paintPosition(calls++); }
+}
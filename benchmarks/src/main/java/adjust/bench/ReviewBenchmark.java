@@ -0,0 +1,49 @@
+package adjust.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of starting a review session: loading the due cards of a deck, and getting the card that is due next.
+ * The sessions write grades behind, as in BoardGUI, though no grades are given here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReviewBenchmark {
+    // The number of cards in the database.
+    @Param({"1000", "100000", "1000000"})
+    public int cards;
+
+    private Workloads workloads;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workloads = Workloads.open(cards);
+        workloads.startReview(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception { workloads.close(); }
+
+    @Benchmark
+    public Object loadReview() throws Exception { return workloads.loadReview(); }
+
+    @Benchmark
+    public Object nextCard() throws Exception { return workloads.nextCard(); }
+}
@@ -0,0 +1,128 @@
+package adjust.bench;
+
+/**
+ * This interface is the work the benchmarks measure: loading and grading review cards, drawing the board, reading an
+ * import file row by row, and summarising the decks for the main menu. Each method is one call of the code being
+ * measured, against a synthetic database made by SyntheticData.
+ *
+ * JMH only runs benchmarks in a named package, and the program's classes are in the default package, which a named
+ * package cannot refer to. The work is therefore done by BenchWorkloads, in the default package, which implements this
+ * interface and is loaded by name, once per benchmark, before anything is measured.
+ *
+ * Build the benchmarks with "mvn package" from the top of the repository, and run them from there too, so the piece
+ * images in img are found:
+ *
+ *     java -jar benchmarks/target/benchmarks.jar
+ *
+ * Each benchmark reports the 50th, 90th, 99th percentile and maximum time of a call. Add "-prof gc" for the bytes
+ * allocated per call, "-bm thrpt" for the throughput instead, "-p cards=1000,100000" to leave out the largest database,
+ * and "-rf json -rff bench-results.json" to write the results to a file that two runs can be compared with. By default
+ * the databases have 1000, 100000, and 1000000 cards. Each database is built the first time it is needed and kept in
+ * the current directory as a bench-v*.db file named after the options it was built with, and every run works on a
+ * fresh copy of it. The largest takes under a minute to build and about 500 MB of disk, and three times that while
+ * its copies are in use.
+ *
+ * The review histories of the databases end at a fixed time, and each copy has its review times moved forward to
+ * when it is opened, so the same cards are due on every run.
+ */
+public interface Workloads {
+    // The class in the default package that implements this interface.
+    String IMPLEMENTATION = "BenchWorkloads";
+
+    /**
+     * Opens a fresh copy of the benchmark database with the given number of cards, building it first if needed.
+     * @param cards The number of cards in the database.
+     * @return The workloads, ready to run against the database.
+     * @throws Exception If the database cannot be built or opened, throw an exception.
+     */
+    static Workloads open(int cards) throws Exception {
+        Workloads workloads = (Workloads) Class.forName(IMPLEMENTATION).getDeclaredConstructor().newInstance();
+        workloads.openDatabase(cards);
+        return workloads;
+    }
+
+    /**
+     * Opens a fresh copy of the benchmark database. Called once by Workloads.open.
+     * @param cards The number of cards in the database.
+     * @throws Exception If the database cannot be built or opened, throw an exception.
+     */
+    void openDatabase(int cards) throws Exception;
+
+    /**
+     * Loads the due cards of the benchmark deck into a new review session that writes grades behind, as BoardGUI does,
+     * and ends the session again, so no writer threads are left running.
+     * @return The session.
+     * @throws Exception If the cards cannot be loaded, throw an exception.
+     */
+    Object loadReview() throws Exception;
+
+    /**
+     * Starts the review session that nextCard and gradeNextCard work on.
+     * @param writeBehind If true, grades are queued and written in batches, as in BoardGUI. If false, each grade is
+     * committed before gradeNextCard returns.
+     * @throws Exception If the cards cannot be loaded, throw an exception.
+     */
+    void startReview(boolean writeBehind) throws Exception;
+
+    /**
+     * @return The card of the review session that is due next.
+     * @throws Exception If the card cannot be read, throw an exception.
+     */
+    Object nextCard() throws Exception;
+
+    /**
+     * Grades the card that is due next, which moves the card out of the due queue and commits the grade, or queues it
+     * if the session writes behind.
+     * @throws Exception If the grade cannot be written, throw an exception.
+     */
+    void gradeNextCard() throws Exception;
+
+    /**
+     * @return The number of cards in the benchmark deck that are due now.
+     * @throws Exception If the cards cannot be counted, throw an exception.
+     */
+    int countDue() throws Exception;
+
+    /**
+     * Reads the positions that paintPosition draws.
+     * @throws Exception If the positions cannot be read, throw an exception.
+     */
+    void prepareRender() throws Exception;
+
+    /**
+     * Parses a position and draws it on the board, as BoardGUI does for every card.
+     * @param i The number of the call, which picks the position and the side the board is shown from.
+     * @throws Exception If the position cannot be drawn, throw an exception.
+     */
+    void paintPosition(int i) throws Exception;
+
+    /**
+     * Writes the moves of the database to a moves.csv file in memory, for readMovesRow.
+     * @throws Exception If the moves cannot be read, throw an exception.
+     */
+    void prepareImport() throws Exception;
+
+    /**
+     * Reads the next row of the moves.csv file and computes its Zobrist keys, as ReadCSV does for every row. The file
+     * starts again from the top once every row has been read.
+     * @throws Exception If the row cannot be read, throw an exception.
+     */
+    void readMovesRow() throws Exception;
+
+    /**
+     * Rebuilds the deck counts, as the program does when it starts.
+     * @throws Exception If the counts cannot be read, throw an exception.
+     */
+    void loadDeckStats() throws Exception;
+
+    /**
+     * @return The summary of every deck, as the main menu shows it.
+     */
+    Object deckSummaries();
+
+    /**
+     * Closes the database and deletes the copy that was worked on.
+     * @throws Exception If the database cannot be closed, throw an exception.
+     */
+    void close() throws Exception;
+}
@@ -1,9 +1,12 @@
 import javax.swing.JPanel;
-import javax.swing.DefaultListModel;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
 import javax.swing.JScrollPane;
 import javax.swing.JList;
+import javax.swing.JLabel;
+import javax.swing.JTextField;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.border.EmptyBorder;
 import javax.swing.ListSelectionModel;
 import javax.swing.BoxLayout;
@@ -11,17 +14,19 @@ import java.awt.event.ActionEvent;
 import java.awt.Dimension;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This GUI class defines the behavior of the submenu that allows you to add and remove cards from your review decks.
  * @author Jack Vandeleuv
  */
-public class AddCardsGUI implements ActionListener {
+public class AddCardsGUI implements ActionListener, DocumentListener {
     // Primary key identifying the deck we are currently modifying.
     private final int deckID;
 
@@ -34,15 +39,16 @@ public class AddCardsGUI implements ActionListener {
     private final MainMenuGUI mainMenu;
 
     // This model contains a list of LineListItem objects, each one of which is a set of data about a particular line
-    // that gets displayed on the GUI as an option that the user can select.
-    private final DefaultListModel<LineListItem> linesModel = new DefaultListModel<>();
+    // that gets displayed on the GUI as an option that the user can select. Only the lines on the pages being
+    // displayed are made into LineListItem objects.
+    private final PagedListModel<LineListItem> linesModel = new PagedListModel<>(AddCardsGUI::loadLines);
 
     // This JList displays the contents of the linesModel.
     private final JList<LineListItem> linesList = new JList<>(linesModel);
 
     // This model contains a list of CardListItem objects, each of which is a user-created card with one associated
-    // move in the MOVES table.
-    private final DefaultListModel<CardListItem> cardsModel = new DefaultListModel<>();
+    // move in the MOVES table. Only the cards on the pages being displayed are read from the database.
+    private final PagedListModel<CardListItem> cardsModel = new PagedListModel<>(this::loadCards);
 
     // JList that displays the cardsModel.
     private final JList<CardListItem> cardsList = new JList<>(cardsModel);
@@ -61,16 +67,28 @@ public class AddCardsGUI implements ActionListener {
     // "WHITE" toggled, and they hit the makeCardsBtn, they will only make cards for white's moves in the selected line.
     private final JComboBox<String> clrSel = new JComboBox<>(new String[]{"White", "Black"});
 
+    // Search fields for the list of lines. The first filters by the start of the ECO code, and the second takes either
+    // the first moves of a line or words from its name, ECO code, or moves. The list is refreshed on every keystroke.
+    private final JTextField ecoField = new JTextField(5);
+    private final JTextField searchField = new JTextField(40);
+
+    // Reports the outcome of the last time cards were made.
+    private final JLabel statusLabel = new JLabel(" ");
+
+    // Progress bar shown while cards are being loaded, made, or deleted. The buttons are disabled until it is done.
+    private final BusyIndicator busy = new BusyIndicator(makeCardsBtn, deleteBtn, backBtn);
+
+    // Incremented for every search. A search whose results arrive after a newer search was started is thrown away, so
+    // the list always matches what is in the search fields.
+    private int searchNumber = 0;
+
     /**
      * This class is the GUI for modifying the cards contained in a given deck.
      * @param newCardsMenu The JPanel on which this GUI is painted.
      * @param deckPK Primary key that identifies the deck currently being reviewed.
      * @param mainGUIObj The main menu GUI, which we repaint before returning the user to it.
-     * @throws ClassNotFoundException If the methods interacting with the database cannot successfully execute.
-     * @throws SQLException If a query fails.
      */
-    public AddCardsGUI(JPanel newCardsMenu, int deckPK, MainMenuGUI mainGUIObj)
-            throws ClassNotFoundException, SQLException {
+    public AddCardsGUI(JPanel newCardsMenu, int deckPK, MainMenuGUI mainGUIObj) {
 
         // Set the matching instance variables equal to each of the constructor's parameters.
         mainMenu = mainGUIObj;
@@ -98,6 +116,15 @@ public class AddCardsGUI implements ActionListener {
         clrSel.addActionListener(this);
         deleteBtn.addActionListener(this);
         backBtn.addActionListener(this);
+        ecoField.getDocument().addDocumentListener(this);
+        searchField.getDocument().addDocumentListener(this);
+
+        // Wrap the search fields and their labels together in one panel.
+        JPanel searchBox = new JPanel();
+        searchBox.add(new JLabel("ECO:"));
+        searchBox.add(ecoField);
+        searchBox.add(new JLabel("Search:"));
+        searchBox.add(searchField);
 
         // Wrap the different buttons and the ComboBox together in one panel.
         JPanel btnBox = new JPanel();
@@ -105,8 +132,11 @@ public class AddCardsGUI implements ActionListener {
         btnBox.add(deleteBtn);
         btnBox.add(makeCardsBtn);
         btnBox.add(clrSel);
+        btnBox.add(busy);
+        btnBox.add(statusLabel);
 
-        // Add both scrollers and the JPanel containing buttons and the ComboBox.
+        // Add the search fields, both scrollers, and the JPanel containing buttons and the ComboBox.
+        cardsMenu.add(searchBox);
         cardsMenu.add(totalScroller);
         cardsMenu.add(btnBox);
         cardsMenu.add(cardsScroller);
@@ -120,8 +150,9 @@ public class AddCardsGUI implements ActionListener {
         // Update JList with all the available lines found in the database.
         this.queryTotalLines("", "");
 
-        // Query database for an updated list of all review cards created by the user so far.
-        this.queryCards();
+        // Query database for an updated list of all review cards created by the user so far. The query only reads, so
+        // it runs on a reader connection, and the list is filled in on the Event Dispatch Thread once it has run.
+        busy.read("queryCards", this::queryCards, this::showCards);
 
         // Validate and paint the GUI panel.
         cardsMenu.revalidate();
@@ -129,278 +160,184 @@ public class AddCardsGUI implements ActionListener {
     }
 
     /**
-     * This method pulls all the different opening lines stored in the database, filtered by two search parameters.
-     * @param ecoSearch User defined search parameter that filters our lines by ECO code. Not implemented yet.
-     * @param searchTerm User defined search parameter that filters our lines by variation name. Not implemented yet.
-     * @throws SQLException If the query cannot be executed, throw an error.
+     * This method lists the opening lines that match two search parameters. Moves are looked up in LineIndex, which
+     * holds every line in memory. Words are looked up in the LINES_FTS full-text index through LineSearch, and the
+     * best matches are listed first.
+     * @param ecoSearch User defined search parameter that filters our lines by the start of their ECO code.
+     * @param searchTerm User defined search parameter that filters our lines by their first moves, such as "1. e4 c5",
+     * or by words from their name, ECO code, or moves, such as "sicilian naj".
      */
-    private void queryTotalLines(String ecoSearch, String searchTerm) throws SQLException {
+    private void queryTotalLines(String ecoSearch, String searchTerm) {
         // Validate input for null strings.
         if (ecoSearch == null || searchTerm == null) {
             throw new IllegalArgumentException("Can't pass null string to queryLines!");
         }
 
-        // % indicates "any number of characters" in SQLite. ECO codes are well-formatted, so we require an exact match
-        // for the beginning of the code. For the name search, we allow any number of characters before or after the
-        // matching substring.
-        ecoSearch = ecoSearch + "%";
-        searchTerm = "%" + searchTerm + "%";
-
-        // This query returns all items in the LINES table, filtered by ECO and NAME if search terms are provided.
-        String query = "SELECT ID, NAME, LINE, ECO " +
-                        "FROM LINES " +
-                        "WHERE ECO LIKE ? " +
-                        "OR NAME LIKE ? ";
-
-        // Create a parameterized query with the two search terms as parameters.
-        PreparedStatement lineQ = Main.conn.prepareStatement(query);
-        lineQ.setString(1, ecoSearch);
-        lineQ.setString(2, searchTerm);
-
-        // Execute query.
-        ResultSet rs = lineQ.executeQuery();
-
-        // Remove all LineListItem objects from linesModel.
-        linesModel.clear();
-
-        // Iterate over the query result, pulling out the Primary Key, Name, Line, and ECO code.
-        int index = 0;
-        while (rs.next()) {
-            int pk = rs.getInt(1);
-
-            // Instantiate a new LineListItem using the primary key from the LINES tuple. This object represents an
-            // opening line from our database.
-            LineListItem line = new LineListItem(pk);
-            line.setName(rs.getString(2));
-            line.setLine(rs.getString(3));
-            line.setEco(rs.getString(4));
-
-            // Store each object in our model, which is displayed by the associated JList.
-            linesModel.add(index, line);
-            index = index + 1;
-        }
-
-        // Revalidate and paint the GUI panel.
-        cardsMenu.revalidate();
-        cardsMenu.repaint();
+        // Find the matching lines. An empty search term lists every line. Only a word search uses the database, and
+        // the index may still be being built when the menu opens, so the results arrive later on the Event Dispatch
+        // Thread either way.
+        int number = ++searchNumber;
+        String eco = ecoSearch.trim().toUpperCase(Locale.ROOT);
+        String term = searchTerm.trim();
+        LineIndex.whenReady().thenCompose(index -> {
+            if (term.isEmpty() || LineIndex.isMoves(term)) {
+                return CompletableFuture.completedFuture(index.search(eco, term).toArray());
+            }
+            return Database.read(conn -> LineSearch.search(conn, term))
+                    .thenApply(pks -> Arrays.stream(pks).filter(pk -> index.getEco(pk).startsWith(eco)).toArray())
+                    .exceptionally(ex -> {
+                        // Fall back to a plain search of the names, which does not need the database.
+                        Database.report("queryTotalLines", ex);
+                        return index.search(eco, term).toArray();
+                    });
+        }).thenAcceptAsync(pks -> {
+            // A newer search has been started since this one, so its results are already out of date.
+            if (number != searchNumber) { return; }
+            this.showLines(pks);
+        }, Database.EDT);
     }
 
     /**
-     * Get all cards associated with the current deck from the database.
-     * @throws SQLException If we cannot access the database, throw an exception.
+     * Replaces the lines displayed to the user.
+     * @param pks The primary keys of the lines to display, in order.
      */
-    private void queryCards() throws SQLException {
-        // This query returns the relevant information about each card in the database. Because we also want to know
-        // the information about the line and the move associated with the card, we join both of those tables, which
-        // also requires the intermediate CARDS_TO_MOVES table.
-        String query = "SELECT CARDS.ID, MOVES.ORDER_IN_LINE, LINES.ECO, LINES.NAME, CARDS.LAST_REVIEW " +
-                        "FROM DECKS JOIN CARDS ON DECKS.ID = CARDS.DECKS_ID " +
-                        "JOIN CARDS_TO_MOVES ON CARDS.ID = CARDS_TO_MOVES.CARDS_ID " +
-                        "JOIN MOVES ON CARDS_TO_MOVES.MOVES_ID = MOVES.ID " +
-                        "JOIN LINES ON MOVES.LINES_ID = LINES.ID " +
-                        "WHERE DECKS.ID = ? ";
-
-        // Create a parameterized query, with the primary key for DECKS as a parameter, as we are only interested in
-        // cards associated with the current deck.
-        PreparedStatement preStmt = Main.conn.prepareStatement(query);
-        preStmt.setInt(1, deckID);
-
-        // Execute the query.
-        ResultSet rs = preStmt.executeQuery();
-
-        // Clear any cardListItems currently stored in the cardsModel.
-        cardsModel.clear();
-
-        // Iterate through the results returned by the query, storing information from each tuple in a corresponding
-        // CardListItem object.
-        int index = 0;
-        while (rs.next()) {
-            int cardPK = rs.getInt(1);
-
-            // Create a CardListItem using the primary key. This object represents a user-created review card.
-            CardListItem card = new CardListItem(cardPK);
-
-            // Use setters to store the query results in the object.
-            card.setOrder(rs.getInt(2));
-            card.setEco(rs.getString(3));
-            card.setName(rs.getString(4));
-            card.setLastReview(rs.getLong(5));
-
-            // Add each object to the cardsModel.
-            cardsModel.add(index, card);
-            index = index + 1;
-        }
+    private void showLines(int[] pks) {
+        linesModel.setKeys(pks);
 
         // Revalidate and paint the GUI panel.
         cardsMenu.revalidate();
         cardsMenu.repaint();
     }
 
-    private void updateDB(String clr, int linePk) throws SQLException {
-        // Initialize color choice with an empty string.
-        String colorChoice = "";
-
-        // If the JComboBox has WHITE selected, use this SQL sub-clause.
-        if (clr.equals("White")) { colorChoice = " AND MOVES.ORDER_IN_LINE % 2 != 0 "; }
-
-        // If the JComboBox has BLACK selected, use this SQL sub-clause.
-        if (clr.equals("Black")) { colorChoice = " AND MOVES.ORDER_IN_LINE % 2 == 0 "; }
-
-        // This query gets all the move primary keys associated with the lines identified by the user, filtered by the
-        // user-selected color (white or black). It excludes moves that are already in the deck we are modifying.
-        PreparedStatement movesStmt = Main.conn.prepareStatement(
-                "SELECT MOVES.ID FROM MOVES " +
-                        "WHERE LINES_ID = ? AND LINES_ID NOT IN (" +
-                        "SELECT MOVES.LINES_ID FROM CARDS " +
-                        "JOIN CARDS_TO_MOVES ON CARDS_TO_MOVES.CARDS_ID = CARDS.ID " +
-                        "JOIN MOVES ON CARDS_TO_MOVES.MOVES_ID = MOVES.ID " +
-                        "WHERE DECKS_ID = ?)" + colorChoice + " AND MOVES.BEFORE_FEN NOT IN (" +
-                        "SELECT MOVES.BEFORE_FEN FROM MOVES " +
-                        "JOIN CARDS_TO_MOVES ON MOVES.ID = CARDS_TO_MOVES.MOVES_ID " +
-                        "JOIN CARDS ON CARDS_TO_MOVES.CARDS_ID = CARDS.ID " +
-                        "WHERE CARDS.DECKS_ID = ?)"
-        );
-
-        // Create an ArrayList to hold the different primary keys.
-        List<Integer> movePkList = new ArrayList<>();
-
-        // Get the primary keys from the query and add each to the ArrayList.
-        ResultSet rs = movesStmt.getResultSet();
-
-        // Insert the line and deck ids into the paramterized query
-        movesStmt.setInt(1, linePk);
-        movesStmt.setInt(2, deckID);
-        movesStmt.setInt(3, deckID);
-        movesStmt.executeQuery();
-
-        while (rs.next()) {
-            movePkList.add(rs.getInt(1));
-        }
-
-        // In order to make new tuples in the CARDS_TO_MOVES intermediate table, we need to know which CARDS.ID ints are
-        // going to be created. Because CARDS auto-increments using INTEGER PRIMARY KEY, the solution is to find the
-        // highest ID in CARDS, and use that value to infer the key which will be created.
-        PreparedStatement maxID = Main.conn.prepareStatement("SELECT MAX(ID) FROM CARDS");
-        ResultSet getKey = maxID.executeQuery();
-
-        int lastCardPK;
-        if (getKey.next()) {
-            lastCardPK = getKey.getInt(1);
-        } else {
-            // If no results are found by the query, the table is empty and the next primary key that will be assigned
-            // by SQLite is 0.
-            lastCardPK = 0;
+    /**
+     * Makes a LineListItem for each line on a page of the list of lines. The lines are read from LineIndex, so this
+     * runs on the Event Dispatch Thread without using the database.
+     * @param pks The primary keys of every line in the list.
+     * @param from The index of the first line on the page.
+     * @param to The index after the last line on the page.
+     * @return A LineListItem for each line on the page.
+     */
+    private static List<LineListItem> loadLines(int[] pks, int from, int to) {
+        LineIndex index = LineIndex.get();
+        List<LineListItem> lines = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            LineListItem line = new LineListItem(pks[i]);
+            line.setName(index.getName(pks[i]));
+            line.setLine(index.getLine(pks[i]));
+            line.setEco(index.getEco(pks[i]));
+            lines.add(line);
         }
+        return lines;
+    }
 
-        // Create a query to insert new rows in the CARDS table. We pass NULL to ID so that SQLite knows to
-        // auto-increment that field. REP_NUMBER, EASY_FACTOR, and LAST_REVIEW are parameters in the SuperMemo2
-        // algorithm and start at the default values of 0, 2.5, and 0.
-        PreparedStatement addCards = Main.conn.prepareStatement("INSERT INTO CARDS(ID, DECKS_ID, REP_NUMBER, " +
-                "EASY_FACTOR, IR_INTERVAL, LAST_REVIEW) VALUES (NULL, ?, 0, 2.5, 0, ?)");
-
-        // Get the system's current UNIX time-stamp.
-        long currentTime = System.currentTimeMillis();
+    /**
+     * Get the primary keys of all cards associated with the current deck from the database. The cards themselves are
+     * read a page at a time by loadCards, as they are displayed. This runs on the database thread, or on a reader
+     * thread.
+     * @param conn Connection to the database, which may be a reader connection.
+     * @return The primary key of each card, in ascending order.
+     * @throws SQLException If we cannot access the database, throw an exception.
+     */
+    private int[] queryCards(Connection conn) throws SQLException {
+        return new CardDao(conn).listIds(deckID);
+    }
 
-        // Iterate n times, with n being defined by the number of MOVES.ID primary keys associated with the lines
-        // selected earlier by the user.
-        for (int i = 0; i < movePkList.size(); i++) {
-            addCards.setInt(1, deckID);
-            addCards.setLong(2, currentTime);
-            addCards.addBatch();
-        }
+    /**
+     * Reads the cards on a page of the list of cards. This runs on a reader thread.
+     * @param conn Connection to the database, which may be a reader connection.
+     * @param pks The primary keys of every card in the list, in ascending order.
+     * @param from The index of the first card on the page.
+     * @param to The index after the last card on the page.
+     * @return A CardListItem for each card on the page, or null for a card that has been deleted since the list of
+     * primary keys was read.
+     * @throws SQLException If we cannot access the database, throw an exception.
+     */
+    private List<CardListItem> loadCards(Connection conn, int[] pks, int from, int to) throws SQLException {
+        // The primary keys are in ascending order, so the page is every card between its first and last key.
+        List<CardDao.CardRow> rows = new CardDao(conn).listRange(deckID, pks[from], pks[to - 1]);
+
+        // Line the rows up with the keys, leaving a gap for any key without a row.
+        List<CardListItem> cards = new ArrayList<>(to - from);
+        int next = 0;
+        for (int i = from; i < to; i++) {
+            while (next < rows.size() && rows.get(next).getId() < pks[i]) { next++; }
+            if (next == rows.size() || rows.get(next).getId() != pks[i]) {
+                cards.add(null);
+                continue;
+            }
+            CardDao.CardRow row = rows.get(next);
 
-        // Execute the batch of insertion operations.
-        addCards.executeBatch();
+            // Create a CardListItem using the primary key. This object represents a user-created review card.
+            CardListItem card = new CardListItem(row.getId());
 
-        // Commit the transaction.
-        Main.conn.commit();
+            // Use setters to store the query results in the object.
+            card.setOrder(row.getOrderInLine());
+            card.setEco(row.getEco());
+            card.setName(row.getName());
+            card.setLastReview(row.getLastReview());
 
-        // Insert rows into the CARDS_TO_MOVES intermediate table, each of which represents a relationship between a
-        // card and a chess move. Because the makeCards method creates one card for each move identified by the user,
-        // we can simply iterate through movePkList, and pair each MOVES_ID primary key with a CARDS_ID primary key
-        // that is derived by adding i to the highest primary key currently in CARDS (+ 1 to avoid a duplicate key
-        // at the beginning).
-        PreparedStatement cardsRel = Main.conn.prepareStatement("INSERT INTO CARDS_TO_MOVES(CARDS_ID, MOVES_ID) " +
-                "VALUES (?, ?)");
-
-        // Last key is the last INTEGER PRIMARY KEY SQLite inserted into CARDS.
-        for (int i = 0; i < movePkList.size(); i++) {
-            cardsRel.setInt(1, lastCardPK + 1 + i);
-            cardsRel.setInt(2, movePkList.get(i));
-            cardsRel.addBatch();
+            cards.add(card);
         }
+        return cards;
+    }
 
-        // Execute the batch of insertion operations.
-        cardsRel.executeBatch();
+    /**
+     * Replaces the cards displayed to the user.
+     * @param pks The primary keys returned by queryCards.
+     */
+    private void showCards(int[] pks) {
+        cardsModel.setKeys(pks);
 
-        // Commit the transaction.
-        Main.conn.commit();
+        // Revalidate and paint the GUI panel.
+        cardsMenu.revalidate();
+        cardsMenu.repaint();
     }
 
     /**
      * This method makes new cards based on whichever lines and whatever color is selected when the user clicks the
-     * create button.
+     * create button. The cards for every line are found with one query and created in one transaction. This runs on
+     * the database thread.
      * @param clr The color (white or black) selected by the user in the JComboBox.
-     * @throws SQLException If the transactions in this method cannot be executed, throw an exception.
+     * @param linePkList The primary keys of the lines selected by the user.
+     * @return The number of cards created and skipped.
+     * @throws SQLException If the transaction cannot be executed, throw an exception.
      */
-    private void makeCards(String clr) throws SQLException {
-        // Get the lines selected by the user.
-        List<LineListItem> choices = linesList.getSelectedValuesList();
-
-        // Create an array with the primary keys of the lines selected by the user.
-        int[] linePkList = new int[choices.size()];
+    private CardDao.AddResult makeCards(String clr, int[] linePkList) throws SQLException {
+        // Get the system's current UNIX time-stamp, and create one card per new position, linked to its move.
+        long currentTime = System.currentTimeMillis();
+        CardDao.AddResult result = new CardDao(Main.conn).addCardsForLines(deckID, linePkList, clr, currentTime);
 
-        // Iterate through the int array and the ArrayList of lineListItems, storing the primary keys of the latter
-        // in the former.
-        for (int i = 0; i < linePkList.length; i++) { linePkList[i] = choices.get(i).getPk(); }
+        // Commit the transaction.
+        Main.conn.commit();
 
-        for (int linePk : linePkList) {
-            this.updateDB(clr, linePk);
-        }
+        // New cards are due as soon as they are created.
+        DeckStats.cardsAdded(deckID, result.getCreated(), currentTime);
+        return result;
     }
 
     /**
-     * This method deletes whichever cards are currently selected by the user when the delete button is clicked.
+     * This method deletes whichever cards are currently selected by the user when the delete button is clicked. This
+     * runs on the database thread.
+     * @param cardPks The primary keys of the cards selected in the cardsList JList.
      * @throws SQLException If the database transaction cannot be processed, throw an exception.
      */
-    private void deleteCards() throws SQLException {
-        // Get the cardListItems currently selected in the cardsListComp JList.
-        List<CardListItem> choices = cardsList.getSelectedValuesList();
-
-        // Delete all the CARDS_TO_MOVES tuples matching the CARDS.ID primary keys selected by the user. Each tuple
-        // in this table represents a relationship between CARDS and MOVES.
-        PreparedStatement relDel = Main.conn.prepareStatement("DELETE FROM CARDS_TO_MOVES WHERE CARDS_ID = ?");
-
-        // Iterate through the different cardListItems chosen by the user, getting the primary key from each and
-        // inserting it into the parameterized query.
-        for (CardListItem choice : choices) {
-            int cardPK = choice.getPk();
-            relDel.setInt(1, cardPK);
-            relDel.addBatch();
-        }
+    private void deleteCards(List<Integer> cardPks) throws SQLException {
+        // Read the due time and state of each card first, as the deck counts need them. Cards that have not been
+        // displayed were never read.
+        CardDao cardDao = new CardDao(Main.conn);
+        List<CardDao.CardRow> deleted = cardDao.listChosen(deckID, cardPks);
 
-        // Execute the batch of DELETE operations as one transaction.
-        relDel.executeBatch();
+        // Delete the cards matching the CARDS.ID primary keys selected by the user, along with the CARDS_TO_MOVES
+        // tuples that relate them to their moves.
+        cardDao.delete(cardPks);
 
-        // Commit transaction.
+        // Commit the transaction.
         Main.conn.commit();
 
-        // Delete all cards matching the primary keys of the cardListItems selected by the user.
-        PreparedStatement cardDel = Main.conn.prepareStatement("DELETE FROM CARDS WHERE ID = ?");
-
-        // Iterate through the different cardListItems, getting the primary key from each and inserting it into the
-        // parameterized query.
-        for (CardListItem choice : choices) {
-            int cardPK = choice.getPk();
-            cardDel.setInt(1, cardPK);
-            cardDel.addBatch();
+        // Remove the deleted cards from the deck counts.
+        for (CardDao.CardRow row : deleted) {
+            DeckStats.cardRemoved(deckID, row.getDueAt(), row.getState());
         }
-
-        // Execute the batch of DELETE operations as one transaction.
-        cardDel.executeBatch();
-
-        // Commit the transaction.
-        Main.conn.commit();
     }
 
     /**
@@ -411,31 +348,31 @@ public class AddCardsGUI implements ActionListener {
     public void actionPerformed(ActionEvent e) {
         // Activated if the user clicks the makeCards button.
         if (e.getSource() == makeCardsBtn) {
-            try {
-                // Get the currently-selected color (black or white) from the JComboBox.
-                String clr = (String) clrSel.getSelectedItem();
-
-                // Make one or more cards based on the JList items currently selected by the user.
-                this.makeCards(clr);
-
-                // Update the GUI to reflect the newly created cards in the database.
-                this.queryCards();
-            } catch (SQLException ex) {
-                throw new RuntimeException(ex);
-            }
+            // Get the currently-selected color (black or white) from the JComboBox, and the lines selected by the user.
+            // The keys are read from the model, as a selected line's page may not be loaded.
+            String clr = (String) clrSel.getSelectedItem();
+            int[] choices = Arrays.stream(linesList.getSelectedIndices()).map(linesModel::getKey).toArray();
+
+            // Make one or more cards based on the JList items currently selected by the user, then report how many
+            // were made and update the GUI to reflect the newly created cards in the database.
+            busy.submit("makeCards", () -> this.makeCards(clr, choices), result -> {
+                statusLabel.setText("Created " + result.getCreated() + " card(s), skipped " + result.getSkipped() +
+                        " already in the deck.");
+                busy.read("queryCards", this::queryCards, this::showCards);
+            });
         }
 
         // This conditional is activated if the user clicks the delete button.
         if (e.getSource() == deleteBtn) {
-            try {
-                // This method deletes all cards currently selected by the user.
-                this.deleteCards();
-
-                // Update the GUI to reflect any deleted cards.
-                this.queryCards();
-            } catch (SQLException ex) {
-                throw new RuntimeException(ex);
-            }
+            // Get the cards currently selected by the user, which may be on pages that are not loaded.
+            List<Integer> choices = new ArrayList<>();
+            for (int index : cardsList.getSelectedIndices()) { choices.add(cardsModel.getKey(index)); }
+
+            // Delete the selected cards, then update the GUI to reflect any deleted cards.
+            busy.submit("deleteCards", () -> {
+                this.deleteCards(choices);
+                return this.queryCards(Main.conn);
+            }, this::showCards);
         }
 
         // This conditional is activated if the user clicks the back button.
@@ -445,6 +382,16 @@ public class AddCardsGUI implements ActionListener {
         }
     }
 
+    // Document listener for the search fields. Each change to either field runs the search again.
+    @Override
+    public void insertUpdate(DocumentEvent e) { this.queryTotalLines(ecoField.getText(), searchField.getText()); }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) { this.queryTotalLines(ecoField.getText(), searchField.getText()); }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) { this.queryTotalLines(ecoField.getText(), searchField.getText()); }
+
     /**
      * Static nested class. Each instance of this class represents a user-created cards, which is paralleled by the
      * items in the CARDS table in database.db.
@@ -1,12 +1,10 @@
 import java.sql.SQLException;
 import javax.swing.*;
+import java.awt.image.BufferedImage;
 import javax.swing.border.EmptyBorder;
-import java.awt.GridLayout;
 import java.awt.GridBagLayout;
 import java.awt.Dimension;
 import java.awt.Font;
-import java.awt.Color;
-import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
@@ -22,23 +20,28 @@ public final class BoardGUI implements ActionListener {
     private final MainMenuGUI mainMenu;
 
     // ReviewEngine object that provides methods to pull new cards that are due to be reviewed and update cards once
-    // they have been reviewed.
-    private final ReviewEngine revEng;
+    // they have been reviewed. It is null until the cards due in the deck have been loaded.
+    private ReviewEngine revEng;
 
-    // JPanel representing the chess board.
-    private final JPanel board = new JPanel();
+    // Parses and draws the next few cards in the background while the user looks at the current one. It is null until
+    // the engine has loaded.
+    private ReviewPipeline pipeline;
 
-    // Array of Square objects. Each Square holds information about one square on the chess board.
-    private Square[] squares;
+    // The current card's positions and board images, if the pipeline prepared them in time, or null.
+    private ReviewPipeline.Prepared prepared;
+
+    // Component that draws the chess board.
+    private final ChessBoardComponent board = new ChessBoardComponent();
 
     // Name of the line currently being reviewed.
     private String lineName;
 
-    // Positions of the board before and after the move currently being reviewed is made, represented in standard FEN
-    // chess notation.
-    private String beforeFEN;
-    private String afterFEN;
-    private static final String defaultFEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    // Positions of the board before and after the move currently being reviewed is made.
+    private Position beforePos;
+    private Position afterPos;
+
+    // True if white makes the move currently being reviewed, in which case the board is shown from white's side.
+    private boolean whiteToMove = true;
 
     // Primary key of the card currently being reviewed.
     private int currentCardId;
@@ -66,6 +69,10 @@ public final class BoardGUI implements ActionListener {
     // Returns the user to the Main Menu.
     private final JButton backBtn = new JButton("Back");
 
+    // Progress bar shown while the deck is loading and while queued grades are written on the way back to the main
+    // menu. The back button is disabled until it is done.
+    private final BusyIndicator busy = new BusyIndicator(backBtn);
+
     /**
      * Constructor for the review board GUI.
      * @param newCurrentDeckId Primary key for the deck currently being reviewed.
@@ -77,15 +84,6 @@ public final class BoardGUI implements ActionListener {
         mainMenu = mainGUI;
         pane = boardPane;
 
-        try {
-            // Instantiate a ReviewEngine object, which provides methods for getting cards for review and updating them
-            // after they have been reviewed. Pass the primary key for the deck currently being reviewed as an argument.
-            revEng = new ReviewEngine(newCurrentDeckId);
-        } catch (ClassNotFoundException | SQLException e) {
-            System.out.println("Could not instantiate ReviewEngine");
-            throw new RuntimeException(e);
-        }
-
         // JPanel that wraps the various buttons together to keep them aligned.
         JPanel buttonBox = new JPanel();
 
@@ -109,6 +107,7 @@ public final class BoardGUI implements ActionListener {
         JPanel lowerBtnWrapper = new JPanel();
         lowerBtnWrapper.add(showAnswer);
         lowerBtnWrapper.add(backBtn);
+        lowerBtnWrapper.add(busy);
 
         // Create a panel to wrap the two arrow buttons and keep them aligned.
         JPanel arrowBox = new JPanel();
@@ -135,10 +134,6 @@ public final class BoardGUI implements ActionListener {
         buttonBox.setLayout(new GridBagLayout());
         arrowBox.setLayout(new GridBagLayout());
 
-        // Add a GridLayout to the chess board to keep the JPanels inside in a tight grid.
-        GridLayout gLayout = new GridLayout(8, 8);
-        board.setLayout(gLayout);
-
         // Set these JPanels to a horizontal BoxLayout to keep the leftCol and boardWrapper panel aligned.
         pane.setLayout(new BoxLayout(pane, BoxLayout.X_AXIS));
         leftCol.setLayout(new BoxLayout(leftCol, BoxLayout.Y_AXIS));
@@ -175,15 +170,27 @@ public final class BoardGUI implements ActionListener {
         pane.add(leftCol);
         pane.add(boardWrapper);
 
-        // Add 64 JPanels of the appropriate color to the board JPanel, each representing a square.
-        this.renderBoard();
-
         MainMenuGUI.resetFrame();
 
-        // Pull a new card from the deck and show it to the user.
-        this.promptUser();
-
-        // Repaint the elements to incorporate the changes made by promptUser.
+        // Nothing can be reviewed until the deck has loaded.
+        infoPanel.setText("Loading cards...");
+        showAnswer.setEnabled(false);
+        rightArrow.setEnabled(false);
+        leftArrow.setEnabled(false);
+        for (JButton jb : selfRating) { jb.setEnabled(false); }
+
+        // Instantiate a ReviewEngine object, which provides methods for getting cards for review and updating them
+        // after they have been reviewed. Pass the primary key for the deck currently being reviewed as an argument.
+        // Grades are written in the background, so rating a card does not wait for a commit. The engine loads the due
+        // cards on the database thread, and once it has, pull a new card from the deck and show it to the user.
+        busy.submit("BoardGUI", () -> new ReviewEngine(newCurrentDeckId, true),
+                engine -> {
+                    revEng = engine;
+                    pipeline = new ReviewPipeline(engine);
+                    this.promptUser();
+                });
+
+        // Repaint the elements to incorporate the changes made above.
         pane.revalidate();
         pane.repaint();
     }
@@ -206,181 +213,16 @@ public final class BoardGUI implements ActionListener {
         }
     }
 
-    private void renderBoard() {
-        // Create an array of Square objects.
-        squares = new Square[64];
-
-        // Offset allows us to alternate the order of the light and dark squares for every row, so that the chess board
-        // can be created properly.
-        boolean offset = true;
-
-        // Iterate 64 times, once for every square on the board.
-        for (int i = 1; i <= 64; i++) {
-            JPanel panel = new JPanel();
-
-            // Alternate between odd and even, setting a different panel color each time. If the offset is set to false,
-            // flip the order in which light/dark squares are added.
-            if (i % 2 != 0 && offset) { panel.setBackground(Color.WHITE); }
-            if (i % 2 == 0 && offset) { panel.setBackground(Color.decode("#428D44")); }
-            if (i % 2 != 0 && !offset) { panel.setBackground(Color.decode("#428D44")); }
-            if (i % 2 == 0 && !offset) { panel.setBackground(Color.WHITE); }
-
-            // Instantiate a new Square object and pass it a reference to the given panel.
-            squares[i - 1] = new Square(panel);
-
-            // Add the panel to the board.
-            board.add(panel);
-
-            // If we have reached the end of an 8-square row, flip the offset value.
-            if (i % 8 == 0) { offset = !offset; }
-        }
-        pane.revalidate();
-        pane.repaint();
-    }
-
     /**
-     * This method changes the appearance of the board to display a new chess position.
-     * @param fen This string represents the desired board position using standard FEN chess notation.
+     * This method changes the appearance of the board to display a new chess position. The board is shown from the
+     * side of the player making the move being reviewed.
+     * @param position The position to display.
+     * @param image The position already drawn by the pipeline, or null.
      */
-    private void paintFEN(String fen, boolean isWhite) {
-        // Remove any labels attached to the array of 64 Squares.
-        for (Square sq : squares) { sq.removePiece(); }
-
-        // Split the FEN string to separate different pieces of meta-data (like castle availability).
-        String[] metaArr = fen.split(" ");
-
-        // The first element in the metaArr is the board position. Get this String and separate it by "/" to get each
-        // of the 8 rows as a separate string.
-        String[] posArr = metaArr[0].split("/");
-
-        // The outer for loop iterates through each String, which represents a row of the board.
-        int index = 0;
-        for (String row : posArr) {
-            // The inner for loop iterates through characters in the row, each of which represents a square in the row.
-            for (int rowIndex = 0; rowIndex < row.length(); rowIndex++) {
-                // Get the character at the current index in the row.
-                char currentChar = row.charAt(rowIndex);
-
-                // If the character is not a numeric value, it is a letter representing a piece.
-                if (!Character.isDigit(currentChar)) {
-
-                    int sqIndex = index;
-                    if (!isWhite) {
-                        sqIndex = Math.abs(index - 64) - 1;
-                    }
-
-                    // Get the Square object at the appropriate index.
-                    Square sq = squares[sqIndex];
-
-                    // Call the charToPiece method to instantiate the appropriate Piece based on the FEN string,
-                    // and use the setter in Square to pass it a reference to the new Piece object.
-                    sq.setPiece(this.charToPiece(currentChar, index));
-                }
-
-                // If the character is a numeric value, that value indicates the number of consecutive blank squares in
-                // that row. Because of this, we need to increment the index by a value equal to the number represented
-                // by currentChar. We also subtract 49 to convert from ASCII.
-                if (Character.isDigit(currentChar)) { index = index + (int)currentChar - 49; }
-
-                // Increment the index to move onto the next square.
-                index = index + 1;
-            }
-        }
-
-        // Repaint the board component with the updated information.
-        board.revalidate();
-        board.repaint();
-    }
-
-    /**
-     * This method receives a character representation of a chess piece and the position of that piece on the board and
-     * instantiates a Piece object using those two pieces of information.
-     * @param c A char representing the type of piece to be instantiated.
-     * @param newPos The current position of the piece on the chess board.
-     * @return Returns a subclass of the abstract Piece class.
-     */
-    private Piece charToPiece(char c, int newPos) {
-        // This switch case statement returns different Piece objects depending on the given char. In FEN notation,
-        // upper-case letters indicate white pieces and lower-case letters indicate black pieces.
-        switch (c) {
-            case 'P':
-                return new Pawn(newPos, 'w');
-            case 'B':
-                return new Bishop(newPos, 'w');
-            case 'N':
-                return new Knight(newPos, 'w');
-            case 'R':
-                return new Rook(newPos, 'w');
-            case 'K':
-                return new King(newPos, 'w');
-            case 'Q':
-                return new Queen(newPos, 'w');
-            case 'p':
-                return new Pawn(newPos, 'b');
-            case 'b':
-                return new Bishop(newPos, 'b');
-            case 'n':
-                return new Knight(newPos, 'b');
-            case 'r':
-                return new Rook(newPos, 'b');
-            case 'k':
-                return new King(newPos, 'b');
-            case 'q':
-                return new Queen(newPos, 'b');
-            default:
-                // If the operation fails, throw an exception.
-                throw new IllegalArgumentException("Can't create Piece with given parameters!");
-        }
-    }
-
-    /**
-     * Square is a non-static nested class that holds information about a given square on the displayed chess board.
-     */
-    private static class Square {
-        // Each Square has a reference to an associated panel that it can modify.
-        private final JPanel panel;
-
-        // Instantiate Square and pass the associated panel.
-        public Square(JPanel newPanel) {
-            panel = newPanel;
-        }
-
-        // Setter for Piece.
-        public void setPiece(Piece newPiece) {
-            // Validate input.
-            if (newPiece == null) { throw new IllegalArgumentException("Can't set null piece!"); }
-
-            // Store the reference to the Piece as an instance variable.
-            // Squares can have an associated Piece object, although some squares will have no Piece and be empty.
-
-            // Paint the piece on the GUI.
-            try {
-                // Get the ImageIcon associated with the piece.
-                ImageIcon image = newPiece.getImage();
-
-                // Convert the ImageIcon to an Image to allow resizing.
-                Image temp = image.getImage();
-
-                // Resize the Image based on the size of the panel.
-                Image temp2 = temp.getScaledInstance(panel.getWidth(), panel.getHeight(), Image.SCALE_SMOOTH);
-
-                // Convert the Image into a new ImageIcon.
-                ImageIcon image2 = new ImageIcon(temp2);
-
-                // Insert the new ImageIcon into a label and add it to the panel.
-                JLabel label = new JLabel(image2, JLabel.CENTER);
-                panel.add(label);
-            } catch (NoSuchFieldException ex) {
-                // If the Piece object is unable to return an image, it will throw an exception.
-                System.out.println("setPiece encountered an error");
-                System.out.println(ex.getMessage());
-            }
-        }
-
-        // Method to remove the Piece from the panel.
-        public void removePiece() {
-            panel.removeAll();
-        }
+    private void paintPosition(Position position, BufferedImage image) {
+        // The board component compares the new position with the one it is showing and repaints only the squares
+        // that changed, copying them from the image if there is one.
+        board.setPosition(position, whiteToMove, image);
     }
 
     /**
@@ -388,14 +230,18 @@ public final class BoardGUI implements ActionListener {
      * ready to see the answer, they hit "Show Answer" to see the hidden information associated with the card.
      */
     public void promptUser() {
+        Metrics.Probe probe = Metrics.start(Metrics.Kind.REVIEW, "review.prompt");
         try {
-            // Get any card due to be reviewed from the deck.
-            ReviewEngine.ReviewCard revCard = revEng.getNextCard();
+            // Get any card due to be reviewed from the deck. Its positions and board images have usually been
+            // prepared by the pipeline already.
+            ReviewEngine.ReviewCard revCard = pipeline.next();
+            prepared = revCard.getPrepared();
 
             // Extract the relevant information from the ReviewCard object and store it as instance variables.
             currentCardId = revCard.getId();
-            beforeFEN = revCard.getBeforeFEN();
-            afterFEN = revCard.getAfterFEN();
+            beforePos = revCard.getBeforePosition();
+            afterPos = revCard.getAfterPosition();
+            whiteToMove = beforePos.getSideToMove() == Position.WHITE;
             lineName = revCard.getLineName();
             orderInLine = revCard.getOrderInLine();
             reviewTimes = revCard.getReviewTimes();
@@ -404,21 +250,19 @@ public final class BoardGUI implements ActionListener {
             // should not be enabled, as there are no more cards to show.
             showAnswer.setEnabled(true);
         } catch (SQLException | ClassNotFoundException ex) {
-            System.out.println("promptUser encountered an error");
-            System.out.println(ex.getMessage());
+            Database.report("promptUser", ex);
         } catch (RuntimeException ex) {
-            beforeFEN = defaultFEN;
+            // If there are no more cards, show the starting position.
+            beforePos = new Position();
+            prepared = null;
             System.out.println(ex.getMessage());
         }
 
-        // Update the board GUI with the new beforeFEN string.
-        paintFEN(beforeFEN, orderInLine % 2 != 0);
+        // Update the board GUI with the position before the move.
+        paintPosition(beforePos, prepared != null ? prepared.getBeforeImage() : null);
 
-        // Generate a label string based on whether the sequence of the move in the line is even or odd, which allows
-        // us to infer whether it is a white or black move.
-        String toMove = "";
-        if (orderInLine % 2 == 0) { toMove = "BLACK TO MOVE"; }
-        if (orderInLine % 2 != 0) { toMove = "WHITE TO MOVE"; }
+        // Generate a label string based on the side to move in the position.
+        String toMove = whiteToMove ? "WHITE TO MOVE" : "BLACK TO MOVE";
 
         // Display the name of the current line and toMove on the info panel.
         infoPanel.setText(lineName + "\n\n" + toMove);
@@ -433,6 +277,10 @@ public final class BoardGUI implements ActionListener {
         // Repaint the GUI.
         pane.revalidate();
         pane.repaint();
+
+        // While the user thinks about this card, prepare the ones after it.
+        pipeline.prefetch(board.getSquareSize());
+        probe.stop();
     }
 
     /**
@@ -442,7 +290,7 @@ public final class BoardGUI implements ActionListener {
      */
     public void showPos() {
         // Change the position on the board to show the answer immediately.
-        paintFEN(afterFEN, orderInLine % 2 != 0);
+        paintPosition(afterPos, prepared != null ? prepared.getAfterImage() : null);
 
         // Disable the showAnswer button.
         showAnswer.setEnabled(false);
@@ -470,16 +318,31 @@ public final class BoardGUI implements ActionListener {
 
         // Toggle between the board positions before and after the relevant move when the user clicks the arrows.
         if (e.getSource() == rightArrow) {
-            paintFEN(afterFEN, orderInLine % 2 != 0);
+            paintPosition(afterPos, prepared != null ? prepared.getAfterImage() : null);
         }
         if (e.getSource() == leftArrow) {
-            paintFEN(beforeFEN, orderInLine % 2 != 0);
+            paintPosition(beforePos, prepared != null ? prepared.getBeforeImage() : null);
         }
 
         // If the user hits the back button, return to the main menu.
         if (e.getSource() == backBtn) {
-            // Refresh the list of cards displayed by the main menu and switch panels using CardLayout.
-            mainMenu.mainReturn();
+            // Write any grades still queued by the ReviewEngine on the database thread, so the main menu counts reflect
+            // this session. The engine is null if the deck could not be loaded.
+            ReviewEngine engine = revEng;
+            if (pipeline != null) { pipeline.close(); }
+            busy.submit("Back button Action Listener", () -> {
+                try {
+                    if (engine != null) { engine.endSession(); }
+                } catch (SQLException ex) {
+                    // Return to the main menu anyway. The grades that could not be written are tried again when the
+                    // program exits.
+                    Database.report("Back button Action Listener", ex);
+                }
+                return null;
+            }, result -> {
+                // Refresh the list of cards displayed by the main menu and switch panels using CardLayout.
+                mainMenu.mainReturn();
+            });
         }
 
         // Check if the action event was triggered by any of the self-rating JButtons.
@@ -490,8 +353,7 @@ public final class BoardGUI implements ActionListener {
                     // algorithm.
                     revEng.updateCard(i, currentCardId);
                 } catch (SQLException | ClassNotFoundException ex) {
-                    System.out.println("selfRating Action Listener encountered an error");
-                    System.out.println(ex.getMessage());
+                    Database.report("selfRating Action Listener", ex);
                 }
 
                 // Prompt the user with a new card to review.
@@ -0,0 +1,92 @@
+import java.awt.Component;
+import java.awt.Cursor;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import javax.swing.JComponent;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+
+/**
+ * This class is a progress bar that is shown while a GUI panel is waiting for the database. A panel runs its database
+ * work through submit, or read for read-only queries, which shows the bar, disables the panel's buttons so the same
+ * action cannot be started twice, and undoes both once every task it submitted has finished. The result of each task
+ * is handed back on the Event Dispatch Thread.
+ */
+public final class BusyIndicator extends JProgressBar {
+    private static final long serialVersionUID = 1L;
+
+    // Components that are disabled while any task is running.
+    private final Component[] disabledWhileBusy;
+
+    // Number of submitted tasks that have not finished yet. Only used on the Event Dispatch Thread.
+    private int running = 0;
+
+    /**
+     * Constructor for BusyIndicator. The bar is hidden until a task is submitted.
+     * @param newDisabledWhileBusy Components to disable while a task is running, such as buttons that submit tasks.
+     */
+    public BusyIndicator(Component... newDisabledWhileBusy) {
+        disabledWhileBusy = newDisabledWhileBusy;
+
+        // The length of a task is not known in advance, so the bar shows activity rather than progress.
+        this.setIndeterminate(true);
+        this.setVisible(false);
+    }
+
+    /**
+     * Runs a task on the database thread while the bar is showing. Must be called on the Event Dispatch Thread.
+     * @param caller The name of the method or listener submitting the task, which is printed if the task fails.
+     * @param task The database work to do.
+     * @param onSuccess Receives the result of the task on the Event Dispatch Thread. It is not called if the task
+     * fails.
+     * @param <T> The type of the result.
+     */
+    public <T> void submit(String caller, Database.Task<T> task, Consumer<? super T> onSuccess) {
+        this.setBusy(true);
+        this.track(caller, Database.submit(task), onSuccess);
+    }
+
+    /**
+     * Runs a read-only query on a reader connection while the bar is showing. Must be called on the Event Dispatch
+     * Thread.
+     * @param caller The name of the method or listener submitting the query, which is printed if the query fails.
+     * @param query The query to run.
+     * @param onSuccess Receives the result of the query on the Event Dispatch Thread. It is not called if the query
+     * fails.
+     * @param <T> The type of the result.
+     */
+    public <T> void read(String caller, Database.Query<T> query, Consumer<? super T> onSuccess) {
+        this.setBusy(true);
+        this.track(caller, Database.read(query), onSuccess);
+    }
+
+    // Hides the bar once the future is done, and hands its result to onSuccess on the Event Dispatch Thread.
+    private <T> void track(String caller, CompletableFuture<T> future, Consumer<? super T> onSuccess) {
+        future.whenCompleteAsync((result, ex) -> {
+            this.setBusy(false);
+            if (ex != null) {
+                Database.report(caller, ex);
+            } else {
+                onSuccess.accept(result);
+            }
+        }, Database.EDT);
+    }
+
+    /**
+     * @return True while a submitted task has not finished.
+     */
+    public boolean isBusy() { return running > 0; }
+
+    private void setBusy(boolean busy) {
+        running = running + (busy ? 1 : -1);
+
+        // Only change anything when the first task starts or the last one finishes.
+        if (busy ? running != 1 : running != 0) { return; }
+
+        this.setVisible(busy);
+        for (Component component : disabledWhileBusy) { component.setEnabled(!busy); }
+        JComponent root = SwingUtilities.getRootPane(this);
+        if (root != null) { root.setCursor(busy ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : null); }
+        this.revalidate();
+    }
+}
@@ -0,0 +1,301 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class holds the queries on the CARDS and CARDS_TO_MOVES tables used by the deck builder and the review session.
+ * Each method runs its query through the connection's StatementCache, so the statement is only prepared the first
+ * time. The methods do not commit; the caller decides where each transaction ends.
+ */
+public final class CardDao {
+    // The relevant information about each card in a deck, with the line and the move associated with the card, which
+    // requires the intermediate CARDS_TO_MOVES table. The cards are picked by one of the filters below.
+    private static final String LIST_BY_DECK = "SELECT CARDS.ID, MOVES.ORDER_IN_LINE, LINES.ECO, LINES.NAME, " +
+                        "CARDS.LAST_REVIEW, CARDS.DUE_AT, CARDS.REP_NUMBER, CARDS.IR_INTERVAL " +
+                        "FROM CARDS JOIN CARDS_TO_MOVES ON CARDS.ID = CARDS_TO_MOVES.CARDS_ID " +
+                        "JOIN MOVES ON CARDS_TO_MOVES.MOVES_ID = MOVES.ID " +
+                        "JOIN LINES ON MOVES.LINES_ID = LINES.ID " +
+                        "WHERE CARDS.DECKS_ID = ? ";
+
+    // A page of the list, by a range of card IDs, so it is read with a range scan of the primary key instead of by
+    // skipping over the rows before it.
+    static final String LIST_RANGE = LIST_BY_DECK + "AND CARDS.ID BETWEEN ? AND ? ORDER BY CARDS.ID";
+
+    // Chosen cards, passed as a JSON array of IDs.
+    static final String LIST_CHOSEN = LIST_BY_DECK + "AND CARDS.ID IN (SELECT value FROM json_each(?))";
+
+    static final String LIST_IDS = "SELECT ID FROM CARDS WHERE DECKS_ID = ? ORDER BY ID";
+
+    // The moves of a set of lines, filtered by color, one per starting position, with whether that position is already
+    // on a card in the deck. The line IDs are passed as a JSON array and read with json_each, so any number of lines
+    // takes one statement. The moves are found by walking the opening tree from each line's last move back to its
+    // first; UNION stops the walk where lines share their first moves, so each shared move is visited once. The deck's
+    // positions are read once into DECK_MOVES rather than once per move. Positions are compared by Zobrist key, which
+    // also catches positions reached by a different move order. A move whose key is NULL, because its FEN could not be
+    // read, is a group of its own, and is only on a card if that exact move is. The color filter is inserted at %s.
+    private static final String NEW_MOVES = "WITH RECURSIVE PATH(ID) AS (" +
+                        "SELECT LEAF_MOVES_ID FROM LINES WHERE ID IN (SELECT value FROM json_each(?)) " +
+                        "UNION " +
+                        "SELECT MOVES.PARENT_ID FROM MOVES JOIN PATH ON MOVES.ID = PATH.ID " +
+                        "WHERE MOVES.PARENT_ID IS NOT NULL), " +
+                        "DECK_MOVES(ID, BEFORE_KEY) AS (" +
+                        "SELECT MOVES.ID, MOVES.BEFORE_KEY FROM CARDS " +
+                        "JOIN CARDS_TO_MOVES ON CARDS.ID = CARDS_TO_MOVES.CARDS_ID " +
+                        "JOIN MOVES ON CARDS_TO_MOVES.MOVES_ID = MOVES.ID " +
+                        "WHERE CARDS.DECKS_ID = ?) " +
+                "SELECT MIN(MOVES.ID), CASE WHEN MOVES.BEFORE_KEY IS NULL " +
+                        "THEN MOVES.ID IN (SELECT ID FROM DECK_MOVES) " +
+                        "ELSE MOVES.BEFORE_KEY IN " +
+                        "(SELECT BEFORE_KEY FROM DECK_MOVES WHERE BEFORE_KEY IS NOT NULL) END " +
+                        "FROM PATH JOIN MOVES ON MOVES.ID = PATH.ID " +
+                        "%s" +
+                        "GROUP BY MOVES.BEFORE_KEY IS NULL, COALESCE(MOVES.BEFORE_KEY, MOVES.ID) " +
+                        "ORDER BY MIN(MOVES.ORDER_IN_LINE)";
+    static final String WHITE_MOVES = String.format(NEW_MOVES, "WHERE MOVES.ORDER_IN_LINE % 2 != 0 ");
+    static final String BLACK_MOVES = String.format(NEW_MOVES, "WHERE MOVES.ORDER_IN_LINE % 2 == 0 ");
+    static final String ALL_MOVES = String.format(NEW_MOVES, "");
+
+    // Each row inserted into the NEW_CARDS view creates a card, due straight away, and links it to its move. See
+    // SchemaMigrator.addCardInsertView.
+    static final String INSERT = "INSERT INTO NEW_CARDS(DECKS_ID, MOVES_ID, LAST_REVIEW) VALUES (?, ?, ?)";
+
+    // The card IDs are passed as a JSON array. The links to their moves are deleted with them by the ON DELETE CASCADE
+    // foreign key on CARDS_TO_MOVES.
+    static final String DELETE = "DELETE FROM CARDS WHERE ID IN (SELECT value FROM json_each(?))";
+
+    static final String SELECT_REVIEW = "SELECT REP_NUMBER, EASY_FACTOR, IR_INTERVAL FROM CARDS WHERE ID = ?";
+    static final String UPDATE_REVIEW = "UPDATE CARDS " +
+                        "SET REP_NUMBER = ?, " +
+                        "EASY_FACTOR = ?, " +
+                        "IR_INTERVAL = ?, " +
+                        "LAST_REVIEW = ? " +
+                        "WHERE ID = ? ";
+
+    private final StatementCache statements;
+
+    /**
+     * Constructor for CardDao.
+     * @param conn The connection to run the queries on.
+     */
+    public CardDao(Connection conn) { statements = StatementCache.of(conn); }
+
+    /**
+     * One row of the list of cards in a deck.
+     */
+    public static final class CardRow {
+        private final int id;
+        private final int orderInLine;
+        private final String eco;
+        private final String name;
+        private final long lastReview;
+        private final long dueAt;
+        private final int state;
+
+        CardRow(int newId, int newOrderInLine, String newEco, String newName, long newLastReview, long newDueAt,
+                int newState) {
+            id = newId;
+            orderInLine = newOrderInLine;
+            eco = newEco;
+            name = newName;
+            lastReview = newLastReview;
+            dueAt = newDueAt;
+            state = newState;
+        }
+
+        // Getters for the columns of the row. The state is one of the DeckStats states.
+        public int getId() { return id; }
+        public int getOrderInLine() { return orderInLine; }
+        public String getEco() { return eco; }
+        public String getName() { return name; }
+        public long getLastReview() { return lastReview; }
+        public long getDueAt() { return dueAt; }
+        public int getState() { return state; }
+    }
+
+    /**
+     * Lists the IDs of every card in a deck. This is all the deck builder keeps for a card it is not displaying.
+     * @param deckId The primary key of the deck.
+     * @return The IDs, in ascending order.
+     * @throws SQLException If the query cannot be executed, throw an exception.
+     */
+    public int[] listIds(int deckId) throws SQLException {
+        PreparedStatement preStmt = statements.prepare(LIST_IDS);
+        preStmt.setInt(1, deckId);
+        ResultSet rs = preStmt.executeQuery();
+
+        int[] ids = new int[256];
+        int count = 0;
+        while (rs.next()) {
+            if (count == ids.length) { ids = Arrays.copyOf(ids, count * 2); }
+            ids[count++] = rs.getInt(1);
+        }
+        rs.close();
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Lists the cards in a deck whose IDs are in a range.
+     * @param deckId The primary key of the deck.
+     * @param firstId The lowest ID to list.
+     * @param lastId The highest ID to list.
+     * @return One row per card, in order of ID.
+     * @throws SQLException If the query cannot be executed, throw an exception.
+     */
+    public List<CardRow> listRange(int deckId, int firstId, int lastId) throws SQLException {
+        PreparedStatement preStmt = statements.prepare(LIST_RANGE);
+        preStmt.setInt(1, deckId);
+        preStmt.setInt(2, firstId);
+        preStmt.setInt(3, lastId);
+        return CardDao.readRows(preStmt);
+    }
+
+    /**
+     * Lists chosen cards in a deck.
+     * @param deckId The primary key of the deck.
+     * @param cardPks The primary keys of the cards.
+     * @return One row per card that exists.
+     * @throws SQLException If the query cannot be executed, throw an exception.
+     */
+    public List<CardRow> listChosen(int deckId, List<Integer> cardPks) throws SQLException {
+        PreparedStatement preStmt = statements.prepare(LIST_CHOSEN);
+        preStmt.setInt(1, deckId);
+        preStmt.setString(2, cardPks.toString());
+        return CardDao.readRows(preStmt);
+    }
+
+    private static List<CardRow> readRows(PreparedStatement preStmt) throws SQLException {
+        ResultSet rs = preStmt.executeQuery();
+        List<CardRow> cards = new ArrayList<>();
+        while (rs.next()) {
+            cards.add(new CardRow(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getString(4), rs.getLong(5),
+                    rs.getLong(6), DeckStats.stateOf(rs.getInt(7), rs.getDouble(8))));
+        }
+        rs.close();
+        return cards;
+    }
+
+    /**
+     * The outcome of making cards for a set of lines.
+     */
+    public static final class AddResult {
+        private final int created;
+        private final int skipped;
+
+        AddResult(int newCreated, int newSkipped) {
+            created = newCreated;
+            skipped = newSkipped;
+        }
+
+        // The number of cards created, and the number of positions skipped because the deck already had a card for
+        // them.
+        public int getCreated() { return created; }
+        public int getSkipped() { return skipped; }
+    }
+
+    /**
+     * Makes a card for every move of the chosen color in a set of lines whose starting position is not already on a
+     * card in the deck. A position shared by several of the lines only gets one card. The moves are found with one
+     * query and the cards are inserted with one batch, both in the caller's transaction.
+     * @param deckId The primary key of the deck.
+     * @param linePks The primary keys of the lines.
+     * @param clr "White" or "Black" for the moves of one side, or anything else for both.
+     * @param currentTime The UNIX time-stamp at which the cards are created.
+     * @return The number of cards created and skipped.
+     * @throws SQLException If the query cannot be executed or the cards cannot be created, throw an exception.
+     */
+    public AddResult addCardsForLines(int deckId, int[] linePks, String clr, long currentTime) throws SQLException {
+        String sql = clr.equals("White") ? WHITE_MOVES : clr.equals("Black") ? BLACK_MOVES : ALL_MOVES;
+        PreparedStatement movesStmt = statements.prepare(sql);
+        // Arrays.toString writes an int array as a JSON array, such as [1, 2, 3].
+        movesStmt.setString(1, Arrays.toString(linePks));
+        movesStmt.setInt(2, deckId);
+        ResultSet rs = movesStmt.executeQuery();
+
+        List<Integer> movePkList = new ArrayList<>();
+        int skipped = 0;
+        while (rs.next()) {
+            if (rs.getBoolean(2)) {
+                skipped++;
+            } else {
+                movePkList.add(rs.getInt(1));
+            }
+        }
+        rs.close();
+
+        this.addCards(deckId, movePkList, currentTime);
+        return new AddResult(movePkList.size(), skipped);
+    }
+
+    /**
+     * Creates one new card for each move, due straight away.
+     * @param deckId The primary key of the deck.
+     * @param movePkList The primary keys of the moves.
+     * @param currentTime The UNIX time-stamp at which the cards are created.
+     * @throws SQLException If the cards cannot be created, throw an exception.
+     */
+    public void addCards(int deckId, List<Integer> movePkList, long currentTime) throws SQLException {
+        // The card and its link are inserted together by the view's trigger, so the whole list is a single batch.
+        PreparedStatement addCards = statements.prepare(INSERT);
+        for (int movePk : movePkList) {
+            addCards.setInt(1, deckId);
+            addCards.setInt(2, movePk);
+            addCards.setLong(3, currentTime);
+            addCards.addBatch();
+        }
+        addCards.executeBatch();
+    }
+
+    /**
+     * Deletes cards and the links between them and their moves, with one statement.
+     * @param cardPks The primary keys of the cards.
+     * @throws SQLException If the cards cannot be deleted, throw an exception.
+     */
+    public void delete(List<Integer> cardPks) throws SQLException {
+        // List.toString writes a list of numbers as a JSON array, such as [1, 2, 3].
+        PreparedStatement deleteStmt = statements.prepare(DELETE);
+        deleteStmt.setString(1, cardPks.toString());
+        deleteStmt.executeUpdate();
+    }
+
+    /**
+     * Reads the SuperMemo2 parameters of a card.
+     * @param cardId The primary key of the card.
+     * @return The REP_NUMBER, EASY_FACTOR, and IR_INTERVAL of the card, in that order.
+     * @throws SQLException If the card does not exist, or the query cannot be executed, throw an exception.
+     */
+    public double[] getReviewParams(int cardId) throws SQLException {
+        PreparedStatement preStmt = statements.prepare(SELECT_REVIEW);
+        preStmt.setInt(1, cardId);
+        ResultSet rs = preStmt.executeQuery();
+        try {
+            if (!rs.next()) { throw new SQLException("Card " + cardId + " does not exist"); }
+            return new double[]{rs.getInt("REP_NUMBER"), rs.getDouble("EASY_FACTOR"), rs.getLong("IR_INTERVAL")};
+        } finally {
+            rs.close();
+        }
+    }
+
+    /**
+     * Stores the result of a review.
+     * @param cardId The primary key of the card.
+     * @param repNum The new REP_NUMBER.
+     * @param easFactor The new EASY_FACTOR.
+     * @param interval The new IR_INTERVAL, in days.
+     * @param lastReview The UNIX time-stamp of the review.
+     * @throws SQLException If the card cannot be updated, throw an exception.
+     */
+    public void updateReview(int cardId, double repNum, double easFactor, double interval, long lastReview)
+            throws SQLException {
+        PreparedStatement preStmt = statements.prepare(UPDATE_REVIEW);
+        preStmt.setDouble(1, repNum);
+        preStmt.setDouble(2, easFactor);
+        preStmt.setDouble(3, interval);
+        preStmt.setLong(4, lastReview);
+        preStmt.setInt(5, cardId);
+        preStmt.executeUpdate();
+    }
+}
@@ -0,0 +1,170 @@
+import javax.swing.ImageIcon;
+import javax.swing.JComponent;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * This class draws the chess board as a single Swing component. The position is copied from a Position into a compact
+ * array of 64 bytes, and the squares and pieces are drawn in one paintComponent pass. When a new position is set, only
+ * the squares whose contents changed are repainted, so switching between two positions does not create any components
+ * or trigger a layout of the rest of the GUI.
+ *
+ * A position can also be drawn ahead of time into an image with render, on any thread. If that image is passed to
+ * setPosition, the board is painted by copying from it instead of drawing each square and piece.
+ */
+public final class ChessBoardComponent extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    // Colors of the light and dark squares.
+    private static final Color LIGHT = Color.WHITE;
+    private static final Color DARK = Color.decode("#428D44");
+
+    // Marks an empty square in the position array.
+    private static final byte EMPTY = (byte) Position.NONE;
+
+    // The displayed position, with index 0 being the top-left square as seen by the user and index 63 the bottom-right
+    // square. Each element is EMPTY or the index of a piece, as used by Position.
+    private final byte[] squares = new byte[64];
+
+    // Scratch array the next position is parsed into before it is compared with the displayed one.
+    private final byte[] next = new byte[64];
+
+    // The displayed position drawn ahead of time, or null if it has to be drawn square by square.
+    private BufferedImage rendered;
+
+    /**
+     * Constructor for ChessBoardComponent. The board starts empty.
+     */
+    public ChessBoardComponent() {
+        Arrays.fill(squares, EMPTY);
+        this.setPreferredSize(new Dimension(450, 450));
+        this.setOpaque(true);
+    }
+
+    /**
+     * This method changes the board to display a new chess position. Only the squares that differ from the position
+     * currently displayed are repainted.
+     * @param position The position to display.
+     * @param isWhite If true, the board is shown from white's side. Otherwise, it is shown from black's side.
+     */
+    public void setPosition(Position position, boolean isWhite) { this.setPosition(position, isWhite, null); }
+
+    /**
+     * This method changes the board to display a new chess position that may already have been drawn with render.
+     * @param position The position to display.
+     * @param isWhite If true, the board is shown from white's side. Otherwise, it is shown from black's side.
+     * @param image The same position, drawn by render, or null. An image drawn at a different square size than the
+     * board has now is not used.
+     */
+    public void setPosition(Position position, boolean isWhite, BufferedImage image) {
+        Metrics.Probe probe = Metrics.start(Metrics.Kind.PAINT, "board.setPosition");
+        ChessBoardComponent.layOut(position, isWhite, next);
+
+        // Compare the two positions and repaint only the squares that changed.
+        int size = this.getSquareSize();
+        rendered = image != null && image.getWidth() == 8 * size ? image : null;
+        for (int sq = 0; sq < 64; sq++) {
+            if (squares[sq] != next[sq]) {
+                squares[sq] = next[sq];
+                this.repaint((sq % 8) * size, (sq / 8) * size, size, size);
+            }
+        }
+        probe.stop();
+    }
+
+    /**
+     * Draws a position into a new image, the same way the board would draw it. This can be called on any thread.
+     * @param position The position to draw.
+     * @param isWhite If true, the board is drawn from white's side. Otherwise, it is drawn from black's side.
+     * @param size Side length of one square in pixels, such as getSquareSize returns.
+     * @return An image of the whole board, 8 squares wide and high.
+     * @throws NoSuchFieldException If a piece has no image in the img directory, throw an exception.
+     */
+    public static BufferedImage render(Position position, boolean isWhite, int size) throws NoSuchFieldException {
+        Metrics.Probe probe = Metrics.start(Metrics.Kind.PAINT, "board.render");
+        byte[] layout = new byte[64];
+        ChessBoardComponent.layOut(position, isWhite, layout);
+
+        BufferedImage image = new BufferedImage(8 * size, 8 * size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            ChessBoardComponent.drawSquares(g, layout, size, null);
+        } finally {
+            g.dispose();
+        }
+        probe.stop();
+        return image;
+    }
+
+    /**
+     * Draws the squares and pieces that intersect the area being repainted.
+     * @param g The graphics context to draw on.
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        Metrics.Probe probe = Metrics.start(Metrics.Kind.PAINT, "board.paint");
+        int size = this.getSquareSize();
+        Rectangle clip = g.getClipBounds();
+
+        // If the component is not square, fill the space to the right of and below the board with the background.
+        g.setColor(this.getBackground());
+        g.fillRect(8 * size, 0, this.getWidth() - 8 * size, this.getHeight());
+        g.fillRect(0, 8 * size, 8 * size, this.getHeight() - 8 * size);
+
+        if (rendered != null && rendered.getWidth() == 8 * size) {
+            // The image covers the whole board, and drawing it is clipped to the area being repainted.
+            g.drawImage(rendered, 0, 0, null);
+        } else {
+            try {
+                ChessBoardComponent.drawSquares(g, squares, size, clip);
+            } catch (NoSuchFieldException ex) {
+                System.out.println("paintComponent encountered an error");
+                System.out.println(ex.getMessage());
+            }
+        }
+        probe.stop();
+    }
+
+    // Copies a position into a 64-byte array. Index 0 of the array is the top-left square, which is a8 when the board
+    // is shown from white's side and h1 when it is shown from black's side.
+    private static void layOut(Position position, boolean isWhite, byte[] layout) {
+        for (int index = 0; index < 64; index++) {
+            int square = (7 - index / 8) * 8 + index % 8;
+            layout[isWhite ? index : 63 - index] = (byte) position.pieceAt(square);
+        }
+    }
+
+    // Draws the squares of a layout that intersect the clip, or every square if the clip is null.
+    private static void drawSquares(Graphics g, byte[] layout, int size, Rectangle clip) throws NoSuchFieldException {
+        for (int sq = 0; sq < 64; sq++) {
+            int x = (sq % 8) * size;
+            int y = (sq / 8) * size;
+
+            // Skip squares outside the area being repainted.
+            if (clip != null && !clip.intersects(x, y, size, size)) { continue; }
+
+            // The top-left square is light, and the colors alternate along each rank and file.
+            g.setColor(((sq / 8) + (sq % 8)) % 2 == 0 ? LIGHT : DARK);
+            g.fillRect(x, y, size, size);
+
+            if (layout[sq] != EMPTY) {
+                // The sprite cache holds every piece already scaled to the square size.
+                ImageIcon sprite = SpriteCache.get(layout[sq], size, size);
+                g.drawImage(sprite.getImage(), x, y, null);
+            }
+        }
+    }
+
+    /**
+     * @return The side length of one square in pixels. The board stays square, even if the component does not.
+     */
+    public int getSquareSize() {
+        int size = Math.min(this.getWidth(), this.getHeight()) / 8;
+        return size > 0 ? size : 1;
+    }
+}
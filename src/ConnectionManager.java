@@ -0,0 +1,274 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class opens the connections to the database: one writer connection, used for every change, and a small pool of
+ * read-only connections. The database is switched to write-ahead logging (WAL), in which readers see the last
+ * committed state of the database and neither wait for the writer nor hold it up. Queries that only read, such as the
+ * card list and the line search, can therefore run on a reader while grades are being committed on the writer.
+ *
+ * Every connection is tuned with the same Settings when it is opened. Reader connections are opened the first time
+ * they are needed, up to the size of the pool.
+ */
+public final class ConnectionManager implements AutoCloseable {
+    /**
+     * The PRAGMA values applied to every connection. The defaults suit a desktop program with a small database, and
+     * each can be overridden with a system property, such as -Dadjust.db.synchronous=FULL.
+     */
+    public static final class Settings {
+        // How often SQLite waits for data to reach the disk. NORMAL is safe in WAL mode: a commit can only be lost to a
+        // power failure, never corrupted.
+        private String synchronous = "NORMAL";
+
+        // Size of each connection's page cache. A negative number is in KiB, so the default is 16 MiB.
+        private int cacheSize = -16000;
+
+        // Number of bytes of the database file that are read through memory-mapped I/O instead of read calls.
+        private long mmapSize = 256L * 1024 * 1024;
+
+        // Where temporary tables and indexes, such as those built for ORDER BY and GROUP BY, are kept.
+        private String tempStore = "MEMORY";
+
+        // Number of read-only connections in the pool.
+        private int readers = 2;
+
+        // Milliseconds a connection waits for a lock held by another connection or process before giving up.
+        private int busyTimeout = 5000;
+
+        // Whether SQLite enforces foreign keys, which also makes ON DELETE CASCADE remove a deleted deck's or card's
+        // rows in the tables that refer to it. Bulk imports that insert moves before their lines turn it off.
+        private boolean foreignKeys = true;
+
+        // Statements that take longer than this many milliseconds are printed with their parameters and query plan. A
+        // negative number turns the log off.
+        private long slowQueryMillis = 100;
+
+        /**
+         * @return The default settings, with any of them overridden by the adjust.db.synchronous, adjust.db.cacheSize,
+         * adjust.db.mmapSize, adjust.db.tempStore, adjust.db.readers, adjust.db.busyTimeout, adjust.db.foreignKeys, and
+         * adjust.db.slowQueryMillis system properties.
+         */
+        public static Settings fromSystemProperties() {
+            Settings settings = new Settings();
+            settings.setSynchronous(System.getProperty("adjust.db.synchronous", settings.synchronous));
+            settings.setCacheSize(Integer.getInteger("adjust.db.cacheSize", settings.cacheSize));
+            settings.setMmapSize(Long.getLong("adjust.db.mmapSize", settings.mmapSize));
+            settings.setTempStore(System.getProperty("adjust.db.tempStore", settings.tempStore));
+            settings.setReaders(Integer.getInteger("adjust.db.readers", settings.readers));
+            settings.setBusyTimeout(Integer.getInteger("adjust.db.busyTimeout", settings.busyTimeout));
+            settings.setForeignKeys(Boolean.parseBoolean(System.getProperty("adjust.db.foreignKeys",
+                    String.valueOf(settings.foreignKeys))));
+            settings.setSlowQueryMillis(Long.getLong("adjust.db.slowQueryMillis", settings.slowQueryMillis));
+            return settings;
+        }
+
+        // Setters for the settings. The values are written into PRAGMA statements, so each one is checked here.
+        public void setSynchronous(String value) {
+            synchronous = Settings.oneOf("synchronous", value, "OFF", "NORMAL", "FULL", "EXTRA");
+        }
+        public void setCacheSize(int value) { cacheSize = value; }
+        public void setMmapSize(long value) {
+            if (value < 0) { throw new IllegalArgumentException("mmap_size can't be negative!"); }
+            mmapSize = value;
+        }
+        public void setTempStore(String value) {
+            tempStore = Settings.oneOf("temp_store", value, "DEFAULT", "FILE", "MEMORY");
+        }
+        public void setReaders(int value) {
+            if (value < 0) { throw new IllegalArgumentException("The number of readers can't be negative!"); }
+            readers = value;
+        }
+        public void setBusyTimeout(int value) {
+            if (value < 0) { throw new IllegalArgumentException("busy_timeout can't be negative!"); }
+            busyTimeout = value;
+        }
+        public void setForeignKeys(boolean value) { foreignKeys = value; }
+        public void setSlowQueryMillis(long value) { slowQueryMillis = value; }
+
+        // Getters for the settings.
+        public String getSynchronous() { return synchronous; }
+        public int getCacheSize() { return cacheSize; }
+        public long getMmapSize() { return mmapSize; }
+        public String getTempStore() { return tempStore; }
+        public int getReaders() { return readers; }
+        public int getBusyTimeout() { return busyTimeout; }
+        public boolean getForeignKeys() { return foreignKeys; }
+        public long getSlowQueryMillis() { return slowQueryMillis; }
+
+        private static String oneOf(String pragma, String value, String... allowed) {
+            String upper = value.trim().toUpperCase(Locale.ROOT);
+            for (String option : allowed) {
+                if (option.equals(upper)) { return upper; }
+            }
+            throw new IllegalArgumentException("Invalid value for " + pragma + ": " + value);
+        }
+    }
+
+    // SQLITE_OPEN_READONLY, passed to the driver so reader connections are opened read-only.
+    private static final String OPEN_READONLY = "1";
+
+    private final String url;
+    private final Settings settings;
+    private final Connection writer;
+
+    // Reader connections that are not in use, and every reader connection opened so far. Guarded by this object's lock,
+    // apart from idle, which is a thread-safe queue.
+    private final BlockingQueue<Connection> idle;
+    private final List<Connection> readers = new ArrayList<>();
+
+    private boolean closed = false;
+
+    /**
+     * Opens the writer connection and turns on WAL mode.
+     * @param newUrl JDBC URL of the database, such as "jdbc:sqlite:database.db".
+     * @param newSettings The PRAGMA values for every connection.
+     * @throws SQLException If the database cannot be opened, throw an exception.
+     */
+    public ConnectionManager(String newUrl, Settings newSettings) throws SQLException {
+        url = newUrl;
+        settings = newSettings;
+        idle = new ArrayBlockingQueue<>(Math.max(settings.getReaders(), 1));
+
+        // Every connection is wrapped so its statements and commits are timed, and slow statements are logged. See
+        // Metrics and TimedConnection.
+        writer = TimedConnection.wrap(DriverManager.getConnection(url), settings.getSlowQueryMillis());
+        try {
+            // The journal mode is stored in the database file, so this only does any work the first time. An in-memory
+            // database cannot use WAL, and stays in its own mode.
+            Statement stmt = writer.createStatement();
+            stmt.execute("PRAGMA journal_mode = WAL");
+            stmt.close();
+            this.tune(writer);
+        } catch (SQLException ex) {
+            writer.close();
+            throw ex;
+        }
+
+        // Changes are committed by hand, as they were on the single connection this replaces.
+        writer.setAutoCommit(false);
+    }
+
+    /**
+     * @return The writer connection, which has auto commit turned off. It must only be used by one thread at a time.
+     */
+    public Connection getWriter() { return writer; }
+
+    /**
+     * @return The settings every connection was opened with.
+     */
+    public Settings getSettings() { return settings; }
+
+    /**
+     * @return True if there is a pool of read-only connections. If not, reads must use the writer connection.
+     */
+    public boolean hasReaders() { return settings.getReaders() > 0; }
+
+    /**
+     * Takes a read-only connection from the pool, opening a new one if the pool is not full yet, or waiting for one to
+     * be released if it is. Reader connections have auto commit turned on, so each query sees the latest commit.
+     * @return A reader connection, which must be given back with releaseReader.
+     * @throws SQLException If a connection cannot be opened, or the manager is closed, throw an exception.
+     */
+    public Connection acquireReader() throws SQLException {
+        if (!this.hasReaders()) { throw new IllegalStateException("This ConnectionManager has no readers!"); }
+
+        Connection conn = idle.poll();
+        if (conn != null) { return conn; }
+
+        synchronized (this) {
+            if (closed) { throw new SQLException("The connection manager is closed"); }
+            if (readers.size() < settings.getReaders()) {
+                conn = this.openReader();
+                readers.add(conn);
+                return conn;
+            }
+        }
+
+        try {
+            return idle.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a reader connection", ex);
+        }
+    }
+
+    /**
+     * Gives a reader connection back to the pool.
+     * @param conn A connection returned by acquireReader.
+     */
+    public void releaseReader(Connection conn) {
+        synchronized (this) {
+            if (closed) {
+                ConnectionManager.closeQuietly(conn);
+                return;
+            }
+        }
+        idle.offer(conn);
+    }
+
+    /**
+     * Closes the writer and every reader connection. Readers in use are closed when they are released.
+     * @throws SQLException If the writer connection cannot be closed, throw an exception.
+     */
+    @Override
+    public void close() throws SQLException {
+        synchronized (this) {
+            if (closed) { return; }
+            closed = true;
+        }
+        Connection conn;
+        while ((conn = idle.poll()) != null) { ConnectionManager.closeQuietly(conn); }
+        StatementCache.release(writer);
+        writer.close();
+    }
+
+    private Connection openReader() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("open_mode", OPEN_READONLY);
+        Connection conn = TimedConnection.wrap(DriverManager.getConnection(url, properties),
+                settings.getSlowQueryMillis());
+        try {
+            this.tune(conn);
+
+            // Refuse writes even if the driver ignored open_mode.
+            Statement stmt = conn.createStatement();
+            stmt.execute("PRAGMA query_only = ON");
+            stmt.close();
+        } catch (SQLException ex) {
+            conn.close();
+            throw ex;
+        }
+        return conn;
+    }
+
+    // Applies the settings to a newly opened connection.
+    private void tune(Connection conn) throws SQLException {
+        Statement stmt = conn.createStatement();
+        stmt.execute("PRAGMA synchronous = " + settings.getSynchronous());
+        stmt.execute("PRAGMA cache_size = " + settings.getCacheSize());
+        stmt.execute("PRAGMA temp_store = " + settings.getTempStore());
+        stmt.execute("PRAGMA busy_timeout = " + settings.getBusyTimeout());
+        stmt.execute("PRAGMA mmap_size = " + settings.getMmapSize());
+        // This has no effect inside a transaction, so it must be set before auto commit is turned off.
+        stmt.execute("PRAGMA foreign_keys = " + (settings.getForeignKeys() ? "ON" : "OFF"));
+        stmt.close();
+    }
+
+    private static void closeQuietly(Connection conn) {
+        StatementCache.release(conn);
+        try {
+            conn.close();
+        } catch (SQLException ex) {
+            System.out.println("ConnectionManager encountered an error");
+            System.out.println(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class reads a CSV file one record at a time from a channel. Fields may be quoted, in which case they can contain
+ * commas, line breaks, and quotes written as two quotes (""). Text outside the quotes of a quoted field is ignored.
+ * Records end with either \n or \r\n, and empty lines are skipped.
+ *
+ * The reader works through fixed buffers: bytes are read from the channel into one buffer and decoded as UTF-8 into
+ * another, and the fields of the current record are copied into a reusable character array. Reading a record therefore
+ * creates no objects. Fields are returned as CharSequence views of that array, which are only valid until the next
+ * record is read; call getString to keep a field.
+ */
+public final class CsvReader implements Closeable {
+    private final ReadableByteChannel channel;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // Raw bytes from the channel, and the characters decoded from them. Both start out empty.
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(64 * 1024).flip();
+    private final CharBuffer chars = CharBuffer.allocate(16 * 1024).flip();
+    private boolean endOfInput = false;
+    private boolean flushed = false;
+
+    // The characters of the current record's fields, stored one after another, with the start and end of each field.
+    private char[] record = new char[1024];
+    private int recordLength;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private Field[] fields = new Field[16];
+    private int fieldCount;
+
+    // The number of records read so far, including the current one.
+    private long recordNumber;
+
+    /**
+     * Constructor for CsvReader.
+     * @param channel The channel to read from. It is closed when the reader is closed.
+     */
+    public CsvReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        for (int i = 0; i < fields.length; i++) { fields[i] = new Field(i); }
+    }
+
+    /**
+     * Reads the next record, replacing the current one.
+     * @return False if the end of the input has been reached, and there are no more records.
+     * @throws IOException If the channel cannot be read, or the input ends inside a quoted field.
+     */
+    public boolean next() throws IOException {
+        int c;
+        // Skip empty lines, so that a blank line is never read as a record with one empty field.
+        do {
+            c = this.read();
+            if (c == -1) { return false; }
+        } while (c == '\n' || c == '\r');
+
+        recordLength = 0;
+        fieldCount = 0;
+        recordNumber = recordNumber + 1;
+        while (true) {
+            int start = recordLength;
+            if (c == '"') {
+                // Quoted field: everything up to the closing quote belongs to the field, and "" is one quote.
+                while (true) {
+                    c = this.read();
+                    if (c == -1) { throw new IOException("Unterminated quoted field in record " + recordNumber); }
+                    if (c == '"') {
+                        if (this.peek() != '"') { break; }
+                        this.read();
+                    }
+                    this.append((char) c);
+                }
+                // Ignore anything between the closing quote and the next separator.
+                do { c = this.read(); } while (c != ',' && c != '\n' && c != '\r' && c != -1);
+            } else {
+                while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+                    this.append((char) c);
+                    c = this.read();
+                }
+            }
+            this.addField(start, recordLength);
+
+            if (c != ',') { break; }
+            c = this.read();
+        }
+        if (c == '\r' && this.peek() == '\n') { this.read(); }
+        return true;
+    }
+
+    /**
+     * @return The number of fields in the current record.
+     */
+    public int getFieldCount() { return fieldCount; }
+
+    /**
+     * @return The number of records read so far. The first record is number 1.
+     */
+    public long getRecordNumber() { return recordNumber; }
+
+    /**
+     * Returns a field of the current record without copying it.
+     * @param index The index of the field, starting at 0.
+     * @return A view of the field, which is only valid until the next record is read.
+     */
+    public CharSequence getField(int index) {
+        this.checkIndex(index);
+        return fields[index];
+    }
+
+    /**
+     * @param index The index of the field, starting at 0.
+     * @return A copy of the field as a String.
+     */
+    public String getString(int index) {
+        this.checkIndex(index);
+        return new String(record, starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * Parses a field as a decimal integer without copying it.
+     * @param index The index of the field, starting at 0.
+     * @return The value of the field.
+     * @throws NumberFormatException If the field is not an integer.
+     */
+    public int getInt(int index) {
+        this.checkIndex(index);
+        int i = starts[index];
+        int end = ends[index];
+        boolean negative = i < end && record[i] == '-';
+        if (negative) { i++; }
+        if (i == end) {
+            throw new NumberFormatException("Field " + index + " of record " + recordNumber + " is empty");
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            char c = record[i];
+            if (c < '0' || c > '9' || value > Integer.MAX_VALUE) {
+                throw new NumberFormatException("Field " + index + " of record " + recordNumber +
+                        " is not an integer: " + this.getString(index));
+            }
+            value = value * 10 + (c - '0');
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            throw new NumberFormatException("Field " + index + " of record " + recordNumber + " is out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Closes the underlying channel.
+     * @throws IOException If the channel cannot be closed.
+     */
+    @Override
+    public void close() throws IOException { channel.close(); }
+
+    // Returns the next character, or -1 at the end of the input.
+    private int read() throws IOException {
+        if (!chars.hasRemaining() && !this.fill()) { return -1; }
+        return chars.get();
+    }
+
+    // Returns the next character without consuming it, or -1 at the end of the input.
+    private int peek() throws IOException {
+        if (!chars.hasRemaining() && !this.fill()) { return -1; }
+        return chars.get(chars.position());
+    }
+
+    // Decodes more characters once every decoded character has been consumed. Returns false at the end of the input.
+    private boolean fill() throws IOException {
+        // Once the decoder has been flushed, every character has been returned.
+        if (flushed) { return false; }
+        chars.clear();
+        while (true) {
+            if (!endOfInput) {
+                bytes.compact();
+                if (channel.read(bytes) < 0) { endOfInput = true; }
+                bytes.flip();
+            }
+            decoder.decode(bytes, chars, endOfInput);
+            if (endOfInput && !bytes.hasRemaining() && !flushed) {
+                decoder.flush(chars);
+                flushed = true;
+            }
+            if (chars.position() > 0 || flushed) {
+                chars.flip();
+                return chars.hasRemaining();
+            }
+        }
+    }
+
+    private void append(char c) {
+        if (recordLength == record.length) { record = Arrays.copyOf(record, record.length * 2); }
+        record[recordLength++] = c;
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+            fields = Arrays.copyOf(fields, fieldCount * 2);
+            for (int i = fieldCount; i < fields.length; i++) { fields[i] = new Field(i); }
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount = fieldCount + 1;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Record " + recordNumber + " has no field " + index);
+        }
+    }
+
+    /**
+     * A view of one field of the current record. There is one instance per field index, reused for every record.
+     */
+    private final class Field implements CharSequence {
+        private final int index;
+
+        private Field(int index) { this.index = index; }
+
+        @Override
+        public int length() { return ends[index] - starts[index]; }
+
+        @Override
+        public char charAt(int i) { return record[starts[index] + i]; }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(record, starts[index] + start, end - start);
+        }
+
+        @Override
+        public String toString() { return CsvReader.this.getString(index); }
+    }
+}
@@ -0,0 +1,178 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.SwingUtilities;
+
+/**
+ * This class runs all database work on one dedicated thread, which is the only thread that uses Main.conn, the writer
+ * connection. The GUI classes submit their queries and updates as tasks and get a CompletableFuture back, so the Event
+ * Dispatch Thread never waits for SQLite. Results are handed back to the GUI with one of the CompletableFuture methods
+ * that takes an executor, using Database.EDT, which runs the callback on the Event Dispatch Thread.
+ *
+ * Tasks run one at a time in the order they were submitted, so a JDBC connection, which is not safe to share between
+ * threads, is never used by two tasks at once, and each task sees the changes committed by the tasks before it.
+ *
+ * Queries that only read can be run with read instead, which runs them on a separate pool of threads with one of the
+ * read-only connections from Main.connections. They do not wait for the tasks on the database thread, and see the
+ * database as it was at the last commit.
+ */
+public final class Database {
+    /**
+     * A piece of database work, which runs on the database thread.
+     * @param <T> The type of the result.
+     */
+    public interface Task<T> {
+        T call() throws Exception;
+    }
+
+    /**
+     * A read-only query, which runs on a reader thread with the connection it is given.
+     * @param <T> The type of the result.
+     */
+    public interface Query<T> {
+        T call(Connection conn) throws Exception;
+    }
+
+    // Runs callbacks on the Event Dispatch Thread, for use with thenAcceptAsync, whenCompleteAsync, and the like.
+    public static final Executor EDT = SwingUtilities::invokeLater;
+
+    // The database thread. It is a daemon thread, so it never keeps the program alive on its own.
+    private static volatile Thread thread;
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "database");
+        t.setDaemon(true);
+        thread = t;
+        return t;
+    });
+
+    // Threads that run read-only queries, one per reader connection. Created when the first query is run, once the
+    // size of the pool is known.
+    private static ExecutorService readers;
+
+    private Database() {}
+
+    /**
+     * Queues a task to run on the database thread. A task submitted from the database thread itself, by another task,
+     * runs straight away instead, as it would otherwise wait for the task that submitted it. If a task throws an
+     * exception, anything it left uncommitted on Main.conn is rolled back, so a failed task can never be committed by
+     * a later one.
+     * @param task The work to do.
+     * @param <T> The type of the result.
+     * @return A future that completes with the result of the task, or with the exception it threw.
+     */
+    public static <T> CompletableFuture<T> submit(Task<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (Database.isDatabaseThread()) {
+            Database.complete(result, task);
+        } else {
+            executor.execute(() -> {
+                Database.complete(result, task);
+                if (result.isCompletedExceptionally()) { Database.rollback(); }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Runs a read-only query on a reader thread, with a connection from the pool in Main.connections. If there is no
+     * pool, the query is run on the database thread with the writer connection instead.
+     * @param query The query to run. It must not change the database, and must not keep the connection.
+     * @param <T> The type of the result.
+     * @return A future that completes with the result of the query, or with the exception it threw.
+     */
+    public static <T> CompletableFuture<T> read(Query<T> query) {
+        ConnectionManager manager = Main.connections;
+        if (manager == null || !manager.hasReaders()) { return Database.submit(() -> query.call(Main.conn)); }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Database.readers(manager).execute(() -> Database.complete(result, () -> {
+            Connection conn = manager.acquireReader();
+            try {
+                return query.call(conn);
+            } finally {
+                manager.releaseReader(conn);
+            }
+        }));
+        return result;
+    }
+
+    private static synchronized ExecutorService readers(ConnectionManager manager) {
+        if (readers == null) {
+            readers = Executors.newFixedThreadPool(manager.getSettings().getReaders(), r -> {
+                Thread t = new Thread(r, "database-reader");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return readers;
+    }
+
+    /**
+     * Runs a task on the database thread and waits for it to finish. This must never be called on the Event Dispatch
+     * Thread; it is meant for startup, before the GUI is shown, and for background threads.
+     * @param task The work to do.
+     * @param <T> The type of the result.
+     * @return The result of the task.
+     * @throws SQLException If the task throws an exception, throw it. Checked exceptions other than SQLException are
+     * wrapped in one.
+     */
+    public static <T> T call(Task<T> task) throws SQLException {
+        if (SwingUtilities.isEventDispatchThread()) {
+            throw new IllegalStateException("Can't wait for the database on the Event Dispatch Thread!");
+        }
+        try {
+            return Database.submit(task).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the database", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SQLException) { throw (SQLException) cause; }
+            if (cause instanceof RuntimeException) { throw (RuntimeException) cause; }
+            if (cause instanceof Error) { throw (Error) cause; }
+            throw new SQLException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * @return True if the calling thread is the database thread.
+     */
+    public static boolean isDatabaseThread() { return Thread.currentThread() == thread; }
+
+    /**
+     * Prints the error a task failed with, in the same way the rest of the program reports errors, and counts it in
+     * Metrics under "error" followed by the caller.
+     * @param caller The name of the method or listener that submitted the task.
+     * @param ex The exception the task's future completed with.
+     */
+    public static void report(String caller, Throwable ex) {
+        Metrics.increment("error " + caller);
+
+        // Futures that depend on a failed future complete with a CompletionException wrapping the original exception.
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        System.out.println(caller + " encountered an error");
+        System.out.println(cause.getMessage());
+    }
+
+    private static void rollback() {
+        if (Main.conn == null) { return; }
+        try {
+            Main.conn.rollback();
+        } catch (SQLException ex) {
+            Database.report("Database", ex);
+        }
+    }
+
+    private static <T> void complete(CompletableFuture<T> result, Task<T> task) {
+        try {
+            result.complete(task.call());
+        } catch (Throwable ex) {
+            result.completeExceptionally(ex);
+        }
+    }
+}
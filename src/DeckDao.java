@@ -0,0 +1,67 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * This class holds the queries that change the DECKS table. Each method runs its query through the connection's
+ * StatementCache, so the statement is only prepared the first time. The methods do not commit; the caller decides
+ * where each transaction ends.
+ */
+public final class DeckDao {
+    static final String INSERT = "INSERT INTO DECKS(ID, NAME) VALUES(NULL, ?)";
+    static final String RENAME = "UPDATE DECKS SET NAME = ? WHERE ID = ?";
+    static final String DELETE = "DELETE FROM DECKS WHERE ID = ?";
+
+    private final StatementCache statements;
+
+    /**
+     * Constructor for DeckDao.
+     * @param conn The connection to run the queries on.
+     */
+    public DeckDao(Connection conn) { statements = StatementCache.of(conn); }
+
+    /**
+     * Creates a new, empty deck.
+     * @param name The name of the deck.
+     * @return The primary key SQLite assigned to the new deck.
+     * @throws SQLException If the deck cannot be created, throw an exception.
+     */
+    public int create(String name) throws SQLException {
+        // Pass NULL so that SQLite auto-increments the INTEGER PRIMARY KEY using the value of ROWID.
+        PreparedStatement createStmt = statements.prepareReturningKeys(INSERT);
+        createStmt.setString(1, name);
+        createStmt.executeUpdate();
+
+        ResultSet keys = createStmt.getGeneratedKeys();
+        keys.next();
+        int deckPK = keys.getInt(1);
+        keys.close();
+        return deckPK;
+    }
+
+    /**
+     * Renames a deck.
+     * @param deckPK The primary key of the deck.
+     * @param name The new name of the deck.
+     * @throws SQLException If the deck cannot be renamed, throw an exception.
+     */
+    public void rename(int deckPK, String name) throws SQLException {
+        PreparedStatement renameStmt = statements.prepare(RENAME);
+        renameStmt.setString(1, name);
+        renameStmt.setInt(2, deckPK);
+        renameStmt.executeUpdate();
+    }
+
+    /**
+     * Deletes a deck. Its cards, and the links between its cards and their moves, are deleted with it by the ON DELETE
+     * CASCADE foreign keys on CARDS and CARDS_TO_MOVES.
+     * @param deckPK The primary key of the deck.
+     * @throws SQLException If the deck cannot be deleted, throw an exception.
+     */
+    public void delete(int deckPK) throws SQLException {
+        PreparedStatement deleteStmt = statements.prepare(DELETE);
+        deleteStmt.setInt(1, deckPK);
+        deleteStmt.executeUpdate();
+    }
+}
@@ -0,0 +1,221 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * This class keeps a summary of every deck in memory: the total number of cards, how many are new, learning, or in
+ * review, and how many are due. The summary is computed with one grouped query when the program starts. After that,
+ * the GUI classes report every review, card creation, and deletion, so the counts stay correct without querying the
+ * CARDS table again.
+ *
+ * Like Main.conn, the statistics are static and shared by the whole program.
+ */
+public final class DeckStats {
+    // A card that has never been reviewed. New cards are created with an IR_INTERVAL of 0.
+    public static final int NEW = 0;
+
+    // A card that has been reviewed, but has not yet been passed twice in a row.
+    public static final int LEARNING = 1;
+
+    // A card that has been passed at least twice in a row and is on the long SuperMemo2 intervals.
+    public static final int REVIEW = 2;
+
+    // Groups the cards of each deck by due time and state. Each row of the result is a bucket of cards that share all
+    // three, which is enough to rebuild the totals and the due-time histogram. The LEFT JOIN keeps decks with no cards,
+    // which come back as a single row with a count of 0.
+    static final String LOAD = "SELECT DECKS.ID, DECKS.NAME, CARDS.DUE_AT, " +
+                        "CASE WHEN CARDS.IR_INTERVAL = 0 THEN 0 WHEN CARDS.REP_NUMBER < 2 THEN 1 " +
+                        "ELSE 2 END AS STATE, " +
+                        "COUNT(CARDS.ID) " +
+                        "FROM DECKS LEFT JOIN CARDS ON DECKS.ID = CARDS.DECKS_ID " +
+                        "GROUP BY DECKS.ID, CARDS.DUE_AT, STATE ";
+
+    // Summaries for every deck, keyed by DECKS.ID.
+    private static final Map<Integer, Deck> decks = new HashMap<>();
+
+    private DeckStats() {}
+
+    /**
+     * Computes the summary for every deck in one pass over DECKS and CARDS, replacing anything already in memory.
+     * @param conn Connection to the database.
+     * @throws SQLException If the query cannot be executed, throw an exception.
+     */
+    public static synchronized void load(Connection conn) throws SQLException {
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(LOAD);
+
+        decks.clear();
+        while (rs.next()) {
+            int deckId = rs.getInt(1);
+            Deck deck = decks.get(deckId);
+            if (deck == null) {
+                deck = new Deck(deckId, rs.getString(2));
+                decks.put(deckId, deck);
+            }
+
+            int count = rs.getInt(5);
+            if (count > 0) { deck.add(rs.getLong(3), rs.getInt(4), count); }
+        }
+        rs.close();
+        stmt.close();
+    }
+
+    /**
+     * Returns a snapshot of every deck, ordered by name in descending order.
+     * @param currentTime The current UNIX time-stamp in milliseconds, used to decide which cards are due.
+     * @return A list of summaries, one per deck.
+     */
+    public static synchronized List<Summary> getSummaries(long currentTime) {
+        List<Summary> list = new ArrayList<>(decks.size());
+        for (Deck deck : decks.values()) {
+            list.add(new Summary(deck.id, deck.name, deck.total, deck.getDueCount(currentTime),
+                    deck.states[NEW], deck.states[LEARNING]));
+        }
+        list.sort(Comparator.comparing(Summary::getName, Comparator.nullsFirst(Comparator.reverseOrder())));
+        return list;
+    }
+
+    /**
+     * Determines the state of a card from its SuperMemo2 parameters.
+     * @param repNum The Repetition Number of the card.
+     * @param interval The Inter-Repetition Interval of the card, in days.
+     * @return NEW, LEARNING, or REVIEW.
+     */
+    public static int stateOf(int repNum, double interval) {
+        if (interval == 0) { return NEW; }
+        if (repNum < 2) { return LEARNING; }
+        return REVIEW;
+    }
+
+    // Methods that keep the summaries in step with changes made by the rest of the program.
+
+    public static synchronized void deckCreated(int deckId, String name) { decks.put(deckId, new Deck(deckId, name)); }
+
+    public static synchronized void deckRenamed(int deckId, String name) {
+        Deck deck = decks.get(deckId);
+        if (deck != null) { deck.name = name; }
+    }
+
+    public static synchronized void deckDeleted(int deckId) { decks.remove(deckId); }
+
+    /**
+     * Records that new cards were added to a deck.
+     * @param deckId Primary key of the deck.
+     * @param count Number of cards added.
+     * @param dueAt UNIX time-stamp at which the new cards are due.
+     */
+    public static synchronized void cardsAdded(int deckId, int count, long dueAt) {
+        Deck deck = decks.get(deckId);
+        if (deck != null && count > 0) { deck.add(dueAt, NEW, count); }
+    }
+
+    /**
+     * Records that a card was deleted from a deck.
+     * @param deckId Primary key of the deck.
+     * @param dueAt UNIX time-stamp at which the card was due.
+     * @param state State of the card, as returned by stateOf.
+     */
+    public static synchronized void cardRemoved(int deckId, long dueAt, int state) {
+        Deck deck = decks.get(deckId);
+        if (deck != null) { deck.add(dueAt, state, -1); }
+    }
+
+    /**
+     * Records that a card was reviewed and moved to a new due time and state.
+     * @param deckId Primary key of the deck.
+     * @param oldDueAt UNIX time-stamp at which the card was due before the review.
+     * @param oldState State of the card before the review.
+     * @param newDueAt UNIX time-stamp at which the card is due after the review.
+     * @param newState State of the card after the review.
+     */
+    public static synchronized void cardReviewed(int deckId, long oldDueAt, int oldState, long newDueAt, int newState) {
+        Deck deck = decks.get(deckId);
+        if (deck == null) { return; }
+        deck.add(oldDueAt, oldState, -1);
+        deck.add(newDueAt, newState, 1);
+    }
+
+    /**
+     * The in-memory counts for one deck.
+     */
+    private static final class Deck {
+        private final int id;
+        private String name;
+        private int total = 0;
+
+        // Number of cards in each state, indexed by NEW, LEARNING, and REVIEW.
+        private final int[] states = new int[3];
+
+        // Number of cards due at each due time. Time only moves forward, so instead of summing the histogram on every
+        // call we remember how many cards were due at the last time we checked and only add the cards that became due
+        // since then.
+        private final NavigableMap<Long, Integer> dueTimes = new TreeMap<>();
+        private long checkedAt = Long.MIN_VALUE;
+        private int dueBefore = 0;
+
+        Deck(int newId, String newName) {
+            id = newId;
+            name = newName;
+        }
+
+        // Adds (or, with a negative count, removes) cards with the given due time and state.
+        private void add(long dueAt, int state, int count) {
+            total = total + count;
+            states[state] = states[state] + count;
+            dueTimes.merge(dueAt, count, Integer::sum);
+            if (dueTimes.get(dueAt) <= 0) { dueTimes.remove(dueAt); }
+            if (dueAt < checkedAt) { dueBefore = dueBefore + count; }
+        }
+
+        // Returns the number of cards with a due time strictly before the given time.
+        private int getDueCount(long currentTime) {
+            if (currentTime < checkedAt) {
+                // The clock went backwards, so start counting again from scratch.
+                checkedAt = Long.MIN_VALUE;
+                dueBefore = 0;
+            }
+            for (int count : dueTimes.subMap(checkedAt, true, currentTime, false).values()) {
+                dueBefore = dueBefore + count;
+            }
+            checkedAt = currentTime;
+            return dueBefore;
+        }
+    }
+
+    /**
+     * An immutable snapshot of the counts for one deck.
+     */
+    public static final class Summary {
+        private final int deckId;
+        private final String name;
+        private final int total;
+        private final int due;
+        private final int newCount;
+        private final int learning;
+
+        Summary(int newDeckId, String newName, int newTotal, int newDue, int newNewCount, int newLearning) {
+            deckId = newDeckId;
+            name = newName;
+            total = newTotal;
+            due = newDue;
+            newCount = newNewCount;
+            learning = newLearning;
+        }
+
+        // Getters for the instance variables in this object.
+        public int getDeckId() { return deckId; }
+        public String getName() { return name; }
+        public int getTotal() { return total; }
+        public int getDue() { return due; }
+        public int getNewCount() { return newCount; }
+        public int getLearning() { return learning; }
+    }
+}
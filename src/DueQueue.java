@@ -0,0 +1,269 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * This class holds the cards of a single deck in memory, ordered by the moment each card becomes due for review. The
+ * deck is read from the database once when a review session starts. After that, the card at the front of the queue can
+ * be found without running any SQL, and cards that have just been reviewed are moved to their new place in the queue.
+ *
+ * The queue is a binary min-heap. Cards are ordered by their due time, and cards that are due at exactly the same time
+ * (for example, a batch of new cards created together) are ordered by a random number drawn from a seeded generator,
+ * which shuffles them in a reproducible way.
+ */
+public final class DueQueue {
+    // There are 86400000 milliseconds in one day. IR_INTERVAL is stored in days, while LAST_REVIEW is a UNIX time-stamp
+    // in milliseconds.
+    private static final long MS_PER_DAY = 86400000L;
+
+    // Every card in a deck that is due, with what is needed to show it. This query is the same join used to pull a
+    // single card for review, without ORDER BY RANDOM() and LIMIT 1. Ordering happens in the heap instead of in SQLite.
+    // DUE_AT is LAST_REVIEW plus IR_INTERVAL days, kept up to date by a trigger, and the (DECKS_ID, DUE_AT) index lets
+    // SQLite find the due cards without a full scan.
+    static final String LOAD = "SELECT CARDS.ID, CARDS.REP_NUMBER, CARDS.EASY_FACTOR, CARDS.IR_INTERVAL, " +
+                        "CARDS.LAST_REVIEW, LINES.NAME, MOVES.BEFORE_FEN, MOVES.AFTER_FEN, MOVES.ORDER_IN_LINE " +
+                        "FROM CARDS JOIN CARDS_TO_MOVES ON CARDS.ID = CARDS_TO_MOVES.CARDS_ID " +
+                        "JOIN MOVES ON CARDS_TO_MOVES.MOVES_ID = MOVES.ID " +
+                        "JOIN LINES ON MOVES.LINES_ID = LINES.ID " +
+                        "WHERE CARDS.DECKS_ID = ? " +
+                        "AND CARDS.DUE_AT < ? ";
+
+    // The heap itself. The entry at index 0 is the card that became due first.
+    private Entry[] heap = new Entry[16];
+
+    // Number of entries currently stored in the heap.
+    private int size = 0;
+
+    // Maps the primary key of each card to its current position in the heap, which lets us find a card in constant
+    // time when it has to be rescheduled.
+    private final Map<Integer, Integer> positions = new HashMap<>();
+
+    // Random number generator used to break ties between cards that are due at the same moment.
+    private final Random random;
+
+    /**
+     * Constructor for DueQueue.
+     * @param seed Seed for the generator that shuffles cards which are due at the same time.
+     */
+    public DueQueue(long seed) { random = new Random(seed); }
+
+    /**
+     * Reads every card in the given deck that is due for review and stores it in the queue. This is the only query the
+     * queue runs, and it is meant to be called once at the start of a review session.
+     * @param deckId Primary key of the deck being reviewed.
+     * @param currentTime The current UNIX time-stamp in milliseconds.
+     * @throws SQLException If a database operation cannot be performed, throw an exception.
+     */
+    public void load(int deckId, long currentTime) throws SQLException {
+        PreparedStatement preStmt = StatementCache.of(Main.conn).prepare(LOAD);
+        preStmt.setInt(1, deckId);
+        preStmt.setLong(2, currentTime);
+        ResultSet rs = preStmt.executeQuery();
+
+        // Clear anything left over from a previous load.
+        size = 0;
+        positions.clear();
+
+        while (rs.next()) {
+            String name = rs.getString("NAME");
+            String beforeFEN = rs.getString("BEFORE_FEN");
+            String afterFEN = rs.getString("AFTER_FEN");
+
+            // Skip rows that could not be displayed to the user.
+            if (name == null || beforeFEN == null || afterFEN == null) { continue; }
+
+            Entry entry = new Entry(rs.getInt("ID"), name, beforeFEN, afterFEN, rs.getInt("ORDER_IN_LINE"));
+            entry.repNum = rs.getInt("REP_NUMBER");
+            entry.easFactor = rs.getDouble("EASY_FACTOR");
+            entry.interval = rs.getDouble("IR_INTERVAL");
+            entry.lastReview = rs.getLong("LAST_REVIEW");
+            this.add(entry);
+        }
+        rs.close();
+    }
+
+    /**
+     * Returns the card that has been due for the longest time, without removing it from the queue.
+     * @param currentTime The current UNIX time-stamp in milliseconds.
+     * @return The entry at the front of the queue, or null if no card is due at the given time.
+     */
+    public Entry peek(long currentTime) {
+        if (size == 0 || heap[0].dueAt >= currentTime) { return null; }
+        return heap[0];
+    }
+
+    /**
+     * Returns the cards that will be shown next if no grade changes the order, without removing them from the queue.
+     * Only the part of the heap above the last card returned is visited, so this takes O(count log count) time.
+     * @param currentTime The current UNIX time-stamp in milliseconds.
+     * @param count The most cards to return.
+     * @return Up to count entries that are due at the given time, in the order peek would return them.
+     */
+    public List<Entry> peek(long currentTime, int count) {
+        List<Entry> result = new ArrayList<>();
+
+        // The next card is always the earliest of the children of the cards already taken, starting from the root.
+        PriorityQueue<Integer> frontier = new PriorityQueue<>(Comparator.comparing((Integer i) -> heap[i]));
+        if (size > 0) { frontier.add(0); }
+        while (result.size() < count && !frontier.isEmpty()) {
+            int index = frontier.poll();
+            if (heap[index].dueAt >= currentTime) { break; }
+            result.add(heap[index]);
+            if (2 * index + 1 < size) { frontier.add(2 * index + 1); }
+            if (2 * index + 2 < size) { frontier.add(2 * index + 2); }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the entry for a card held by the queue.
+     * @param cardId Primary key of the card.
+     * @return The entry for the card, or null if the card is not in the queue.
+     */
+    public Entry get(int cardId) {
+        Integer pos = positions.get(cardId);
+        return pos == null ? null : heap[pos];
+    }
+
+    /**
+     * Stores the result of a review for one card and moves the card to its new place in the queue.
+     * @param cardId Primary key of the card that was reviewed.
+     * @param repNum New Repetition Number of the card.
+     * @param easFactor New Easiness Factor of the card.
+     * @param interval New Inter-Repetition Interval of the card, in days.
+     * @param lastReview UNIX time-stamp of the review.
+     */
+    public void reschedule(int cardId, int repNum, double easFactor, double interval, long lastReview) {
+        Integer pos = positions.get(cardId);
+
+        // Cards that were not due when the session started are not tracked by the queue.
+        if (pos == null) { return; }
+
+        Entry entry = heap[pos];
+        entry.repNum = repNum;
+        entry.easFactor = easFactor;
+        entry.interval = interval;
+        entry.lastReview = lastReview;
+        entry.setDueAt(lastReview + (long) (interval * MS_PER_DAY), random.nextInt());
+
+        // The due time can only move later, but sift in both directions so the heap stays valid regardless.
+        this.siftUp(pos);
+        this.siftDown(positions.get(cardId));
+    }
+
+    /**
+     * @return The number of cards held by the queue, including cards that have already been reviewed this session.
+     */
+    public int size() { return size; }
+
+    // Inserts a new entry at the bottom of the heap and moves it up to its place.
+    private void add(Entry entry) {
+        entry.setDueAt(entry.lastReview + (long) (entry.interval * MS_PER_DAY), random.nextInt());
+        if (size == heap.length) {
+            Entry[] bigger = new Entry[heap.length * 2];
+            System.arraycopy(heap, 0, bigger, 0, size);
+            heap = bigger;
+        }
+        heap[size] = entry;
+        positions.put(entry.cardId, size);
+        size = size + 1;
+        this.siftUp(size - 1);
+    }
+
+    // Moves the entry at the given index towards the root until its parent is due earlier.
+    private void siftUp(int index) {
+        Entry entry = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent].compareTo(entry) <= 0) { break; }
+            this.place(heap[parent], index);
+            index = parent;
+        }
+        this.place(entry, index);
+    }
+
+    // Moves the entry at the given index towards the leaves until both of its children are due later.
+    private void siftDown(int index) {
+        Entry entry = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) { break; }
+            if (child + 1 < size && heap[child + 1].compareTo(heap[child]) < 0) { child = child + 1; }
+            if (entry.compareTo(heap[child]) <= 0) { break; }
+            this.place(heap[child], index);
+            index = child;
+        }
+        this.place(entry, index);
+    }
+
+    // Stores an entry at the given index and records the new position.
+    private void place(Entry entry, int index) {
+        heap[index] = entry;
+        positions.put(entry.cardId, index);
+    }
+
+    /**
+     * Each Entry holds the data from one row of the join between CARDS, CARDS_TO_MOVES, MOVES, and LINES, along with
+     * the time at which the card becomes due.
+     */
+    public static final class Entry implements Comparable<Entry> {
+        // Primary key of the card.
+        private final int cardId;
+
+        // Name of the line and positions before and after the move, represented in standard FEN chess notation.
+        private final String lineName;
+        private final String beforeFEN;
+        private final String afterFEN;
+
+        // The sequence of the move in the line.
+        private final int orderInLine;
+
+        // The current SuperMemo2 parameters of the card.
+        private int repNum;
+        private double easFactor;
+        private double interval;
+        private long lastReview;
+
+        // UNIX time-stamp at which the card becomes due, and a random number used to order cards due at the same time.
+        private long dueAt;
+        private int tieBreak;
+
+        Entry(int newCardId, String newLineName, String newBeforeFEN, String newAfterFEN, int newOrderInLine) {
+            cardId = newCardId;
+            lineName = newLineName;
+            beforeFEN = newBeforeFEN;
+            afterFEN = newAfterFEN;
+            orderInLine = newOrderInLine;
+        }
+
+        private void setDueAt(long newDueAt, int newTieBreak) {
+            dueAt = newDueAt;
+            tieBreak = newTieBreak;
+        }
+
+        // Getters for the instance variables in this object.
+        public int getCardId() { return cardId; }
+        public String getLineName() { return lineName; }
+        public String getBeforeFEN() { return beforeFEN; }
+        public String getAfterFEN() { return afterFEN; }
+        public int getOrderInLine() { return orderInLine; }
+        public int getRepNum() { return repNum; }
+        public double getEasFactor() { return easFactor; }
+        public double getInterval() { return interval; }
+        public long getLastReview() { return lastReview; }
+        public long getDueAt() { return dueAt; }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (dueAt != other.dueAt) { return Long.compare(dueAt, other.dueAt); }
+            return Integer.compare(tieBreak, other.tieBreak);
+        }
+    }
+}
@@ -7,76 +7,12 @@ import java.sql.SQLException;
  */
 public final class InitDB  {
     /**
-     * This method creates empty tables to populate the database.
+     * This method creates any tables and indexes missing from the database. Existing tables are never dropped; the
+     * work is done by SchemaMigrator, which records the schema version in the database.
      */
     public static void makeTables() {
         try {
-            // Create a statement to process our database transactions.
-            Statement stmt = Main.conn.createStatement();
-
-            // Drop any table named DECKS.
-            stmt.execute("DROP TABLE IF EXISTS DECKS");
-
-            // Create a new DECKS table with an INTEGER PRIMARY KEY that is an alias for ROWID.
-            stmt.execute("CREATE TABLE IF NOT EXISTS DECKS(" +
-                            "ID INTEGER PRIMARY KEY," +
-                            "NAME TEXT)");
-            Main.conn.commit();
-
-            // Create a new CARDS table with an INTEGER PRIMARY KEY that is an alias for ROWID. The values REP_NUMBER,
-            // EASY_FACTOR, IR_INTERVAL, and LAST_REVIEW each refer to a parameter in the SuperMemo2 algorithm, which
-            // is used by the ReviewEngine Class to decide when to show the card to the user.
-            stmt.execute("DROP TABLE IF EXISTS CARDS");
-            stmt.execute("CREATE TABLE IF NOT EXISTS CARDS(" +
-                            "ID INTEGER PRIMARY KEY," +
-                            "REP_NUMBER REAL," +
-                            "EASY_FACTOR REAL," +
-                            "IR_INTERVAL REAL," +
-                            "LAST_REVIEW REAL," +
-                            "DECKS_ID TEXT," +
-                            "FOREIGN KEY (DECKS_ID) REFERENCES DECKS(ID))");
-            Main.conn.commit();
-
-            // Drop any existing table called CARDS_TO_MOVES.
-            stmt.execute("DROP TABLE IF EXISTS CARDS_TO_MOVES");
-
-            // Create a new CARDS_TO_MOVES intermediate table that specifies the relationships between CARDS to MOVES.
-            stmt.execute("CREATE TABLE IF NOT EXISTS CARDS_TO_MOVES(" +
-                            "CARDS_ID INTEGER," +
-                            "MOVES_ID INTEGER," +
-                            "FOREIGN KEY (CARDS_ID) REFERENCES CARDS(ID)," +
-                            "FOREIGN KEY (MOVES_ID) REFERENCES MOVES(ID))");
-            Main.conn.commit();
-
-            // Drop any existing table called LINES.
-            stmt.execute("DROP TABLE IF EXISTS LINES");
-
-            // Create a new LINES table with an INTEGER PRIMARY KEY that is an alias for ROWID. LINE is the sequence of
-            // moves comprising the opening, written in Standard Algebraic Notation. ECO is the Encyclopedia of Chess
-            // Openings identification code.
-            stmt.execute("CREATE TABLE IF NOT EXISTS LINES(" +
-                            "ID INTEGER PRIMARY KEY," +
-                            "NAME TEXT," +
-                            "LINE TEXT," +
-                            "ECO TEXT)");
-            Main.conn.commit();
-
-            // Drop any existing table called MOVES.
-            stmt.execute("DROP TABLE IF EXISTS MOVES");
-
-            // Create a new MOVES table with an INTEGER PRIMARY KEY that is an alias for ROWID. ORDER_IN_LINE is the
-            // position of the move in the opening. E.g. in the line "1. e4 e6 2. d4 d5," "d4" is at position 3.
-            // BEFORE_FEN and AFTER_FEN represent the state of the board before and after the move is made using
-            // Forsyth-Edwards Notation.
-            stmt.execute("CREATE TABLE IF NOT EXISTS MOVES(" +
-                        "ID INTEGER PRIMARY KEY," +
-                        "ORDER_IN_LINE INTEGER," +
-                        "BEFORE_FEN TEXT," +
-                        "AFTER_FEN TEXT," +
-                        "LINES_ID INTEGER," +
-                        "FOREIGN KEY (LINES_ID) REFERENCES LINES(ID))");
-            Main.conn.commit();
-
+            SchemaMigrator.migrate(Main.conn);
         } catch (SQLException e) {
             System.out.println("Error connecting to db");
             e.printStackTrace();
@@ -87,7 +23,7 @@ public final class InitDB  {
         Statement stmt = Main.conn.createStatement();
         stmt.execute("SELECT DECKS.NAME, COALESCE(COUNT(CARDS.ID), 0) " +
                 "                            FROM DECKS LEFT JOIN CARDS ON DECKS.ID = CARDS.DECKS_ID " +
-                "                            WHERE (? - CARDS.LAST_REVIEW) > (CARDS.IR_INTERVAL * 86400000) " +
+                "                            WHERE CARDS.DUE_AT < ? " +
                 "                            OR CARDS.ID IS NULL " +
                 "                            GROUP BY DECKS.ID " +
                 "                            ORDER BY DECKS.NAME DESC ");
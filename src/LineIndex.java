@@ -0,0 +1,345 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * This class keeps every opening line in memory, indexed three ways, so the deck builder can search lines without
+ * querying the database:
+ *
+ * - A trie of the moves of each line. Lines are numbered in the order of a depth-first walk of the trie, so the lines
+ *   that start with a given sequence of moves are one contiguous range of that numbering.
+ * - A map from the Zobrist key of every position reached in a line to the lines that pass through it, which also finds
+ *   lines that reach the position by a different move order.
+ * - The lines sorted by ECO code, so a range of codes is also one contiguous range.
+ *
+ * Every query is answered by walking a few trie nodes or by a binary search, and returns an IntStream of line IDs that
+ * is read lazily, so a list can take only as many results as it displays.
+ *
+ * The index is built once, from the LINES table, when the program starts. Each line's moves are replayed with
+ * MoveGenerator and written in one canonical SAN spelling, so differences in how the lines were written (such as
+ * "0-0", "Nf3+", or unneeded disambiguation) do not matter. Replaying every line takes a moment, so it is done on a
+ * background thread while the main menu opens.
+ */
+public final class LineIndex {
+    // Every line, read once to build the index.
+    static final String LOAD = "SELECT ID, NAME, LINE, ECO FROM LINES ORDER BY ID";
+
+    // The index in use, replaced as a whole when the lines are loaded again. It may still be being built.
+    private static volatile CompletableFuture<LineIndex> current = CompletableFuture.completedFuture(new LineIndex());
+
+    // The details of each line, by ID.
+    private final Map<Integer, String[]> details = new HashMap<>();
+
+    // Every line ID, in ascending order.
+    private int[] ids = new int[0];
+
+    // The root of the trie, and the line IDs in trie order.
+    private final Node root = new Node();
+    private int[] trieOrder = new int[0];
+
+    // Line IDs passing through each position, by Zobrist key.
+    private final Map<Long, int[]> byPosition = new HashMap<>();
+
+    // ECO codes in ascending order, and the line with each code.
+    private String[] ecos = new String[0];
+    private int[] ecoOrder = new int[0];
+
+    // Names in lower case, indexed like ids, for substring searches.
+    private String[] lowerNames = new String[0];
+
+    /**
+     * A node of the trie. Its children are sorted by their move, so the children whose moves start with the same text
+     * are next to each other.
+     */
+    private static final class Node {
+        private final TreeMap<String, Node> children = new TreeMap<>();
+
+        // IDs of the lines that end at this node. Only used while building the index.
+        private final List<Integer> lines = new ArrayList<>(1);
+
+        // The range of trieOrder holding every line that passes through this node.
+        private int start;
+        private int end;
+    }
+
+    private LineIndex() {}
+
+    /**
+     * @return The index built by the most recent call to load, waiting for it to be finished if necessary. Before load
+     * is called, it contains no lines.
+     */
+    public static LineIndex get() { return current.join(); }
+
+    /**
+     * @return A future that completes with the index built by the most recent call to load, so the caller can use the
+     * index without waiting for it to be built.
+     */
+    public static CompletableFuture<LineIndex> whenReady() { return current; }
+
+    /**
+     * Reads every line from the database and starts building a new index from them on a background thread. The index
+     * replaces the current one straight away, and get waits until it is ready.
+     * @param conn Connection to the database.
+     * @throws SQLException If the lines cannot be read, throw an exception. The current index is then left unchanged.
+     */
+    public static void load(Connection conn) throws SQLException {
+        // Only the query uses the connection, so the database is free again by the time this method returns.
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(LOAD);
+        List<Integer> idList = new ArrayList<>();
+        List<String[]> rows = new ArrayList<>();
+        while (rs.next()) {
+            idList.add(rs.getInt(1));
+            rows.add(new String[]{LineIndex.orEmpty(rs.getString(2)), LineIndex.orEmpty(rs.getString(3)),
+                    LineIndex.orEmpty(rs.getString(4))});
+        }
+        rs.close();
+        stmt.close();
+
+        current = CompletableFuture.supplyAsync(() -> LineIndex.build(idList, rows));
+    }
+
+    // Builds an index from the ID and the name, moves, and ECO code of each line.
+    private static LineIndex build(List<Integer> idList, List<String[]> rows) {
+        LineIndex index = new LineIndex();
+
+        // Reused to replay every line.
+        Position pos = new Position();
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        Map<Long, List<Integer>> positions = new HashMap<>();
+
+        for (int i = 0; i < idList.size(); i++) {
+            int id = idList.get(i);
+            String line = rows.get(i)[1];
+            index.details.put(id, rows.get(i));
+
+            // Replay the line. A move that cannot be read ends the line at that point.
+            pos.setFEN(Position.START_FEN);
+            Node node = index.root;
+            for (String token : LineIndex.tokenize(line)) {
+                int move;
+                try {
+                    move = MoveGenerator.parseSAN(pos, token, moves);
+                } catch (IllegalArgumentException ex) {
+                    break;
+                }
+                node = node.children.computeIfAbsent(MoveGenerator.toSAN(pos, move, moves), san -> new Node());
+                pos.makeMove(move);
+
+                // A line can reach the same position twice, but is only listed once for it.
+                List<Integer> through = positions.computeIfAbsent(pos.getKey(), key -> new ArrayList<>(2));
+                if (through.isEmpty() || through.get(through.size() - 1) != id) { through.add(id); }
+            }
+            node.lines.add(id);
+        }
+
+        index.ids = idList.stream().mapToInt(Integer::intValue).toArray();
+        index.trieOrder = new int[index.ids.length];
+        index.number(index.root, 0);
+        for (Map.Entry<Long, List<Integer>> entry : positions.entrySet()) {
+            index.byPosition.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        // Sort the lines by ECO code, and by ID within a code.
+        Integer[] byEco = idList.toArray(new Integer[0]);
+        Arrays.sort(byEco, (a, b) -> {
+            int cmp = index.getEco(a).compareTo(index.getEco(b));
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        });
+        index.ecos = new String[byEco.length];
+        index.ecoOrder = new int[byEco.length];
+        for (int i = 0; i < byEco.length; i++) {
+            index.ecoOrder[i] = byEco[i];
+            index.ecos[i] = index.getEco(byEco[i]);
+        }
+
+        index.lowerNames = new String[index.ids.length];
+        for (int i = 0; i < index.ids.length; i++) {
+            index.lowerNames[i] = index.getName(index.ids[i]).toLowerCase(Locale.ROOT);
+        }
+        return index;
+    }
+
+    private static String orEmpty(String value) { return value != null ? value : ""; }
+
+    // Numbers the lines below a node in depth-first order, and returns the next free number.
+    private int number(Node node, int next) {
+        node.start = next;
+        for (int id : node.lines) { trieOrder[next++] = id; }
+        for (Node child : node.children.values()) { next = this.number(child, next); }
+        node.end = next;
+        return next;
+    }
+
+    /**
+     * @return Every line ID, in ascending order.
+     */
+    public IntStream all() { return Arrays.stream(ids); }
+
+    /**
+     * @return The number of lines in the index.
+     */
+    public int size() { return ids.length; }
+
+    /**
+     * Finds the lines that start with a sequence of moves, such as "1. e4 c5 2. Nf3". Move numbers are optional. The
+     * last move may be incomplete, so "1. e4 c5 2. N" finds every line continuing with a knight move.
+     * @param moves The moves in Standard Algebraic Notation.
+     * @return The IDs of the matching lines, in the order of their moves. Empty if a move is not legal.
+     */
+    public IntStream startingWith(String moves) {
+        List<String> tokens = LineIndex.tokenize(moves);
+        Position pos = new Position();
+        int[] scratch = new int[MoveGenerator.MAX_MOVES];
+        Node node = root;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            Node next = null;
+            int move = LineIndex.tryParse(pos, token, scratch);
+            if (move != -1) {
+                next = node.children.get(MoveGenerator.toSAN(pos, move, scratch));
+                pos.makeMove(move);
+            }
+            if (next == null && i == tokens.size() - 1) {
+                // The last move may be the start of several moves. Their nodes are next to each other in the trie, so
+                // their lines are still one range.
+                String prefix = LineIndex.strip(token);
+                NavigableMap<String, Node> matches = node.children.subMap(prefix, true, prefix + Character.MAX_VALUE,
+                        true);
+                if (matches.isEmpty()) { return IntStream.empty(); }
+                return Arrays.stream(trieOrder, matches.firstEntry().getValue().start,
+                        matches.lastEntry().getValue().end);
+            }
+            if (next == null) { return IntStream.empty(); }
+            node = next;
+        }
+        return Arrays.stream(trieOrder, node.start, node.end);
+    }
+
+    /**
+     * Finds the lines that pass through a position, whichever order their moves were played in.
+     * @param key The Zobrist key of the position.
+     * @return The IDs of the matching lines, in ascending order.
+     */
+    public IntStream through(long key) {
+        int[] lines = byPosition.get(key);
+        return lines != null ? Arrays.stream(lines) : IntStream.empty();
+    }
+
+    /**
+     * Finds the lines with an ECO code in a range. Both ends are compared as prefixes, so ("B20", "B99") covers the
+     * Sicilian Defence and ("C", "C") every C code.
+     * @param from The first code in the range.
+     * @param to The last code in the range.
+     * @return The IDs of the matching lines, sorted by ECO code.
+     */
+    public IntStream ecoRange(String from, String to) {
+        int start = LineIndex.lowerBound(ecos, from);
+        int end = LineIndex.lowerBound(ecos, to + Character.MAX_VALUE);
+        return start < end ? Arrays.stream(ecoOrder, start, end) : IntStream.empty();
+    }
+
+    /**
+     * Finds the lines whose name contains a piece of text, ignoring case.
+     * @param text The text to look for.
+     * @return The IDs of the matching lines, in ascending order.
+     */
+    public IntStream nameContains(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        return IntStream.range(0, ids.length).filter(i -> lowerNames[i].contains(lower)).map(i -> ids[i]);
+    }
+
+    /**
+     * Searches the lines the way the deck builder's search fields do. The search text is read as moves if it starts
+     * with a legal first move or a move number, and as part of a name otherwise.
+     * @param ecoPrefix Only lines whose ECO code starts with this are returned. May be empty.
+     * @param text Moves or part of a name. May be empty, in which case every line matches.
+     * @return The IDs of the matching lines.
+     */
+    public IntStream search(String ecoPrefix, String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty()) { return ecoPrefix.isEmpty() ? this.all() : this.ecoRange(ecoPrefix, ecoPrefix); }
+
+        IntStream result = LineIndex.isMoves(trimmed) ? this.startingWith(trimmed) : this.nameContains(trimmed);
+        return ecoPrefix.isEmpty() ? result : result.filter(id -> this.getEco(id).startsWith(ecoPrefix));
+    }
+
+    /**
+     * @param text Search text, which must not be blank.
+     * @return True if the text should be read as moves, which it is if it starts with a move number or a legal first
+     * move.
+     */
+    public static boolean isMoves(String text) {
+        String trimmed = text.trim();
+        List<String> tokens = LineIndex.tokenize(trimmed);
+        return Character.isDigit(trimmed.charAt(0))
+                || (!tokens.isEmpty() && LineIndex.tryParse(new Position(), tokens.get(0),
+                new int[MoveGenerator.MAX_MOVES]) != -1);
+    }
+
+    // Getters for the details of a line. Each returns an empty string for an unknown ID.
+    public String getName(int id) { return this.detail(id, 0); }
+    public String getLine(int id) { return this.detail(id, 1); }
+    public String getEco(int id) { return this.detail(id, 2); }
+
+    private String detail(int id, int field) {
+        String[] line = details.get(id);
+        return line != null ? line[field] : "";
+    }
+
+    // Splits a line such as "1. e4 e5 2.Nf3" into its moves, leaving out the move numbers.
+    private static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        for (String word : line.trim().split("\\s+")) {
+            // Move numbers and results start with a digit, but "0-0" and "0-0-0" are moves.
+            String token = word.substring(word.lastIndexOf('.') + 1);
+            if (!token.isEmpty() && (!Character.isDigit(token.charAt(0)) || token.startsWith("0-0"))) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    // Reads a move, returning -1 instead of throwing an exception if it is not a legal move.
+    private static int tryParse(Position pos, String san, int[] moves) {
+        try {
+            return MoveGenerator.parseSAN(pos, san, moves);
+        } catch (IllegalArgumentException ex) {
+            return -1;
+        }
+    }
+
+    // Removes the check and annotation symbols from the end of a move.
+    private static String strip(String san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) { end--; }
+        return san.substring(0, end);
+    }
+
+    // Returns the index of the first element that is not less than the key.
+    private static int lowerBound(String[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,77 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * This class searches the opening lines through LINES_FTS, the full-text index over the name, ECO code, and moves of
+ * every line. Each word of the search text is matched as the start of a word in the index, so "sic naj" finds the
+ * Sicilian Defence, Najdorf Variation while it is still being typed, and the results are ranked by BM25 with a match in
+ * the name counting for more than one in the ECO code or the moves.
+ */
+public final class LineSearch {
+    // The most results returned by one search. Searches run on every keystroke, so a short word that matches most of
+    // the lines is cut off here instead of reading all of them.
+    public static final int MAX_RESULTS = 500;
+
+    // BM25 weights for the NAME, ECO, and LINE columns of LINES_FTS, in that order.
+    private static final String RANK = "bm25(LINES_FTS, 10.0, 5.0, 1.0)";
+
+    static final String QUERY = "SELECT rowid FROM LINES_FTS WHERE LINES_FTS MATCH ? " +
+            "ORDER BY " + RANK + ", rowid LIMIT " + MAX_RESULTS;
+
+    private LineSearch() {}
+
+    /**
+     * Finds the lines matching every word of the search text.
+     * @param conn Connection to the database.
+     * @param text The search text. Punctuation separates words and is otherwise ignored, as it is in the index.
+     * @return The IDs of the matching lines, best match first. Empty if the text contains no words.
+     * @throws SQLException If the query cannot be executed, throw an exception.
+     */
+    public static int[] search(Connection conn, String text) throws SQLException {
+        String match = LineSearch.toMatch(text);
+        if (match.isEmpty()) { return new int[0]; }
+
+        PreparedStatement stmt = StatementCache.of(conn).prepare(QUERY);
+        stmt.setString(1, match);
+        ResultSet rs = stmt.executeQuery();
+
+        int[] ids = new int[16];
+        int count = 0;
+        while (rs.next()) {
+            if (count == ids.length) { ids = Arrays.copyOf(ids, count * 2); }
+            ids[count++] = rs.getInt(1);
+        }
+        rs.close();
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Turns search text into an FTS5 query in which every word is a quoted prefix, such as "sic"* "naj"*. Quoting each
+     * word means that nothing the user types can be read as FTS5 query syntax, such as NOT, a column filter, or an
+     * unbalanced quote.
+     * @param text The search text.
+     * @return The query, or an empty string if the text contains no words.
+     */
+    static String toMatch(String text) {
+        StringBuilder match = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            // Split on the same characters as the unicode61 tokenizer, which keeps only letters and digits.
+            int cp = text.codePointAt(i);
+            if (!Character.isLetterOrDigit(cp)) {
+                i += Character.charCount(cp);
+                continue;
+            }
+            int start = i;
+            while (i < text.length() && Character.isLetterOrDigit(text.codePointAt(i))) {
+                i += Character.charCount(text.codePointAt(i));
+            }
+            if (match.length() > 0) { match.append(' '); }
+            match.append('"').append(text, start, i).append("\"*");
+        }
+        return match.toString();
+    }
+}
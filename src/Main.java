@@ -1,6 +1,6 @@
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import javax.swing.SwingUtilities;
 
 /*
  * This Main class contains the main method, which launches the program.
@@ -13,24 +13,56 @@ import java.sql.SQLException;
  */
 public class Main {
     // This static Connection is created when the program is launched, and is maintained throughout the runtime of the
-    // program.
+    // program. It must only be used on the database thread, through Database.submit or Database.call.
     public static Connection conn;
 
+    // Opens and tunes the writer connection, which is conn, and the pool of read-only connections.
+    public static ConnectionManager connections;
+
     public static void main(String[] args) {
         try {
             Class.forName("org.sqlite.JDBC");
 
-            // The file called database.db is where all persistent data for the program is stored. It should always be
-            // located in the same directory.
-            String jbdcUrl = "jdbc:sqlite:database.db";
-            conn = DriverManager.getConnection(jbdcUrl);
+            // Open the database on the database thread, which is the only thread that uses the connection. The GUI
+            // is not shown until this has finished, so it is the only time the program waits for the database.
+            Database.call(() -> {
+                // The file called database.db is where all persistent data for the program is stored. It should always
+                // be located in the same directory. The connections are tuned with the adjust.db.* system properties.
+                String jbdcUrl = "jdbc:sqlite:database.db";
+                connections = new ConnectionManager(jbdcUrl, ConnectionManager.Settings.fromSystemProperties());
+
+                // Auto commit is turned off on the writer connection, so that we have to commit our changes to the
+                // database manually. Each function that interacts with the database is responsible for committing its
+                // changes after it uses the connection.
+                conn = connections.getWriter();
+
+                // Bring the database schema up to date. This creates any missing tables and indexes, and never removes
+                // existing data.
+                SchemaMigrator.migrate(conn);
+
+                // Warn about any query that would read a whole table instead of using an index. This is cheap, as
+                // nothing is run, and finds a missing index before the tables are large enough for it to be noticed.
+                for (String warning : QueryPlans.check(conn)) { System.out.println("Query plan check: " + warning); }
+
+                // Load every opening line into memory once, so the deck builder can search them without querying the
+                // database.
+                LineIndex.load(conn);
+
+                // Count the cards in every deck once. From here on the counts are kept up to date in memory.
+                DeckStats.load(conn);
+                return null;
+            });
 
-            // Turn off auto commit, so that we have to commit our changes to the database manually. Each function that
-            // interacts with the database is responsible for committing its changes after it uses the connection.
-            conn.setAutoCommit(false);
+            // Report how well the prepared statements were reused, and where the session's time went, when the
+            // program exits.
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                System.out.println(StatementCache.summary());
+                System.out.print(Metrics.summary());
+            }));
 
-            // Launch the main menu, which provides further options for the user.
-            new MainMenuGUI();
+            // Launch the main menu, which provides further options for the user. Swing components are created on the
+            // Event Dispatch Thread.
+            SwingUtilities.invokeLater(MainMenuGUI::new);
 
         } catch (ClassNotFoundException | SQLException  ex) {
             // If the connection to the database fails, print the error message and terminate the program.
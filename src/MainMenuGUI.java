@@ -1,6 +1,3 @@
-import java.sql.SQLException;
-import java.sql.ResultSet;
-import java.sql.PreparedStatement;
 import javax.swing.JButton;
 import javax.swing.JPanel;
 import javax.swing.DefaultListModel;
@@ -18,7 +15,6 @@ import java.awt.CardLayout;
 import java.awt.Font;
 import java.awt.Dimension;
 import java.awt.GridBagLayout;
-import java.sql.Statement;
 
 /**
  * This class defines the behavior of the main menu JPanel. It is instantiated when the user launches the application.
@@ -55,12 +51,13 @@ public final class MainMenuGUI implements ActionListener {
 
     private static final JFrame window = new JFrame();
 
+    // Progress bar shown while a deck is being created, renamed, or deleted. The buttons are disabled until it is done.
+    private final BusyIndicator busy = new BusyIndicator(createBtn, renameBtn, deleteBtn, modifyBtn, reviewBtn);
+
     /**
-     * Class defining the behavior of the Main Menu GUI.
-     * @throws SQLException If a database operation cannot be performed, throw an exception.
-     * @throws ClassNotFoundException If the JDBC Class cannot be found, throw an exception.
+     * Class defining the behavior of the Main Menu GUI. The deck counts must already have been loaded by DeckStats.
      */
-    public MainMenuGUI() throws SQLException, ClassNotFoundException {
+    public MainMenuGUI() {
         // Create a JFrame to hold all the JPanels used by the application.
         window.setSize(1000, 600);
 
@@ -137,6 +134,7 @@ public final class MainMenuGUI implements ActionListener {
         mainPane.add(titlePane);
         mainPane.add(scroller);
         mainPane.add(btnPane);
+        mainPane.add(busy);
 
         // Update the list of DeckListItem objects.
         this.updateDeckModel();
@@ -146,159 +144,84 @@ public final class MainMenuGUI implements ActionListener {
     }
 
     /**
-     * This class gets an updated list of decks (including a summary of the cards inside each) and displays it.
-     * @throws SQLException If a database operation cannot be performed, throw an exception.
+     * This class gets an updated list of decks (including a summary of the cards inside each) and displays it. The
+     * counts come from DeckStats, which keeps them in memory, so this method does not query the database.
      */
-    private void updateDeckModel() throws SQLException {
-        // This query selects two elements: DECKS.ID, which is the primary key for each deck in the database, and
-        // a count of CARDS.ID contained in each deck. This count represents the total number of cards associated with
-        // the deck in the same tuple. COALESCE is necessary in the case where no cards are associated with the deck.
-        // We perform a left join to avoid excluding decks with no associated cards.
-        String cardTotalsQ = "SELECT DECKS.ID, DECKS.NAME, COALESCE(COUNT(CARDS.ID), 0) " +
-                            "FROM DECKS LEFT JOIN CARDS ON DECKS.ID = CARDS.DECKS_ID " +
-                            "GROUP BY DECKS.ID " +
-                            "ORDER BY DECKS.NAME DESC ";
-
-        // This query selects two elements: DECKS.NAME, which is the user-defined name for each deck, and a count of
-        // CARDS.ID, grouped by deck, where the card is due to be reviewed. We perform a left join to avoid excluding
-        // decks with no associated cards.
-        String toReviewQ = "SELECT COALESCE(COUNT(CARDS.ID), 0) " +
-                            "FROM DECKS LEFT JOIN CARDS ON DECKS.ID = CARDS.DECKS_ID " +
-                            "WHERE ((? - CARDS.LAST_REVIEW) > (CARDS.IR_INTERVAL * 86400000) " +
-                            "OR CARDS.ID IS NULL) AND DECKS.ID = ? " +
-                            "GROUP BY DECKS.ID " +
-                            "ORDER BY DECKS.NAME DESC ";
-
-        // Create a statement to execute the first query.
-        Statement cardTotalsStmt = Main.conn.createStatement();
-
-        // Create a parameterized statement for the second query.
-        PreparedStatement toReviewStmt = Main.conn.prepareStatement(toReviewQ);
-
-        // Execute both queries.
-        ResultSet rs1 = cardTotalsStmt.executeQuery(cardTotalsQ);
-
+    private void updateDeckModel() {
         // Clear any DeckListItems currently in the decksModel.
         decksModel.clear();
 
-        // Iterate through all the results from the first query, instantiating a new DeckListItem for each.
-        int index1 = 0;
-        while (rs1.next()) {
-            // Get the primary key and name of the deck represented by this row and add it to an DeckListItem.
-            DeckListItem deck = new DeckListItem(rs1.getInt(1));
-            deck.setName(rs1.getString(2));
-
-            // Get the column representing the total number of cards associated with the deck and add it to the object.
-            deck.setCardTotal(rs1.getInt(3));
-            decksModel.add(index1, deck);
-            index1 = index1 + 1;
-        }
-
-        // Iterate through the results from the second query and store them in the corresponding DeckListItem. Because
-        // the two queries are ordered based on the same criteria we perform this iteration without checking the
-        // identity of each deck.
-        ResultSet rs2 = toReviewStmt.getResultSet();
-        for (int i = 0; i < decksModel.size(); i++) {
-            DeckListItem deck = decksModel.get(i);
-            int deckPK = deck.getDeckPK();
-
-            // Get the current UNIX timestamp for this machine.
-            long currentTime = System.currentTimeMillis();
-
-            // Get the review count matching the current deck id and appropriate time since last review.
-            toReviewStmt.setLong(1, currentTime);
-            toReviewStmt.setInt(2, deckPK);
-            toReviewStmt.executeQuery();
-
-            // Get the review count from the query and add it to the object. This count is an int representing the
-            // number of cards due to be reviewed.
-            int reviewCount = rs2.getInt(1);
-            deck.setReviewCount(Math.max(reviewCount, 0));
+        // Get the current UNIX timestamp for this machine, which decides which cards are due.
+        long currentTime = System.currentTimeMillis();
+
+        // Instantiate a new DeckListItem for each deck, ordered by name.
+        int index = 0;
+        for (DeckStats.Summary summary : DeckStats.getSummaries(currentTime)) {
+            DeckListItem deck = new DeckListItem(summary.getDeckId());
+            deck.setName(summary.getName());
+            deck.setCardTotal(summary.getTotal());
+            deck.setReviewCount(summary.getDue());
+            deck.setNewCount(summary.getNewCount());
+            deck.setLearningCount(summary.getLearning());
+            decksModel.add(index, deck);
+            index = index + 1;
         }
     }
 
     /**
-     * Deletes one deck (and other associated data in other tables) based on DECKS.ID primary key.
+     * Deletes one deck (and other associated data in other tables) based on DECKS.ID primary key. The deletion runs
+     * on the database thread, and the list of decks is updated once it is done.
      * @param deckPK The primary key of the deck to be deleted.
-     * @throws ClassNotFoundException If the JDBC Class cannot be found, throw an exception.
-     * @throws SQLException If a database operation cannot be performed, throw an exception.
      */
-    private void deleteDeck(int deckPK) throws ClassNotFoundException, SQLException {
-        // Delete deck using a parameterized query.
-        PreparedStatement deleteDeck = Main.conn.prepareStatement("DELETE FROM DECKS WHERE ID = ?");
-        deleteDeck.setInt(1, deckPK);
-        deleteDeck.executeUpdate();
-
-        // Commit the transaction.
-        Main.conn.commit();
-
-        // Delete all tuples from the CARDS_TO_MOVES intermediate table where the CARDS_ID is associated with a deck
-        // that is being deleted.
-        String delRelQuery = "DELETE FROM CARDS_TO_MOVES WHERE CARDS_ID IN ( " +
-                                "SELECT ID FROM CARDS WHERE DECKS_ID = ?) ";
-
-        // Execute a parameterized query to perform the deletion.
-        PreparedStatement delRels = Main.conn.prepareStatement(delRelQuery);
-        delRels.setInt(1, deckPK);
-        delRels.executeUpdate();
-
-        // Commit the transaction.
-        Main.conn.commit();
-
-        // This parameterized query deletes cards that are associated with the deck being deleted.
-        PreparedStatement deleteCards = Main.conn.prepareStatement("DELETE FROM CARDS WHERE DECKS_ID = ?");
-        deleteCards.setInt(1, deckPK);
-        deleteCards.executeUpdate();
-
-        // Commit the transaction.
-        Main.conn.commit();
-
-        // Update and repaint the list of decks displayed to the user.
-        this.updateDeckModel();
-        mainPane.revalidate();
-        mainPane.repaint();
+    private void deleteDeck(int deckPK) {
+        busy.submit("deleteDeck", () -> {
+            // Delete the deck, its cards, and the CARDS_TO_MOVES tuples of its cards, and commit the transaction.
+            new DeckDao(Main.conn).delete(deckPK);
+            Main.conn.commit();
+            DeckStats.deckDeleted(deckPK);
+            return null;
+        }, result -> this.refresh());
     }
 
     /**
-     * Creates a new, empty deck with a user-defined name.
+     * Creates a new, empty deck with a user-defined name. The deck is created on the database thread, and the list of
+     * decks is updated once it is done.
      * @param name The user-defined name for the deck.
-     * @throws ClassNotFoundException If the JDBC Class cannot be found, throw an exception.
-     * @throws SQLException If a database operation cannot be performed, throw an exception.
      */
-    private void createDeck(String name) throws ClassNotFoundException, SQLException {
-        // Create a new deck using a parameterized query. Pass NULL so that SQLite auto-increments the INTEGER PRIMARY
-        // KEY using the value of ROWID.
-        PreparedStatement createStmt = Main.conn.prepareStatement("INSERT INTO DECKS(ID, NAME) VALUES(NULL, ?)");
-        createStmt.setString(1, name.strip());
-        createStmt.executeUpdate();
-
-        // Commit the transaction.
-        Main.conn.commit();
-
-        // Get an updated list of decks and display them to the user. Repaint the main menu to reflect the updated data.
-        this.updateDeckModel();
-        mainPane.revalidate();
-        mainPane.repaint();
+    private void createDeck(String name) {
+        busy.submit("createDeck", () -> {
+            // Create a new deck and get the primary key SQLite assigned to it.
+            int deckPK = new DeckDao(Main.conn).create(name.strip());
+
+            // Commit the transaction.
+            Main.conn.commit();
+            DeckStats.deckCreated(deckPK, name.strip());
+            return null;
+        }, result -> this.refresh());
     }
 
     /**
-     * Rename the deck currently selected by the user.
+     * Rename the deck currently selected by the user. The deck is renamed on the database thread, and the list of
+     * decks is updated once it is done.
      * @param pk Primary key of the deck to be renamed.
      * @param name New name for the deck.
-     * @throws ClassNotFoundException If the JDBC Class cannot be found, throw an exception.
-     * @throws SQLException If a database operation cannot be performed, throw an exception.
      */
-    private void renameDeck(int pk, String name) throws ClassNotFoundException, SQLException {
-        // Update the relevant DECKS tuple using a parameterized query.
-        PreparedStatement renameStmt = Main.conn.prepareStatement("UPDATE DECKS SET NAME = ? WHERE ID = ?");
-        renameStmt.setString(1, name.strip());
-        renameStmt.setInt(2, pk);
-        renameStmt.executeUpdate();
-
-        // Commit the transaction.
-        Main.conn.commit();
+    private void renameDeck(int pk, String name) {
+        busy.submit("renameDeck", () -> {
+            // Update the relevant DECKS tuple.
+            new DeckDao(Main.conn).rename(pk, name.strip());
+
+            // Commit the transaction.
+            Main.conn.commit();
+            DeckStats.deckRenamed(pk, name.strip());
+            return null;
+        }, result -> this.refresh());
+    }
 
-        // Get an updated list of information about the decks in the database and repaint the GUI.
+    /**
+     * Gets an updated list of decks from DeckStats and repaints the main menu to display it.
+     */
+    private void refresh() {
         this.updateDeckModel();
         mainPane.revalidate();
         mainPane.repaint();
@@ -322,13 +245,9 @@ public final class MainMenuGUI implements ActionListener {
 
                 // Get the primary key of the DeckListItem object selected by the user.
                 int pk = deck.getDeckPK();
-                try {
 
-                    // Delete the selected deck and update the GUI.
-                    this.deleteDeck(pk);
-                } catch (ClassNotFoundException | SQLException ex) {
-                    throw new RuntimeException(ex);
-                }
+                // Delete the selected deck and update the GUI.
+                this.deleteDeck(pk);
             }
         }
 
@@ -339,13 +258,8 @@ public final class MainMenuGUI implements ActionListener {
 
             // If the user entered anything, use the input string to name the deck.
             if (deckName != null && !deckName.isBlank()) {
-                try {
-
-                    // Create a deck with the given name and repaint the GUI.
-                    this.createDeck(deckName);
-                } catch (ClassNotFoundException | SQLException ex) {
-                    throw new RuntimeException(ex);
-                }
+                // Create a deck with the given name and repaint the GUI.
+                this.createDeck(deckName);
             }
         }
 
@@ -364,13 +278,8 @@ public final class MainMenuGUI implements ActionListener {
 
                 // If the input string is not empty, update the deck name. If it is empty, do nothing.
                 if (newName != null && !newName.isBlank()) {
-                    try {
-
-                        // Rename the deck and repaint the GUI.
-                        this.renameDeck(pk, newName);
-                    } catch (SQLException | ClassNotFoundException ex){
-                        throw new RuntimeException(ex);
-                    }
+                    // Rename the deck and repaint the GUI.
+                    this.renameDeck(pk, newName);
                 }
             }
         }
@@ -386,21 +295,18 @@ public final class MainMenuGUI implements ActionListener {
                 // Get the deck item at the given index and extract the primary key.
                 DeckListItem deck = decksModel.getElementAt(index);
                 int deckPK = deck.getDeckPK();
-                try {
-                    // Clear any elements currently on the cardsPane GUI JPanel.
-                    cardsPane.removeAll();
-
-                    // Instantiate a new AddCardsGUI object to define the behavior of the GUI. Pass the cardsPane JPanel
-                    // to paint its elements on and a deck primary key, which lets the object know which deck to modify.
-                    // Pass a reference to the current instance to allow AddCardsGUI to update this MainMenuGUI before
-                    // switching the user back to this panel.
-                    new AddCardsGUI(cardsPane, deckPK, this);
-
-                    // Switch to the AddCardsGUI using the CardLayout.
-                    controller.show(container, "cards");
-                } catch (ClassNotFoundException | SQLException ex) {
-                    throw new RuntimeException(ex);
-                }
+
+                // Clear any elements currently on the cardsPane GUI JPanel.
+                cardsPane.removeAll();
+
+                // Instantiate a new AddCardsGUI object to define the behavior of the GUI. Pass the cardsPane JPanel
+                // to paint its elements on and a deck primary key, which lets the object know which deck to modify.
+                // Pass a reference to the current instance to allow AddCardsGUI to update this MainMenuGUI before
+                // switching the user back to this panel.
+                new AddCardsGUI(cardsPane, deckPK, this);
+
+                // Switch to the AddCardsGUI using the CardLayout.
+                controller.show(container, "cards");
             }
         }
 
@@ -443,12 +349,8 @@ public final class MainMenuGUI implements ActionListener {
      * Public method that allows other menus to update the main menu and display it using CardLayout
      */
     public void mainReturn() {
-        try {
-            this.updateDeckModel();
-            controller.show(container, "main");
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        this.updateDeckModel();
+        controller.show(container, "main");
     }
 
     /**
@@ -469,6 +371,10 @@ public final class MainMenuGUI implements ActionListener {
         // Number of cards currently due to be reviewed by the user.
         private int reviewCount;
 
+        // Number of cards that have never been reviewed, and number of cards still being learned.
+        private int newCount;
+        private int learningCount;
+
         // Constructor that takes the primary key as an argument.
         public DeckListItem(int newDeckPK) {
             deckPK = newDeckPK;
@@ -483,6 +389,8 @@ public final class MainMenuGUI implements ActionListener {
         public void setReviewCount(int newReviewCount) { reviewCount = newReviewCount; }
         public void setCardTotal(int newCardTotal) { cardTotal = newCardTotal; }
         public void setName(String newName) { name = newName; }
+        public void setNewCount(int newNewCount) { newCount = newNewCount; }
+        public void setLearningCount(int newLearningCount) { learningCount = newLearningCount; }
 
         /**
          * Allows the JList to display the deck summary to the user.
@@ -490,7 +398,8 @@ public final class MainMenuGUI implements ActionListener {
          */
         @Override
         public String toString() {
-            return name + " DUE: " + reviewCount + "/" + cardTotal;
+            return name + " DUE: " + reviewCount + "/" + cardTotal + "  NEW: " + newCount + "  LEARNING: " +
+                    learningCount;
         }
     }
 }
@@ -0,0 +1,258 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class records how long the program's hot paths take: every SQL statement and commit, drawing the board, loading
+ * the piece images, and each step of a review. Each timed call is kept in two places:
+ *
+ * - An in-process registry with a count, total, maximum, and latency histogram for every name, such as
+ *   "sql SELECT ..." or "review.grade". Metrics.summary formats the registry as a table, which Main prints when the
+ *   program exits, sorted so the names that took the most time in total come first.
+ * - A custom Java Flight Recorder event, which costs nothing unless a recording is running. Start the program with
+ *   "java -XX:StartFlightRecording=filename=adjust.jfr Main" and open the file in JDK Mission Control to see each call
+ *   on a timeline next to the garbage collector and the Swing threads. The events are in the "Adjust" category.
+ *
+ * Errors are counted in the same registry, so the summary also shows which listeners failed and how often.
+ *
+ * Probes are cheap enough to leave on: starting and stopping one reads the clock twice and updates one histogram.
+ */
+public final class Metrics {
+    /**
+     * The kinds of work that are timed. Each kind has its own JFR event type.
+     */
+    public enum Kind {
+        SQL, COMMIT, PAINT, IMAGE, REVIEW;
+
+        private TimedEvent newEvent() {
+            switch (this) {
+                case SQL: return new SqlEvent();
+                case COMMIT: return new CommitEvent();
+                case PAINT: return new PaintEvent();
+                case IMAGE: return new ImageEvent();
+                default: return new ReviewEvent();
+            }
+        }
+    }
+
+    /**
+     * One timed call, returned by Metrics.start. It should be stopped once, when the call returns. A probe that is
+     * never stopped, because the call threw an exception, records nothing.
+     */
+    public static final class Probe {
+        private final String name;
+        private final TimedEvent event;
+        private final long start;
+
+        private Probe(Kind kind, String newName) {
+            name = newName;
+            event = kind.newEvent();
+            event.begin();
+            start = System.nanoTime();
+        }
+
+        /**
+         * Records the time since the probe was started.
+         */
+        public void stop() {
+            Metrics.record(name, System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.name = name;
+                event.commit();
+            }
+        }
+    }
+
+    // Base class of the JFR events. Each kind of work has its own subclass, so they can be enabled and shown apart.
+    @Category("Adjust")
+    @StackTrace(false)
+    abstract static class TimedEvent extends Event {
+        @Label("Name")
+        @Description("The statement, step, or image that was timed")
+        String name;
+    }
+
+    @Name("adjust.Sql")
+    @Label("SQL Statement")
+    @Description("One execution of a statement on a database connection")
+    static final class SqlEvent extends TimedEvent {}
+
+    @Name("adjust.Commit")
+    @Label("Commit")
+    @Description("A commit or rollback of the writer connection")
+    static final class CommitEvent extends TimedEvent {}
+
+    @Name("adjust.Paint")
+    @Label("Board Paint")
+    @Description("Setting or drawing the position on the chess board")
+    static final class PaintEvent extends TimedEvent {}
+
+    @Name("adjust.Image")
+    @Label("Image Load")
+    @Description("Decoding or scaling the piece images")
+    static final class ImageEvent extends TimedEvent {}
+
+    @Name("adjust.Review")
+    @Label("Review Step")
+    @Description("One step of a review session, such as loading the deck or grading a card")
+    static final class ReviewEvent extends TimedEvent {}
+
+    // The most distinct names kept. Statements built with values in their SQL would otherwise grow the registry without
+    // limit, so any names past this share one entry.
+    public static final int MAX_NAMES = 500;
+
+    // Name under which everything past MAX_NAMES is recorded.
+    private static final String OTHER = "(other)";
+
+    // Longest name shown in the summary. Longer names, which are mostly SQL, are cut short.
+    private static final int NAME_WIDTH = 72;
+
+    // Every timer and counter, by name.
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    /**
+     * Starts timing a call.
+     * @param kind The kind of work.
+     * @param name The name the call is recorded under.
+     * @return The probe, which must be stopped when the call returns.
+     */
+    public static Probe start(Kind kind, String name) { return new Probe(kind, name); }
+
+    /**
+     * Records the duration of a call that was timed without a probe.
+     * @param name The name the call is recorded under.
+     * @param nanos How long the call took, in nanoseconds.
+     */
+    public static void record(String name, long nanos) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            timer = timers.size() < MAX_NAMES ? timers.computeIfAbsent(name, key -> new Timer())
+                    : timers.computeIfAbsent(OTHER, key -> new Timer());
+        }
+        timer.add(nanos);
+    }
+
+    /**
+     * Adds one to a counter.
+     * @param name The name of the counter, such as "error promptUser".
+     */
+    public static void increment(String name) {
+        counters.computeIfAbsent(name, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * @param name The name of a counter.
+     * @return The value of the counter, or 0 if it was never incremented.
+     */
+    public static long getCount(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Forgets every timer and counter.
+     */
+    public static void reset() {
+        timers.clear();
+        counters.clear();
+    }
+
+    /**
+     * @return A table of every timer, with the count, total, mean, 50th, 90th, and 99th percentiles, and maximum in
+     * milliseconds, followed by every counter. The timers that took the most time in total are listed first.
+     */
+    public static String summary() {
+        List<String[]> rows = new ArrayList<>();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) { rows.add(entry.getValue().row(entry.getKey())); }
+        rows.sort((a, b) -> Double.compare(Double.parseDouble(b[2]), Double.parseDouble(a[2])));
+
+        StringBuilder out = new StringBuilder("Metrics (times in ms):\n");
+        String format = "%-" + NAME_WIDTH + "s %8s %10s %8s %8s %8s %8s %8s%n";
+        out.append(String.format(Locale.ROOT, format, "name", "count", "total", "mean", "p50", "p90", "p99", "max"));
+        for (String[] row : rows) { out.append(String.format(Locale.ROOT, format, (Object[]) row)); }
+
+        List<String> names = new ArrayList<>(counters.keySet());
+        names.sort(null);
+        for (String name : names) {
+            out.append(String.format(Locale.ROOT, "%-" + NAME_WIDTH + "s %8d%n", Metrics.shorten(name),
+                    counters.get(name).get()));
+        }
+        return out.toString();
+    }
+
+    // Collapses the white space in a name and cuts it to NAME_WIDTH characters.
+    private static String shorten(String name) {
+        String flat = name.replaceAll("\\s+", " ").trim();
+        return flat.length() <= NAME_WIDTH ? flat : flat.substring(0, NAME_WIDTH - 3) + "...";
+    }
+
+    /**
+     * The durations recorded under one name. The histogram has four buckets for every power of two, so a percentile
+     * is accurate to within a fifth of its value, and the whole histogram fits in a few hundred longs.
+     */
+    private static final class Timer {
+        // Buckets per power of two, as a number of bits.
+        private static final int SUB_BITS = 2;
+
+        private final long[] buckets = new long[64 << SUB_BITS];
+        private long count = 0;
+        private long total = 0;
+        private long max = 0;
+
+        synchronized void add(long nanos) {
+            long value = Math.max(nanos, 0);
+            buckets[Timer.bucketOf(value)]++;
+            count = count + 1;
+            total = total + value;
+            max = Math.max(max, value);
+        }
+
+        // The bucket of a value is its power of two followed by the next SUB_BITS bits below the highest one bit.
+        private static int bucketOf(long value) {
+            if (value < (1 << SUB_BITS)) { return (int) value; }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+            return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+        }
+
+        // The largest value that falls in a bucket.
+        private static long upperBound(int bucket) {
+            if (bucket < (1 << SUB_BITS)) { return bucket; }
+            int exponent = (bucket >> SUB_BITS) + SUB_BITS - 1;
+            long sub = bucket & ((1 << SUB_BITS) - 1);
+            long low = (1L << exponent) + (sub << (exponent - SUB_BITS));
+            return low + (1L << (exponent - SUB_BITS)) - 1;
+        }
+
+        // The upper bound of the bucket holding the given percentile, but never more than the maximum.
+        private long percentile(int percent) {
+            long rank = (long) Math.ceil(count * percent / 100.0);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen = seen + buckets[i];
+                if (seen >= rank) { return Math.min(Timer.upperBound(i), max); }
+            }
+            return max;
+        }
+
+        synchronized String[] row(String name) {
+            return new String[]{Metrics.shorten(name), Long.toString(count), Timer.millis(total),
+                    Timer.millis(count == 0 ? 0 : total / count), Timer.millis(this.percentile(50)),
+                    Timer.millis(this.percentile(90)), Timer.millis(this.percentile(99)), Timer.millis(max)};
+        }
+
+        private static String millis(long nanos) { return String.format(Locale.ROOT, "%.3f", nanos / 1e6); }
+    }
+}
@@ -0,0 +1,598 @@
+import java.util.Random;
+
+/**
+ * This class generates the legal moves in a Position. Attacks of the knights, kings, and pawns are read from tables
+ * built once when the class is loaded. Attacks of the sliding pieces (bishops, rooks, and queens) use magic bitboards:
+ * the pieces that block a slider are multiplied by a "magic" number, and the top bits of the product index a table of
+ * precomputed attack sets. The magic numbers were found with a seeded random search, which is kept as a fallback.
+ *
+ * Moves are generated strictly legal. Pinned pieces may only move along the line between their king and the pinning
+ * piece, moves that leave the king in check are never produced, and castling, en passant, and promotion are all
+ * handled. Each move is packed into an int, which can be read with the static methods of this class.
+ */
+public final class MoveGenerator {
+    // Largest number of legal moves in any chess position is 218, so this is always enough room.
+    public static final int MAX_MOVES = 256;
+
+    // Layout of a move: 6 bits for the origin square, 6 bits for the destination square, 3 bits for the type of the
+    // piece a pawn promotes to (or 0 for no promotion), and one bit each for en passant and castling.
+    private static final int PROMOTION_SHIFT = 12;
+    private static final int EN_PASSANT = 1 << 15;
+    private static final int CASTLE = 1 << 16;
+
+    private static final long FILE_A = 0x0101010101010101L;
+    private static final long FILE_H = FILE_A << 7;
+    private static final long RANK_1 = 0xFFL;
+    private static final long RANK_2 = RANK_1 << 8;
+    private static final long RANK_7 = RANK_1 << 48;
+    private static final long RANK_8 = RANK_1 << 56;
+
+    // Precomputed attacks of the non-sliding pieces from each square. PAWN_ATTACKS is indexed by color first.
+    private static final long[] KNIGHT_ATTACKS = new long[64];
+    private static final long[] KING_ATTACKS = new long[64];
+    private static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    // Squares strictly between two squares on the same rank, file, or diagonal, and the whole line through them.
+    private static final long[][] BETWEEN = new long[64][64];
+    private static final long[][] LINE = new long[64][64];
+
+    // Magic bitboard tables for each square. The magic numbers were found with findMagic and are stored so the tables
+    // can be filled in a single pass when the class is loaded, instead of searching for them every time.
+    private static final long[] ROOK_MASKS = new long[64];
+    private static final long[] ROOK_MAGICS = {
+            0x0080004000893220L, 0x0140004020001002L, 0x0200201040820008L, 0x2900200410000900L,
+            0x0100050008000210L, 0x1200880400100200L, 0x4080820001000080L, 0x8280025023800300L,
+            0x0000800020804018L, 0x4000401000200040L, 0x0408802000100480L, 0x0000801000080080L,
+            0x0181001100040800L, 0x0202800400020080L, 0x0011000100044200L, 0xD001001200409100L,
+            0x070820800040088CL, 0x1008820020410208L, 0x0100808020001008L, 0x0208090021021000L,
+            0x0030050008010010L, 0x8402808004000200L, 0x2100040010099A08L, 0x0C0012000100806CL,
+            0x0080400080002088L, 0x2000500040002000L, 0x8000100080200088L, 0x0028100100082104L,
+            0x2020080080800400L, 0x0000020080040080L, 0xE020080400100201L, 0x010C004200040081L,
+            0x0000810202002041L, 0xC000E00081804000L, 0x0060001441002500L, 0x0018009002800880L,
+            0x0048000A80800400L, 0x0008040080800200L, 0x000010182C000102L, 0x0A701088E2000401L,
+            0x0001400120818000L, 0x2020004000808023L, 0x00010040A0030014L, 0x0000100008008080L,
+            0x0109008800050010L, 0x0000040002008080L, 0x8040100802840001L, 0x8400806410820001L,
+            0x0080008041002100L, 0x0001002040008100L, 0x0312002080401200L, 0x8200100020090100L,
+            0x852E080004008080L, 0x2001000204002900L, 0x00101148900A0400L, 0x0801410054009200L,
+            0x8205002200144482L, 0x1440002100804011L, 0x0001001009200043L, 0x9003100008842101L,
+            0x4401009004080017L, 0x0002000801049002L, 0x0000A804B2151014L, 0x0430008034010042L
+    };
+    private static final int[] ROOK_SHIFTS = new int[64];
+    private static final long[][] ROOK_TABLE = new long[64][];
+    private static final long[] BISHOP_MASKS = new long[64];
+    private static final long[] BISHOP_MAGICS = {
+            0x0040100084808A82L, 0x00A1040080810004L, 0x0008208102000041L, 0x00420A0201200008L,
+            0x04411040200000A0L, 0x4080901008208122L, 0x20030C0220260280L, 0x0000802410040402L,
+            0x2040440408220424L, 0x0000A0810A188100L, 0x0000482484098811L, 0x0222440408800002L,
+            0x4000A40420000000L, 0x0282008210404000L, 0x0080004104202084L, 0x0001388201100210L,
+            0x0004011010A20802L, 0x00040248D0040050L, 0x0002513003020460L, 0x0088405404000864L,
+            0x0004010613200244L, 0x1003040200808408L, 0x40090228A0882060L, 0x1002000A92048200L,
+            0x0050440040080284L, 0x00042410200800A0L, 0x0802020401080200L, 0x6404004008081100L,
+            0x4041004004004062L, 0x0112810002030481L, 0x100800848202018AL, 0x0044208001004104L,
+            0x0B01084000210420L, 0x1582012000100200L, 0x4000108E00101400L, 0x2400020080080080L,
+            0x0004010011240040L, 0x2010008020020208L, 0x1C380823000090A0L, 0x0002008320110C00L,
+            0x0002491040402848L, 0x4406008C05006042L, 0x00210840480C1004L, 0xC002004012001040L,
+            0x02010C500980A402L, 0x0040208091002082L, 0x2002040104200200L, 0x0408811040800200L,
+            0x4C01010802400001L, 0x8200440449084000L, 0x0402411888040420L, 0x0003440320980001L,
+            0x0008020420820100L, 0x0084401062008000L, 0x0141028401220420L, 0x0008021820410000L,
+            0x0001010121200200L, 0x2408224A080C0255L, 0x000C058080480800L, 0x010000208042020CL,
+            0x080C140040050100L, 0x00100228A3080600L, 0xB04088C230040100L, 0x0002081A08020029L
+    };
+    private static final int[] BISHOP_SHIFTS = new int[64];
+    private static final long[][] BISHOP_TABLE = new long[64][];
+
+    // Directions as {file step, rank step}.
+    private static final int[][] ROOK_DIRS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] BISHOP_DIRS = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+    static {
+        MoveGenerator.initLeapers();
+        MoveGenerator.initLines();
+
+        // The random numbers are only needed if a stored magic number does not work for its square. A fixed seed
+        // makes that search, and so the start-up time, the same on every run.
+        Random rng = new Random(0x5EED_AD7L);
+        for (int sq = 0; sq < 64; sq++) {
+            ROOK_MASKS[sq] = MoveGenerator.slidingMask(sq, ROOK_DIRS);
+            ROOK_SHIFTS[sq] = 64 - Long.bitCount(ROOK_MASKS[sq]);
+            ROOK_TABLE[sq] = new long[1 << Long.bitCount(ROOK_MASKS[sq])];
+            ROOK_MAGICS[sq] = MoveGenerator.findMagic(sq, ROOK_MASKS[sq], ROOK_DIRS, ROOK_TABLE[sq],
+                    ROOK_MAGICS[sq], rng);
+
+            BISHOP_MASKS[sq] = MoveGenerator.slidingMask(sq, BISHOP_DIRS);
+            BISHOP_SHIFTS[sq] = 64 - Long.bitCount(BISHOP_MASKS[sq]);
+            BISHOP_TABLE[sq] = new long[1 << Long.bitCount(BISHOP_MASKS[sq])];
+            BISHOP_MAGICS[sq] = MoveGenerator.findMagic(sq, BISHOP_MASKS[sq], BISHOP_DIRS, BISHOP_TABLE[sq],
+                    BISHOP_MAGICS[sq], rng);
+        }
+    }
+
+    private MoveGenerator() {}
+
+    // Methods that pack and unpack moves.
+
+    public static int move(int from, int to) { return from | (to << 6); }
+    public static int promotion(int from, int to, int type) { return from | (to << 6) | (type << PROMOTION_SHIFT); }
+    public static int getFrom(int move) { return move & 63; }
+    public static int getTo(int move) { return (move >>> 6) & 63; }
+    public static int getPromotion(int move) { return (move >>> PROMOTION_SHIFT) & 7; }
+    public static boolean isEnPassant(int move) { return (move & EN_PASSANT) != 0; }
+    public static boolean isCastle(int move) { return (move & CASTLE) != 0; }
+
+    /**
+     * Writes a move in UCI notation, such as "e2e4" or "e7e8q".
+     * @param move The move.
+     * @return The move as a string.
+     */
+    public static String toUCI(int move) {
+        int from = getFrom(move);
+        int to = getTo(move);
+        StringBuilder sb = new StringBuilder(5);
+        sb.append((char) ('a' + from % 8)).append((char) ('1' + from / 8));
+        sb.append((char) ('a' + to % 8)).append((char) ('1' + to / 8));
+        if (getPromotion(move) != 0) { sb.append(Position.PIECE_CHARS.charAt(6 + getPromotion(move))); }
+        return sb.toString();
+    }
+
+    /**
+     * Writes a move in Standard Algebraic Notation, such as "Nbd7" or "exd8=Q". The origin square is only given when
+     * another piece of the same kind could move to the same square, so every move has exactly one spelling. The check
+     * and checkmate symbols are not added.
+     * @param pos The position the move is played in.
+     * @param move The move, which must be legal in the position.
+     * @param moves Array the legal moves are generated into. It must have room for MAX_MOVES moves.
+     * @return The move as a string.
+     */
+    public static String toSAN(Position pos, int move, int[] moves) {
+        int from = getFrom(move);
+        int to = getTo(move);
+        if (isCastle(move)) { return to > from ? "O-O" : "O-O-O"; }
+
+        int piece = pos.pieceAt(from);
+        boolean capture = pos.pieceAt(to) != Position.NONE || isEnPassant(move);
+        StringBuilder sb = new StringBuilder(7);
+        if (piece % 6 == Position.PAWN) {
+            if (capture) { sb.append((char) ('a' + from % 8)); }
+        } else {
+            sb.append(Position.PIECE_CHARS.charAt(piece % 6));
+
+            // Find the other pieces of the same kind that can reach the destination.
+            boolean ambiguous = false;
+            boolean sameFile = false;
+            boolean sameRank = false;
+            int count = MoveGenerator.generate(pos, moves);
+            for (int i = 0; i < count; i++) {
+                int other = getFrom(moves[i]);
+                if (other != from && getTo(moves[i]) == to && pos.pieceAt(other) == piece && !isCastle(moves[i])) {
+                    ambiguous = true;
+                    sameFile |= other % 8 == from % 8;
+                    sameRank |= other / 8 == from / 8;
+                }
+            }
+            if (ambiguous && (!sameFile || sameRank)) { sb.append((char) ('a' + from % 8)); }
+            if (ambiguous && sameFile) { sb.append((char) ('1' + from / 8)); }
+        }
+        if (capture) { sb.append('x'); }
+        sb.append((char) ('a' + to % 8)).append((char) ('1' + to / 8));
+        if (getPromotion(move) != 0) { sb.append('=').append(Position.PIECE_CHARS.charAt(getPromotion(move))); }
+        return sb.toString();
+    }
+
+    // Attack lookups.
+
+    public static long rookAttacks(int sq, long occupancy) {
+        return ROOK_TABLE[sq][(int) (((occupancy & ROOK_MASKS[sq]) * ROOK_MAGICS[sq]) >>> ROOK_SHIFTS[sq])];
+    }
+
+    public static long bishopAttacks(int sq, long occupancy) {
+        return BISHOP_TABLE[sq][(int) (((occupancy & BISHOP_MASKS[sq]) * BISHOP_MAGICS[sq]) >>> BISHOP_SHIFTS[sq])];
+    }
+
+    public static long knightAttacks(int sq) { return KNIGHT_ATTACKS[sq]; }
+    public static long kingAttacks(int sq) { return KING_ATTACKS[sq]; }
+    public static long pawnAttacks(int color, int sq) { return PAWN_ATTACKS[color][sq]; }
+
+    /**
+     * Finds the legal move written in Standard Algebraic Notation, such as "e4", "Nbd7", "exd8=Q", or "O-O". Check and
+     * annotation symbols at the end of the move are ignored.
+     * @param pos The position the move is played in.
+     * @param san The move in SAN.
+     * @param moves Array the legal moves are generated into. It must have room for MAX_MOVES moves.
+     * @return The move, packed as described above.
+     * @throws IllegalArgumentException If the text is not a move, or does not match exactly one legal move.
+     */
+    public static int parseSAN(Position pos, CharSequence san, int[] moves) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) { end--; }
+        if (end < 2) { throw new IllegalArgumentException("Invalid move: " + san); }
+        int count = MoveGenerator.generate(pos, moves);
+
+        // Castling is written with the letter O, or sometimes the digit 0.
+        char first = san.charAt(0);
+        if (first == 'O' || first == '0') {
+            boolean kingside = end == 3;
+            if (end != 3 && end != 5) { throw new IllegalArgumentException("Invalid move: " + san); }
+            for (int i = 0; i < count; i++) {
+                if (isCastle(moves[i]) && (getTo(moves[i]) > getFrom(moves[i])) == kingside) { return moves[i]; }
+            }
+            throw new IllegalArgumentException("Illegal move: " + san);
+        }
+
+        // The piece letter, or none for a pawn.
+        int type = Position.PAWN;
+        int start = 0;
+        int letter = "NBRQK".indexOf(first);
+        if (letter >= 0) {
+            type = letter + 1;
+            start = 1;
+        }
+
+        // A promotion is written as "e8=Q", or sometimes "e8Q".
+        int promotion = 0;
+        int promoted = "NBRQ".indexOf(san.charAt(end - 1));
+        if (type == Position.PAWN && promoted >= 0) {
+            promotion = promoted + 1;
+            end = san.charAt(end - 2) == '=' ? end - 2 : end - 1;
+        }
+
+        // The destination is the last square, and anything between it and the piece letter narrows down the origin.
+        if (end - start < 2) { throw new IllegalArgumentException("Invalid move: " + san); }
+        int to = Position.parseSquare(san.charAt(end - 2), san.charAt(end - 1));
+        int fromFile = -1;
+        int fromRank = -1;
+        for (int i = start; i < end - 2; i++) {
+            char c = san.charAt(i);
+            if (c >= 'a' && c <= 'h') {
+                fromFile = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromRank = c - '1';
+            } else if (c != 'x' && c != ':') {
+                throw new IllegalArgumentException("Invalid move: " + san);
+            }
+        }
+
+        int found = -1;
+        for (int i = 0; i < count; i++) {
+            int m = moves[i];
+            int from = getFrom(m);
+            if (getTo(m) != to || pos.pieceAt(from) % 6 != type || getPromotion(m) != promotion || isCastle(m)) {
+                continue;
+            }
+            if ((fromFile >= 0 && from % 8 != fromFile) || (fromRank >= 0 && from / 8 != fromRank)) { continue; }
+            if (found != -1) { throw new IllegalArgumentException("Ambiguous move: " + san); }
+            found = m;
+        }
+        if (found == -1) { throw new IllegalArgumentException("Illegal move: " + san); }
+        return found;
+    }
+
+    /**
+     * Finds the pieces of one color that attack a square.
+     * @param pos The position.
+     * @param sq The square that is attacked.
+     * @param byColor The color of the attacking pieces.
+     * @param occupancy The squares that block sliding pieces.
+     * @return A bitboard of the attacking pieces.
+     */
+    public static long attackers(Position pos, int sq, int byColor, long occupancy) {
+        int base = byColor * 6;
+        long queens = pos.getBitboard(base + Position.QUEEN);
+        return (PAWN_ATTACKS[byColor ^ 1][sq] & pos.getBitboard(base + Position.PAWN))
+                | (KNIGHT_ATTACKS[sq] & pos.getBitboard(base + Position.KNIGHT))
+                | (KING_ATTACKS[sq] & pos.getBitboard(base + Position.KING))
+                | (bishopAttacks(sq, occupancy) & (pos.getBitboard(base + Position.BISHOP) | queens))
+                | (rookAttacks(sq, occupancy) & (pos.getBitboard(base + Position.ROOK) | queens));
+    }
+
+    /**
+     * @param pos The position.
+     * @return True if the side to move is in check.
+     */
+    public static boolean isInCheck(Position pos) {
+        int us = pos.getSideToMove();
+        long king = pos.getBitboard(Position.piece(us, Position.KING));
+        return king != 0
+                && attackers(pos, Long.numberOfTrailingZeros(king), us ^ 1, pos.getOccupancy()) != 0;
+    }
+
+    /**
+     * Generates every legal move for the side to move.
+     * @param pos The position.
+     * @param moves Array the moves are written to. It must have room for MAX_MOVES moves.
+     * @return The number of moves written.
+     */
+    public static int generate(Position pos, int[] moves) {
+        int us = pos.getSideToMove();
+        int them = us ^ 1;
+        long own = pos.getOccupancy(us);
+        long enemy = pos.getOccupancy(them);
+        long occupancy = own | enemy;
+        int count = 0;
+
+        long kingBB = pos.getBitboard(Position.piece(us, Position.KING));
+        if (kingBB == 0) { return 0; }
+        int king = Long.numberOfTrailingZeros(kingBB);
+
+        // King moves. The king is removed from the board while testing its destinations, so a slider checking the
+        // king along a line also covers the square behind the king.
+        long noKing = occupancy ^ kingBB;
+        for (long b = KING_ATTACKS[king] & ~own; b != 0; b &= b - 1) {
+            int to = Long.numberOfTrailingZeros(b);
+            if (attackers(pos, to, them, noKing) == 0) { moves[count++] = move(king, to); }
+        }
+
+        long checkers = attackers(pos, king, them, occupancy);
+
+        // In double check only the king can move.
+        if (Long.bitCount(checkers) > 1) { return count; }
+
+        // In single check, other pieces must capture the checking piece or block the check.
+        long targets = ~own;
+        if (checkers != 0) {
+            int checker = Long.numberOfTrailingZeros(checkers);
+            targets &= checkers | BETWEEN[king][checker];
+        }
+
+        long pinned = MoveGenerator.pinned(pos, king, us, own, enemy);
+        int base = us * 6;
+
+        // Knights. A pinned knight can never move.
+        for (long b = pos.getBitboard(base + Position.KNIGHT) & ~pinned; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            count = MoveGenerator.addAll(moves, count, from, KNIGHT_ATTACKS[from] & targets);
+        }
+
+        // Bishops, rooks, and queens. A pinned slider may only move along the pin.
+        long queens = pos.getBitboard(base + Position.QUEEN);
+        for (long b = pos.getBitboard(base + Position.BISHOP) | queens; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            long dests = bishopAttacks(from, occupancy) & targets;
+            if ((pinned & (1L << from)) != 0) { dests &= LINE[king][from]; }
+            count = MoveGenerator.addAll(moves, count, from, dests);
+        }
+        for (long b = pos.getBitboard(base + Position.ROOK) | queens; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            long dests = rookAttacks(from, occupancy) & targets;
+            if ((pinned & (1L << from)) != 0) { dests &= LINE[king][from]; }
+            count = MoveGenerator.addAll(moves, count, from, dests);
+        }
+
+        // Pawns.
+        long pawns = pos.getBitboard(base + Position.PAWN);
+        long empty = ~occupancy;
+        int forward = us == Position.WHITE ? 8 : -8;
+        long startRank = us == Position.WHITE ? RANK_2 : RANK_7;
+        long lastRank = us == Position.WHITE ? RANK_8 : RANK_1;
+        for (long b = pawns; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            long fromBit = 1L << from;
+            long dests = PAWN_ATTACKS[us][from] & enemy;
+
+            // Single and double pushes onto empty squares.
+            int one = from + forward;
+            if ((empty & (1L << one)) != 0) {
+                dests |= 1L << one;
+                if ((fromBit & startRank) != 0 && (empty & (1L << (one + forward))) != 0) {
+                    dests |= 1L << (one + forward);
+                }
+            }
+
+            dests &= targets;
+            if ((pinned & fromBit) != 0) { dests &= LINE[king][from]; }
+
+            for (; dests != 0; dests &= dests - 1) {
+                int to = Long.numberOfTrailingZeros(dests);
+                if (((1L << to) & lastRank) != 0) {
+                    for (int type = Position.QUEEN; type >= Position.KNIGHT; type--) {
+                        moves[count++] = promotion(from, to, type);
+                    }
+                } else {
+                    moves[count++] = move(from, to);
+                }
+            }
+        }
+
+        // En passant. This is rare, so it is checked by making the capture on the occupancy bitboard and testing the
+        // king directly. That covers every special case, including the captured pawn being pinned along the rank.
+        int ep = pos.getEpSquare();
+        if (ep != Position.NONE) {
+            int captured = ep - forward;
+            for (long b = PAWN_ATTACKS[them][ep] & pawns; b != 0; b &= b - 1) {
+                int from = Long.numberOfTrailingZeros(b);
+                long after = (occupancy ^ (1L << from) ^ (1L << captured)) | (1L << ep);
+                long attackers = attackers(pos, king, them, after) & ~(1L << captured);
+                if (attackers == 0) { moves[count++] = move(from, ep) | EN_PASSANT; }
+            }
+        }
+
+        // Castling. The king may not castle out of, through, or into check.
+        if (checkers == 0) {
+            int rights = pos.getCastling();
+            int kingside = us == Position.WHITE ? Position.WHITE_KINGSIDE : Position.BLACK_KINGSIDE;
+            int queenside = us == Position.WHITE ? Position.WHITE_QUEENSIDE : Position.BLACK_QUEENSIDE;
+            int home = us == Position.WHITE ? 4 : 60;
+            if (king == home && (rights & kingside) != 0 && (occupancy & (3L << (home + 1))) == 0
+                    && attackers(pos, home + 1, them, occupancy) == 0
+                    && attackers(pos, home + 2, them, occupancy) == 0) {
+                moves[count++] = move(home, home + 2) | CASTLE;
+            }
+            if (king == home && (rights & queenside) != 0 && (occupancy & (7L << (home - 3))) == 0
+                    && attackers(pos, home - 1, them, occupancy) == 0
+                    && attackers(pos, home - 2, them, occupancy) == 0) {
+                moves[count++] = move(home, home - 2) | CASTLE;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Finds the legal destinations of the piece on one square.
+     * @param pos The position.
+     * @param from The square of the piece.
+     * @return A bitboard of the squares the piece can legally move to.
+     */
+    public static long destinations(Position pos, int from) {
+        int[] moves = new int[MAX_MOVES];
+        int count = MoveGenerator.generate(pos, moves);
+        long dests = 0;
+        for (int i = 0; i < count; i++) {
+            if (getFrom(moves[i]) == from) { dests |= 1L << getTo(moves[i]); }
+        }
+        return dests;
+    }
+
+    // Finds the pieces of the side to move that are pinned to their king.
+    private static long pinned(Position pos, int king, int us, long own, long enemy) {
+        int base = (us ^ 1) * 6;
+        long queens = pos.getBitboard(base + Position.QUEEN);
+
+        // Enemy sliders that would attack the king if only enemy pieces blocked them.
+        long snipers = (rookAttacks(king, enemy) & (pos.getBitboard(base + Position.ROOK) | queens))
+                | (bishopAttacks(king, enemy) & (pos.getBitboard(base + Position.BISHOP) | queens));
+
+        long pinned = 0;
+        for (; snipers != 0; snipers &= snipers - 1) {
+            long blockers = BETWEEN[king][Long.numberOfTrailingZeros(snipers)] & (own | enemy);
+
+            // If exactly one of our pieces stands between the king and the slider, that piece is pinned.
+            if (Long.bitCount(blockers) == 1 && (blockers & own) != 0) { pinned |= blockers; }
+        }
+        return pinned;
+    }
+
+    // Adds a move from one square to each destination in a bitboard.
+    private static int addAll(int[] moves, int count, int from, long dests) {
+        for (; dests != 0; dests &= dests - 1) { moves[count++] = move(from, Long.numberOfTrailingZeros(dests)); }
+        return count;
+    }
+
+    // Builds the attack tables for knights, kings, and pawns.
+    private static void initLeapers() {
+        int[][] knight = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+        int[][] kingSteps = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}};
+        for (int sq = 0; sq < 64; sq++) {
+            KNIGHT_ATTACKS[sq] = MoveGenerator.steps(sq, knight);
+            KING_ATTACKS[sq] = MoveGenerator.steps(sq, kingSteps);
+            long bit = 1L << sq;
+            PAWN_ATTACKS[Position.WHITE][sq] = ((bit & ~FILE_A) << 7) | ((bit & ~FILE_H) << 9);
+            PAWN_ATTACKS[Position.BLACK][sq] = ((bit & ~FILE_A) >>> 9) | ((bit & ~FILE_H) >>> 7);
+        }
+    }
+
+    // Builds the BETWEEN and LINE tables.
+    private static void initLines() {
+        int[][] dirs = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+        for (int a = 0; a < 64; a++) {
+            for (int[] d : dirs) {
+                long between = 0;
+                int file = a % 8 + d[0];
+                int rank = a / 8 + d[1];
+                while (file >= 0 && file < 8 && rank >= 0 && rank < 8) {
+                    int b = rank * 8 + file;
+                    BETWEEN[a][b] = between;
+                    LINE[a][b] = MoveGenerator.ray(a, d[0], d[1]) | MoveGenerator.ray(a, -d[0], -d[1]) | (1L << a);
+                    between |= 1L << b;
+                    file = file + d[0];
+                    rank = rank + d[1];
+                }
+            }
+        }
+    }
+
+    // Returns the squares reached from a square by each single step, ignoring steps that leave the board.
+    private static long steps(int sq, int[][] deltas) {
+        long result = 0;
+        for (int[] d : deltas) {
+            int file = sq % 8 + d[0];
+            int rank = sq / 8 + d[1];
+            if (file >= 0 && file < 8 && rank >= 0 && rank < 8) { result |= 1L << (rank * 8 + file); }
+        }
+        return result;
+    }
+
+    // Returns every square in one direction from a square, up to the edge of the board.
+    private static long ray(int sq, int df, int dr) {
+        long result = 0;
+        int file = sq % 8 + df;
+        int rank = sq / 8 + dr;
+        while (file >= 0 && file < 8 && rank >= 0 && rank < 8) {
+            result |= 1L << (rank * 8 + file);
+            file = file + df;
+            rank = rank + dr;
+        }
+        return result;
+    }
+
+    // Returns the squares whose occupancy affects a slider on the given square. The last square in each direction is
+    // left out, because a piece there cannot block anything further along.
+    private static long slidingMask(int sq, int[][] dirs) {
+        long result = 0;
+        for (int[] d : dirs) {
+            int file = sq % 8 + d[0];
+            int rank = sq / 8 + d[1];
+            while (file + d[0] >= 0 && file + d[0] < 8 && rank + d[1] >= 0 && rank + d[1] < 8) {
+                result |= 1L << (rank * 8 + file);
+                file = file + d[0];
+                rank = rank + d[1];
+            }
+        }
+        return result;
+    }
+
+    // Computes slider attacks by walking each direction until a blocker or the edge is reached. This is only used to
+    // build the magic tables.
+    private static long slowAttacks(int sq, long occupancy, int[][] dirs) {
+        long result = 0;
+        for (int[] d : dirs) {
+            int file = sq % 8 + d[0];
+            int rank = sq / 8 + d[1];
+            while (file >= 0 && file < 8 && rank >= 0 && rank < 8) {
+                long bit = 1L << (rank * 8 + file);
+                result |= bit;
+                if ((occupancy & bit) != 0) { break; }
+                file = file + d[0];
+                rank = rank + d[1];
+            }
+        }
+        return result;
+    }
+
+    // Searches for a magic number that maps every subset of the mask to a table slot without two subsets with
+    // different attacks landing in the same slot, and fills the table. The stored magic number is tried first, so the
+    // search only runs if it has been changed to one that does not work.
+    private static long findMagic(int sq, long mask, int[][] dirs, long[] table, long stored, Random rng) {
+        int bits = Long.bitCount(mask);
+        int size = 1 << bits;
+        long[] occupancies = new long[size];
+        long[] attacks = new long[size];
+
+        // Enumerate every subset of the mask with the carry-rippler trick.
+        long subset = 0;
+        for (int i = 0; i < size; i++) {
+            occupancies[i] = subset;
+            attacks[i] = MoveGenerator.slowAttacks(sq, subset, dirs);
+            subset = (subset - mask) & mask;
+        }
+
+        // Each slot remembers which attempt last wrote to it, so the table does not have to be cleared between tries.
+        int[] epoch = new int[size];
+        for (int attempt = 1; ; attempt++) {
+            // Numbers with few set bits make good magics.
+            long magic = attempt == 1 ? stored : rng.nextLong() & rng.nextLong() & rng.nextLong();
+            if (attempt > 1 && Long.bitCount((mask * magic) & 0xFF00000000000000L) < 6) { continue; }
+
+            boolean ok = true;
+            for (int i = 0; i < size && ok; i++) {
+                int index = (int) ((occupancies[i] * magic) >>> (64 - bits));
+                if (epoch[index] != attempt) {
+                    epoch[index] = attempt;
+                    table[index] = attacks[i];
+                } else if (table[index] != attacks[i]) {
+                    ok = false;
+                }
+            }
+            if (ok) { return magic; }
+        }
+    }
+}
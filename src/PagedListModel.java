@@ -0,0 +1,172 @@
+import java.sql.Connection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.AbstractListModel;
+
+/**
+ * This class is a list model that knows the key of every row in the list, but only holds the rows themselves for the
+ * pages of the list that were displayed recently. A JList asks the model for the rows it is about to paint; a row on a
+ * page that is not loaded yet is returned as null, and the page is loaded by a Loader on a reader connection together
+ * with the pages either side of it. When a page arrives, the JList is told once for the whole page. A page that fails
+ * to load is not asked for again until the keys are replaced. Rows that are made from data already in memory are made
+ * by a MemoryLoader instead, straight away on the Event Dispatch Thread, without using the database.
+ *
+ * With fixed cell sizes, a JList only asks for the rows it paints, so a list of any length costs an int per row plus
+ * at most MAX_PAGES pages of rows. The model must only be used on the Event Dispatch Thread.
+ * @param <T> The type of the rows.
+ */
+public final class PagedListModel<T> extends AbstractListModel<T> {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Loads the rows for part of the list. Runs on a reader connection.
+     * @param <T> The type of the rows.
+     */
+    public interface Loader<T> {
+        /**
+         * @param conn Connection to the database.
+         * @param keys The keys of every row in the list.
+         * @param from The index of the first row to load.
+         * @param to The index after the last row to load.
+         * @return One row for each of keys[from] to keys[to - 1], in the same order, with null for a key whose row no
+         * longer exists.
+         * @throws Exception If the rows cannot be loaded, throw an exception.
+         */
+        List<T> load(Connection conn, int[] keys, int from, int to) throws Exception;
+    }
+
+    /**
+     * Makes the rows for part of the list from data that is already in memory. Runs on the Event Dispatch Thread.
+     * @param <T> The type of the rows.
+     */
+    public interface MemoryLoader<T> {
+        /**
+         * @param keys The keys of every row in the list.
+         * @param from The index of the first row to make.
+         * @param to The index after the last row to make.
+         * @return One row for each of keys[from] to keys[to - 1], in the same order.
+         */
+        List<T> load(int[] keys, int from, int to);
+    }
+
+    // Number of rows loaded at once. A list shows about ten rows, so a page covers a few screens of scrolling.
+    public static final int PAGE_SIZE = 100;
+
+    // The most pages held at once. The least recently displayed page is dropped first.
+    public static final int MAX_PAGES = 20;
+
+    // Exactly one of the loaders is set.
+    private final Loader<T> loader;
+    private final MemoryLoader<T> memoryLoader;
+
+    // The key of every row, in the order they are listed.
+    private int[] keys = new int[0];
+
+    // Incremented every time the keys are replaced. A page loaded for older keys is thrown away when it arrives.
+    private int generation = 0;
+
+    // Loaded pages, by page number, in order of last use.
+    private final Map<Integer, List<T>> pages = new LinkedHashMap<Integer, List<T>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) { return size() > MAX_PAGES; }
+    };
+
+    // Pages that are being loaded.
+    private final Set<Integer> loading = new HashSet<>();
+
+    // Pages that failed to load. The JList asks for its rows every time it paints, so a failed page would otherwise be
+    // loaded, and its error reported, over and over.
+    private final Set<Integer> failed = new HashSet<>();
+
+    /**
+     * Constructor for PagedListModel that loads its rows from the database. The list is empty until setKeys is called.
+     * @param newLoader Loads the rows of each page.
+     */
+    public PagedListModel(Loader<T> newLoader) {
+        loader = newLoader;
+        memoryLoader = null;
+    }
+
+    /**
+     * Constructor for PagedListModel that makes its rows from data in memory. The list is empty until setKeys is
+     * called.
+     * @param newLoader Makes the rows of each page.
+     */
+    public PagedListModel(MemoryLoader<T> newLoader) {
+        loader = null;
+        memoryLoader = newLoader;
+    }
+
+    /**
+     * Replaces every row of the list. No rows are loaded until the list asks for them.
+     * @param newKeys The key of every row, in the order they are listed.
+     */
+    public void setKeys(int[] newKeys) {
+        int oldSize = keys.length;
+        keys = newKeys;
+        generation = generation + 1;
+        pages.clear();
+        loading.clear();
+        failed.clear();
+
+        if (oldSize > 0) { this.fireIntervalRemoved(this, 0, oldSize - 1); }
+        if (keys.length > 0) { this.fireIntervalAdded(this, 0, keys.length - 1); }
+    }
+
+    /**
+     * @param index The index of a row.
+     * @return The key of the row, which is known whether or not the row is loaded.
+     */
+    public int getKey(int index) { return keys[index]; }
+
+    @Override
+    public int getSize() { return keys.length; }
+
+    /**
+     * @param index The index of a row.
+     * @return The row, or null if its page is not loaded yet, in which case it is loaded.
+     */
+    @Override
+    public T getElementAt(int index) {
+        int page = index / PAGE_SIZE;
+
+        // Keep the pages either side loaded too, so scrolling a little way in either direction finds them ready.
+        this.load(page);
+        this.load(page + 1);
+        this.load(page - 1);
+
+        List<T> rows = pages.get(page);
+        return rows != null ? rows.get(index - page * PAGE_SIZE) : null;
+    }
+
+    // Starts loading a page, unless it is loaded, already being loaded, failed to load, or outside the list.
+    private void load(int page) {
+        int from = page * PAGE_SIZE;
+        if (page < 0 || from >= keys.length || pages.containsKey(page) || failed.contains(page)) { return; }
+
+        int to = Math.min(from + PAGE_SIZE, keys.length);
+        if (memoryLoader != null) {
+            // The rows are ready as soon as they are made, so the JList gets them from this same call.
+            pages.put(page, memoryLoader.load(keys, from, to));
+            return;
+        }
+        if (!loading.add(page)) { return; }
+
+        int[] pageKeys = keys;
+        int pageGeneration = generation;
+        Database.read(conn -> loader.load(conn, pageKeys, from, to)).whenCompleteAsync((rows, ex) -> {
+            if (pageGeneration != generation) { return; }
+            loading.remove(page);
+            if (ex != null) {
+                failed.add(page);
+                Database.report("PagedListModel", ex);
+                return;
+            }
+            pages.put(page, rows);
+            this.fireContentsChanged(this, from, to - 1);
+        }, Database.EDT);
+    }
+}
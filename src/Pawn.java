@@ -11,12 +11,6 @@ public final class Pawn extends Piece {
         super(newPos, newTeam);
     }
 
-    // Currently returns zero as a placeholder.
-    @Override
-    public int getValidDestinations() {
-        return  0;
-    }
-
     @Override
     public ImageIcon getImage() throws NoSuchFieldException {
         // If the piece is on the white team, return the appropriate image.
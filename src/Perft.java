@@ -0,0 +1,105 @@
+/**
+ * This class checks the move generator by counting the leaf nodes of the move tree ("perft") for a set of standard test
+ * positions and comparing them with the published counts. It also reports how many nodes per second were generated,
+ * which serves as a benchmark for MoveGenerator and Position.makeMove. Like the debugging methods in InitDB and
+ * ReadCSV, this is a development tool and is not used by the application itself.
+ *
+ * Run it with "java Perft" for the full suite, or "java Perft quick" to stop one ply earlier in each position.
+ */
+public final class Perft {
+    // Test positions and their expected node counts at depth 1, 2, 3, and so on. These are the positions and counts
+    // published on the Chess Programming Wiki, which together cover castling, en passant, promotion, pins, and checks.
+    private static final String[] FENS = {
+            Position.START_FEN,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8"
+    };
+    private static final long[][] EXPECTED = {
+            {20, 400, 8902, 197281, 4865609},
+            {48, 2039, 97862, 4085603},
+            {14, 191, 2812, 43238, 674624, 11030083},
+            {6, 264, 9467, 422333},
+            {44, 1486, 62379, 2103487}
+    };
+
+    // One position and one move list per ply, reused throughout the search so counting allocates nothing.
+    private final Position[] stack;
+    private final int[][] moves;
+
+    private Perft(int maxDepth) {
+        stack = new Position[maxDepth + 1];
+        moves = new int[maxDepth + 1][MoveGenerator.MAX_MOVES];
+        for (int i = 0; i <= maxDepth; i++) { stack[i] = new Position(); }
+    }
+
+    /**
+     * Counts the leaf nodes of the legal move tree to a given depth.
+     * @param pos The root position.
+     * @param depth The number of plies to search.
+     * @return The number of leaf nodes.
+     */
+    public static long count(Position pos, int depth) {
+        Perft perft = new Perft(depth);
+        perft.stack[depth].copyFrom(pos);
+        return perft.search(depth);
+    }
+
+    // Counts the leaves below the position stored for the given depth.
+    private long search(int depth) {
+        Position pos = stack[depth];
+        int[] list = moves[depth];
+        int count = MoveGenerator.generate(pos, list);
+
+        // At the last ply every legal move is a leaf, so there is no need to play them.
+        if (depth == 1) { return count; }
+
+        long nodes = 0;
+        Position child = stack[depth - 1];
+        for (int i = 0; i < count; i++) {
+            child.copyFrom(pos);
+            child.makeMove(list[i]);
+            nodes = nodes + this.search(depth - 1);
+        }
+        return nodes;
+    }
+
+    /**
+     * Runs the test suite and prints the results.
+     * @param args Pass "quick" to skip the deepest search of each position.
+     */
+    public static void main(String[] args) {
+        boolean quick = args.length > 0 && args[0].equals("quick");
+
+        // Loading MoveGenerator builds the attack tables, which should not count towards the benchmark.
+        long initStart = System.nanoTime();
+        MoveGenerator.isInCheck(new Position());
+        System.out.printf("Tables built in %.1f ms%n", (System.nanoTime() - initStart) / 1e6);
+
+        int failures = 0;
+        long totalNodes = 0;
+        long totalNanos = 0;
+        for (int p = 0; p < FENS.length; p++) {
+            Position pos = Position.fromFEN(FENS[p]);
+            int maxDepth = quick ? EXPECTED[p].length - 1 : EXPECTED[p].length;
+            for (int depth = 1; depth <= maxDepth; depth++) {
+                long start = System.nanoTime();
+                long nodes = Perft.count(pos, depth);
+                long nanos = System.nanoTime() - start;
+                totalNodes = totalNodes + nodes;
+                totalNanos = totalNanos + nanos;
+
+                boolean ok = nodes == EXPECTED[p][depth - 1];
+                if (!ok) { failures = failures + 1; }
+                System.out.printf("%s position %d depth %d: %d nodes (expected %d), %.0f nodes/s%n",
+                        ok ? "PASS" : "FAIL", p + 1, depth, nodes, EXPECTED[p][depth - 1],
+                        nodes / Math.max(nanos / 1e9, 1e-9));
+            }
+        }
+
+        System.out.printf("%d failures, %d nodes in %.2f s, %.0f nodes/s%n", failures, totalNodes, totalNanos / 1e9,
+                totalNodes / (totalNanos / 1e9));
+        if (failures > 0) { System.exit(1); }
+    }
+}
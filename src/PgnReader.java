@@ -0,0 +1,233 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class reads the games of a PGN file one at a time from a channel. For each game, the tag pairs are read first,
+ * and then the moves of the main line are returned one by one as SAN tokens. Move numbers, comments, NAGs, annotation
+ * symbols such as "!?", and variations in parentheses are skipped, and the game ends at its result or at the tags of
+ * the next game.
+ *
+ * Only one game is held at a time, and the current move is returned as a view of a reusable buffer, so files of any
+ * size can be read with constant memory.
+ */
+public final class PgnReader implements Closeable {
+    // Game termination markers, apart from "*", which is read as a single character.
+    private static final String[] RESULTS = {"1-0", "0-1", "1/2-1/2"};
+
+    private final Reader in;
+
+    // Characters read from the input, with the position of the next character and the end of the valid characters.
+    private final char[] buffer = new char[16 * 1024];
+    private int position;
+    private int limit;
+
+    // The tag pairs of the current game.
+    private final Map<String, String> tags = new HashMap<>();
+
+    // The current SAN token.
+    private final StringBuilder move = new StringBuilder(16);
+
+    // The result of the current game, or null until it has been read.
+    private String result;
+
+    // True while the moves of the current game have not all been read.
+    private boolean inMovetext = false;
+
+    // The number of games read so far, including the current one.
+    private long gameNumber;
+
+    /**
+     * Constructor for PgnReader.
+     * @param channel The channel to read from, which must contain UTF-8 text. It is closed when the reader is closed.
+     */
+    public PgnReader(ReadableByteChannel channel) {
+        in = Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1);
+    }
+
+    /**
+     * Reads the tag pairs of the next game. Any moves of the current game that were not read are skipped.
+     * @return False if there are no more games.
+     * @throws IOException If the input cannot be read, or a tag pair is malformed.
+     */
+    public boolean nextGame() throws IOException {
+        while (inMovetext) { this.nextMove(); }
+        tags.clear();
+        result = null;
+
+        int c = this.skipWhitespace();
+        if (c == -1) { return false; }
+
+        // Tag pairs look like [Name "Value"], one after another.
+        while (c == '[') {
+            this.read();
+            this.skipWhitespace();
+            StringBuilder name = new StringBuilder();
+            while ((c = this.peek()) != -1 && c != '"' && c != ']' && !Character.isWhitespace(c)) {
+                name.append((char) this.read());
+            }
+            this.skipWhitespace();
+            if (this.read() != '"') { throw new IOException("Malformed tag in game " + (gameNumber + 1)); }
+            StringBuilder value = new StringBuilder();
+            while ((c = this.read()) != '"') {
+                if (c == -1) { throw new IOException("Unterminated tag in game " + (gameNumber + 1)); }
+                // A backslash escapes a quote or another backslash.
+                if (c == '\\') { c = this.read(); }
+                value.append((char) c);
+            }
+            while ((c = this.read()) != ']' && c != -1) { }
+            tags.put(name.toString(), value.toString());
+            c = this.skipWhitespace();
+        }
+
+        gameNumber = gameNumber + 1;
+        inMovetext = true;
+        return true;
+    }
+
+    /**
+     * Reads the next move of the main line of the current game.
+     * @return False if the game has no more moves. The result, if there was one, is then available from getResult.
+     * @throws IOException If the input cannot be read.
+     */
+    public boolean nextMove() throws IOException {
+        if (!inMovetext) { return false; }
+        while (true) {
+            int c = this.skipWhitespace();
+            if (c == -1 || c == '[') {
+                // The input ended, or the next game started, without a result.
+                inMovetext = false;
+                return false;
+            }
+
+            if (c == '{') {
+                // Comment, which runs to the closing brace.
+                while ((c = this.read()) != '}' && c != -1) { }
+            } else if (c == ';') {
+                // Comment, which runs to the end of the line.
+                while ((c = this.read()) != '\n' && c != -1) { }
+            } else if (c == '(') {
+                this.skipVariation();
+            } else if (c == '$') {
+                // Numeric annotation glyph.
+                this.read();
+                while ((c = this.peek()) >= '0' && c <= '9') { this.read(); }
+            } else if (c == '*') {
+                this.read();
+                return this.endGame("*");
+            } else if (c == '.' || c == '!' || c == '?' || c == ')' || c == '}') {
+                // Stray punctuation, such as the dots after a move number.
+                this.read();
+            } else {
+                move.setLength(0);
+                while ((c = this.peek()) != -1 && !Character.isWhitespace(c) && "{}();[$!?".indexOf(c) < 0) {
+                    move.append((char) this.read());
+                    // A move number may be followed by its move with no space, as in "1.e4".
+                    if (c == '.') { break; }
+                }
+
+                if (move.length() == 0) {
+                    // A character that cannot start a move, such as a stray "]".
+                    this.read();
+                    continue;
+                }
+                if (PgnReader.isResult(move)) { return this.endGame(move.toString()); }
+                if (move.charAt(move.length() - 1) == '.') {
+                    // A move number such as "12." or "12...", which is not itself a move.
+                    continue;
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return The current move in Standard Algebraic Notation, without annotation symbols. The returned sequence is
+     * only valid until the next move is read.
+     */
+    public CharSequence getMove() { return move; }
+
+    /**
+     * @param name The name of a tag, such as "Event" or "ECO".
+     * @return The value of the tag in the current game, or null if the game does not have it.
+     */
+    public String getTag(String name) { return tags.get(name); }
+
+    /**
+     * @return The result of the current game, such as "1-0" or "*", or null if it has not been read yet or the game has
+     * no result.
+     */
+    public String getResult() { return result; }
+
+    /**
+     * @return The number of games read so far. The first game is number 1.
+     */
+    public long getGameNumber() { return gameNumber; }
+
+    /**
+     * Closes the underlying channel.
+     * @throws IOException If the channel cannot be closed.
+     */
+    @Override
+    public void close() throws IOException { in.close(); }
+
+    private boolean endGame(String newResult) {
+        result = newResult;
+        inMovetext = false;
+        return false;
+    }
+
+    // Skips a variation, including any variations and comments nested inside it.
+    private void skipVariation() throws IOException {
+        int depth = 0;
+        int c;
+        while ((c = this.read()) != -1) {
+            if (c == '(') {
+                depth = depth + 1;
+            } else if (c == ')') {
+                depth = depth - 1;
+                if (depth == 0) { return; }
+            } else if (c == '{') {
+                while ((c = this.read()) != '}' && c != -1) { }
+            }
+        }
+    }
+
+    // Returns true for the game termination markers other than "*". "0-0" is castling, not a result.
+    private static boolean isResult(CharSequence token) {
+        for (String r : RESULTS) {
+            if (r.contentEquals(token)) { return true; }
+        }
+        return false;
+    }
+
+    // Skips whitespace and returns the next character without consuming it, or -1 at the end of the input.
+    private int skipWhitespace() throws IOException {
+        int c;
+        while ((c = this.peek()) != -1 && Character.isWhitespace(c)) { this.read(); }
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !this.fill()) { return -1; }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !this.fill()) { return -1; }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        while (n == 0) { n = in.read(buffer, 0, buffer.length); }
+        position = 0;
+        limit = Math.max(n, 0);
+        return n > 0;
+    }
+}
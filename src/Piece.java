@@ -34,10 +34,55 @@ public abstract class Piece {
     }
 
     /**
-     * This abstract method will be implemented by specific pieces like King and Pawn.
-     * @return An int representing the valid positions to which this piece can move on a given turn.
+     * This method receives a character representation of a chess piece and the position of that piece on the board and
+     * instantiates a Piece object using those two pieces of information.
+     * @param c A char representing the type of piece to be instantiated.
+     * @param newPos The current position of the piece on the chess board.
+     * @return Returns a subclass of the abstract Piece class.
      */
-    public abstract int getValidDestinations();
+    public static Piece fromFEN(char c, int newPos) {
+        // This switch case statement returns different Piece objects depending on the given char. In FEN notation,
+        // upper-case letters indicate white pieces and lower-case letters indicate black pieces.
+        switch (c) {
+            case 'P':
+                return new Pawn(newPos, 'w');
+            case 'B':
+                return new Bishop(newPos, 'w');
+            case 'N':
+                return new Knight(newPos, 'w');
+            case 'R':
+                return new Rook(newPos, 'w');
+            case 'K':
+                return new King(newPos, 'w');
+            case 'Q':
+                return new Queen(newPos, 'w');
+            case 'p':
+                return new Pawn(newPos, 'b');
+            case 'b':
+                return new Bishop(newPos, 'b');
+            case 'n':
+                return new Knight(newPos, 'b');
+            case 'r':
+                return new Rook(newPos, 'b');
+            case 'k':
+                return new King(newPos, 'b');
+            case 'q':
+                return new Queen(newPos, 'b');
+            default:
+                // If the operation fails, throw an exception.
+                throw new IllegalArgumentException("Can't create Piece with given parameters!");
+        }
+    }
+
+    /**
+     * This method finds the squares this piece can legally move to in a given position. The piece's board position is
+     * read as a square number in the same way as Position, so a1 is 0 and h8 is 63.
+     * @param position The position the piece is standing in. It must be this piece's side to move.
+     * @return A bitboard with one bit set for each square the piece can move to.
+     */
+    public long getValidDestinations(Position position) {
+        return MoveGenerator.destinations(position, pos);
+    }
 
     /**
      * @return Returns an image icon representation of the Piece.
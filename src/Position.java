@@ -0,0 +1,387 @@
+/**
+ * This class represents a chess position. The board is stored as twelve 64-bit bitboards, one for each kind of piece,
+ * where bit n is set if that piece stands on square n. Squares are numbered from a1 = 0 to h8 = 63, going along each
+ * rank from the a-file to the h-file. A 64-element array mirrors the bitboards so the piece on any square can be read
+ * directly.
+ *
+ * Along with the board, a Position holds the side to move, castling rights, en passant square, and the two move clocks,
+ * which are all the fields of a FEN string. Positions can be parsed from and written to FEN without creating any
+ * intermediate objects, so one instance can be reused for many positions.
+ *
+ * Each position also keeps its Zobrist key, which is updated as pieces are put on and removed from the board and as
+ * moves are made. See Zobrist for what the key includes.
+ */
+public final class Position {
+    // Colors. The color of a piece is its index divided by 6.
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    // Piece types. The index of a piece is its type plus 6 for black pieces, which matches the order of the letters in
+    // SpriteCache.PIECES.
+    public static final int PAWN = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int QUEEN = 4;
+    public static final int KING = 5;
+
+    // Value stored in the mailbox for an empty square, and in epSquare when there is no en passant square.
+    public static final int NONE = -1;
+
+    // Castling rights, stored as bits of a single int.
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+
+    // Letters used for the pieces in FEN notation, indexed by piece.
+    public static final String PIECE_CHARS = "PNBRQKpnbrqk";
+
+    // Castling rights kept when a piece moves from or to each square. Only the king and rook home squares remove any.
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) { CASTLING_MASK[sq] = 15; }
+        CASTLING_MASK[0] = 15 & ~WHITE_QUEENSIDE;
+        CASTLING_MASK[7] = 15 & ~WHITE_KINGSIDE;
+        CASTLING_MASK[4] = 15 & ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLING_MASK[56] = 15 & ~BLACK_QUEENSIDE;
+        CASTLING_MASK[63] = 15 & ~BLACK_KINGSIDE;
+        CASTLING_MASK[60] = 15 & ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+    }
+
+    // The standard starting position.
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // One bitboard per piece, indexed by piece.
+    private final long[] bitboards = new long[12];
+
+    // All pieces of each color, indexed by color.
+    private final long[] colors = new long[2];
+
+    // The piece on each square, or NONE if the square is empty.
+    private final byte[] mailbox = new byte[64];
+
+    private int sideToMove;
+    private int castling;
+    private int epSquare;
+    private int halfmoveClock;
+    private int fullmoveNumber;
+
+    // The Zobrist key of the board, castling rights, and side to move. The en passant part is added by getKey, as it
+    // depends on whether a capture is possible.
+    private long key;
+
+    /**
+     * Constructor for Position. The new position is the standard starting position.
+     */
+    public Position() { this.setFEN(START_FEN); }
+
+    /**
+     * Creates a new position from a FEN string.
+     * @param fen The position in standard FEN chess notation.
+     * @return A new Position.
+     */
+    public static Position fromFEN(CharSequence fen) {
+        Position pos = new Position();
+        pos.setFEN(fen);
+        return pos;
+    }
+
+    /**
+     * Replaces this position with the one described by a FEN string. The move clocks may be left out, in which case
+     * they default to 0 and 1.
+     * @param fen The position in standard FEN chess notation.
+     * @throws IllegalArgumentException If the string is not a valid FEN string.
+     */
+    public void setFEN(CharSequence fen) {
+        this.clear();
+        int length = fen.length();
+        int i = 0;
+
+        // Field 1: piece placement, from rank 8 down to rank 1 and from the a-file to the h-file within each rank.
+        int rank = 7;
+        int file = 0;
+        for (; i < length; i++) {
+            char c = fen.charAt(i);
+            if (c == ' ') { break; }
+            if (c == '/') {
+                if (file != 8 || rank == 0) { throw new IllegalArgumentException("Invalid FEN rank: " + fen); }
+                rank = rank - 1;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file = file + (c - '0');
+            } else {
+                int piece = PIECE_CHARS.indexOf(c);
+                if (piece < 0 || file > 7) { throw new IllegalArgumentException("Invalid FEN piece: " + fen); }
+                this.put(piece, rank * 8 + file);
+                file = file + 1;
+            }
+            if (file > 8) { throw new IllegalArgumentException("Invalid FEN rank: " + fen); }
+        }
+        if (rank != 0 || file != 8) { throw new IllegalArgumentException("Invalid FEN board: " + fen); }
+
+        // Field 2: side to move.
+        i = Position.skipSpace(fen, i);
+        if (i >= length) { throw new IllegalArgumentException("Missing side to move: " + fen); }
+        char side = fen.charAt(i++);
+        if (side == 'w') {
+            sideToMove = WHITE;
+        } else if (side == 'b') {
+            sideToMove = BLACK;
+            key ^= Zobrist.BLACK_TO_MOVE;
+        } else {
+            throw new IllegalArgumentException("Invalid side to move: " + fen);
+        }
+
+        // Field 3: castling rights.
+        i = Position.skipSpace(fen, i);
+        for (; i < length && fen.charAt(i) != ' '; i++) {
+            switch (fen.charAt(i)) {
+                case 'K': castling |= WHITE_KINGSIDE; break;
+                case 'Q': castling |= WHITE_QUEENSIDE; break;
+                case 'k': castling |= BLACK_KINGSIDE; break;
+                case 'q': castling |= BLACK_QUEENSIDE; break;
+                case '-': break;
+                default: throw new IllegalArgumentException("Invalid castling rights: " + fen);
+            }
+        }
+        key ^= Zobrist.CASTLING[castling];
+
+        // Field 4: en passant target square.
+        i = Position.skipSpace(fen, i);
+        if (i < length && fen.charAt(i) != '-') {
+            if (i + 1 >= length) { throw new IllegalArgumentException("Invalid en passant square: " + fen); }
+            epSquare = Position.parseSquare(fen.charAt(i), fen.charAt(i + 1));
+            i = i + 2;
+        } else {
+            i = i + 1;
+        }
+
+        // Fields 5 and 6: halfmove clock and fullmove number. These are optional.
+        i = Position.skipSpace(fen, i);
+        if (i < length) {
+            int value = 0;
+            for (; i < length && fen.charAt(i) != ' '; i++) { value = value * 10 + Position.digit(fen, i); }
+            halfmoveClock = value;
+        }
+        i = Position.skipSpace(fen, i);
+        if (i < length) {
+            int value = 0;
+            for (; i < length && fen.charAt(i) != ' '; i++) { value = value * 10 + Position.digit(fen, i); }
+            fullmoveNumber = value;
+        }
+    }
+
+    /**
+     * Writes this position as a FEN string.
+     * @param sb The builder the FEN string is appended to.
+     * @return The same builder.
+     */
+    public StringBuilder appendFEN(StringBuilder sb) {
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int piece = mailbox[rank * 8 + file];
+                if (piece == NONE) {
+                    empty = empty + 1;
+                } else {
+                    if (empty > 0) { sb.append((char) ('0' + empty)); }
+                    empty = 0;
+                    sb.append(PIECE_CHARS.charAt(piece));
+                }
+            }
+            if (empty > 0) { sb.append((char) ('0' + empty)); }
+            if (rank > 0) { sb.append('/'); }
+        }
+
+        sb.append(sideToMove == WHITE ? " w " : " b ");
+
+        if (castling == 0) { sb.append('-'); }
+        if ((castling & WHITE_KINGSIDE) != 0) { sb.append('K'); }
+        if ((castling & WHITE_QUEENSIDE) != 0) { sb.append('Q'); }
+        if ((castling & BLACK_KINGSIDE) != 0) { sb.append('k'); }
+        if ((castling & BLACK_QUEENSIDE) != 0) { sb.append('q'); }
+
+        sb.append(' ');
+        if (epSquare == NONE) {
+            sb.append('-');
+        } else {
+            sb.append((char) ('a' + epSquare % 8)).append((char) ('1' + epSquare / 8));
+        }
+
+        return sb.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+    }
+
+    /**
+     * @return This position as a FEN string.
+     */
+    public String toFEN() { return this.appendFEN(new StringBuilder(90)).toString(); }
+
+    @Override
+    public String toString() { return this.toFEN(); }
+
+    /**
+     * Makes this position a copy of another one.
+     * @param other The position to copy.
+     */
+    public void copyFrom(Position other) {
+        System.arraycopy(other.bitboards, 0, bitboards, 0, 12);
+        System.arraycopy(other.mailbox, 0, mailbox, 0, 64);
+        colors[WHITE] = other.colors[WHITE];
+        colors[BLACK] = other.colors[BLACK];
+        sideToMove = other.sideToMove;
+        castling = other.castling;
+        epSquare = other.epSquare;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        key = other.key;
+    }
+
+    /**
+     * Plays a move on this position. The move must be one produced by MoveGenerator for this position.
+     * @param move The move, packed as described in MoveGenerator.
+     */
+    public void makeMove(int move) {
+        int from = MoveGenerator.getFrom(move);
+        int to = MoveGenerator.getTo(move);
+        int piece = mailbox[from];
+        int us = sideToMove;
+
+        // The halfmove clock counts moves since the last capture or pawn move.
+        halfmoveClock = halfmoveClock + 1;
+        if (piece % 6 == PAWN || mailbox[to] != NONE) { halfmoveClock = 0; }
+
+        // An en passant capture removes a pawn from a square other than the destination.
+        if (MoveGenerator.isEnPassant(move)) { this.remove(us == WHITE ? to - 8 : to + 8); }
+
+        this.remove(to);
+        this.remove(from);
+        int promotion = MoveGenerator.getPromotion(move);
+        this.put(promotion != 0 ? piece(us, promotion) : piece, to);
+
+        // When castling, the rook jumps over the king.
+        if (MoveGenerator.isCastle(move)) {
+            int rookFrom = to > from ? to + 1 : to - 2;
+            int rookTo = to > from ? to - 1 : to + 1;
+            int rook = mailbox[rookFrom];
+            this.remove(rookFrom);
+            this.put(rook, rookTo);
+        }
+
+        // A double pawn push makes the square it skipped over the en passant target.
+        epSquare = NONE;
+        if (piece % 6 == PAWN && Math.abs(to - from) == 16) { epSquare = (from + to) / 2; }
+
+        // Moving the king or a rook, or capturing a rook on its home square, removes the matching castling rights.
+        this.setCastling(castling & CASTLING_MASK[from] & CASTLING_MASK[to]);
+
+        if (us == BLACK) { fullmoveNumber = fullmoveNumber + 1; }
+        this.setSideToMove(us ^ 1);
+    }
+
+    // Getters for the board and the state of the game.
+    public int pieceAt(int square) { return mailbox[square]; }
+    public long getBitboard(int piece) { return bitboards[piece]; }
+    public long getOccupancy(int color) { return colors[color]; }
+    public long getOccupancy() { return colors[WHITE] | colors[BLACK]; }
+    public int getSideToMove() { return sideToMove; }
+    public int getCastling() { return castling; }
+    public int getEpSquare() { return epSquare; }
+    public int getHalfmoveClock() { return halfmoveClock; }
+    public int getFullmoveNumber() { return fullmoveNumber; }
+
+    /**
+     * Returns the Zobrist key of this position. Positions with the same pieces, side to move, castling rights, and en
+     * passant capture have the same key, whatever their move clocks.
+     * @return A 64-bit hash of the position.
+     */
+    public long getKey() {
+        // The en passant square only matters if a pawn of the side to move stands next to the pawn that just moved.
+        if (epSquare != NONE && (MoveGenerator.pawnAttacks(sideToMove ^ 1, epSquare)
+                & bitboards[piece(sideToMove, PAWN)]) != 0) {
+            return key ^ Zobrist.EN_PASSANT[epSquare % 8];
+        }
+        return key;
+    }
+
+    /**
+     * Returns the index of a piece from its color and type.
+     * @param color WHITE or BLACK.
+     * @param type PAWN, KNIGHT, BISHOP, ROOK, QUEEN, or KING.
+     * @return The index of the piece, from 0 to 11.
+     */
+    public static int piece(int color, int type) { return color * 6 + type; }
+
+    /**
+     * Converts a square name such as "e4" into a square number.
+     * @param file The file letter, from 'a' to 'h'.
+     * @param rank The rank digit, from '1' to '8'.
+     * @return The square number, from 0 to 63.
+     */
+    public static int parseSquare(char file, char rank) {
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            throw new IllegalArgumentException("Invalid square: " + file + rank);
+        }
+        return (rank - '1') * 8 + (file - 'a');
+    }
+
+    // Places a piece on an empty square.
+    void put(int piece, int square) {
+        long bit = 1L << square;
+        bitboards[piece] |= bit;
+        colors[piece / 6] |= bit;
+        mailbox[square] = (byte) piece;
+        key ^= Zobrist.PIECES[piece][square];
+    }
+
+    // Removes the piece on a square, if there is one.
+    void remove(int square) {
+        int piece = mailbox[square];
+        if (piece == NONE) { return; }
+        long bit = 1L << square;
+        bitboards[piece] &= ~bit;
+        colors[piece / 6] &= ~bit;
+        mailbox[square] = NONE;
+        key ^= Zobrist.PIECES[piece][square];
+    }
+
+    // Setters for the state of the game, used when moves are made. Changing the side to move or the castling rights
+    // also updates the key.
+    void setSideToMove(int newSideToMove) {
+        if (newSideToMove != sideToMove) { key ^= Zobrist.BLACK_TO_MOVE; }
+        sideToMove = newSideToMove;
+    }
+    void setCastling(int newCastling) {
+        key ^= Zobrist.CASTLING[castling] ^ Zobrist.CASTLING[newCastling];
+        castling = newCastling;
+    }
+    void setEpSquare(int newEpSquare) { epSquare = newEpSquare; }
+    void setHalfmoveClock(int newHalfmoveClock) { halfmoveClock = newHalfmoveClock; }
+    void setFullmoveNumber(int newFullmoveNumber) { fullmoveNumber = newFullmoveNumber; }
+
+    // Empties the board and resets the state of the game.
+    private void clear() {
+        for (int i = 0; i < 12; i++) { bitboards[i] = 0; }
+        colors[WHITE] = 0;
+        colors[BLACK] = 0;
+        for (int i = 0; i < 64; i++) { mailbox[i] = NONE; }
+        sideToMove = WHITE;
+        castling = 0;
+        epSquare = NONE;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        key = 0;
+    }
+
+    private static int skipSpace(CharSequence fen, int i) {
+        while (i < fen.length() && fen.charAt(i) == ' ') { i++; }
+        return i;
+    }
+
+    private static int digit(CharSequence fen, int i) {
+        char c = fen.charAt(i);
+        if (c < '0' || c > '9') { throw new IllegalArgumentException("Invalid move clock: " + fen); }
+        return c - '0';
+    }
+}
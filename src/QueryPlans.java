@@ -0,0 +1,134 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class reads SQLite's EXPLAIN QUERY PLAN for a statement, and checks the plans of the program's own queries when
+ * it starts. SQLite picks a plan when a statement is prepared, so a missing or unusable index does not cause an error;
+ * the query just reads every row of a table, which is only noticed once the table is large. The check finds these
+ * scans on any database, however small.
+ *
+ * Each known query lists the tables it is meant to read in full, such as LINES for building the line index. A scan of
+ * any other table is reported as a warning. Scans of CTEs, subqueries, and virtual tables such as json_each are fine.
+ */
+public final class QueryPlans {
+    // A query the program runs, with the tables it is expected to scan.
+    private static final class Known {
+        private final String name;
+        private final String sql;
+        private final Set<String> scans;
+
+        private Known(String newName, String newSql, String... newScans) {
+            name = newName;
+            sql = newSql;
+            scans = new HashSet<>(Arrays.asList(newScans));
+        }
+    }
+
+    // Every query on a hot path. The decks and the lines are read in full on purpose when the program starts.
+    private static final List<Known> KNOWN = Arrays.asList(
+            new Known("DueQueue.LOAD", DueQueue.LOAD),
+            new Known("DeckStats.LOAD", DeckStats.LOAD, "DECKS"),
+            new Known("LineIndex.LOAD", LineIndex.LOAD, "LINES"),
+            new Known("LineSearch.QUERY", LineSearch.QUERY),
+            new Known("CardDao.LIST_RANGE", CardDao.LIST_RANGE),
+            new Known("CardDao.LIST_CHOSEN", CardDao.LIST_CHOSEN),
+            new Known("CardDao.LIST_IDS", CardDao.LIST_IDS),
+            new Known("CardDao.WHITE_MOVES", CardDao.WHITE_MOVES),
+            new Known("CardDao.BLACK_MOVES", CardDao.BLACK_MOVES),
+            new Known("CardDao.ALL_MOVES", CardDao.ALL_MOVES),
+            new Known("CardDao.INSERT", CardDao.INSERT),
+            new Known("CardDao.DELETE", CardDao.DELETE),
+            new Known("CardDao.SELECT_REVIEW", CardDao.SELECT_REVIEW),
+            new Known("CardDao.UPDATE_REVIEW", CardDao.UPDATE_REVIEW),
+            new Known("DeckDao.INSERT", DeckDao.INSERT),
+            new Known("DeckDao.RENAME", DeckDao.RENAME),
+            new Known("DeckDao.DELETE", DeckDao.DELETE));
+
+    private QueryPlans() {}
+
+    /**
+     * Reads the query plan of a statement without running it.
+     * @param conn Connection to the database.
+     * @param sql The statement.
+     * @param params Values for the statement's parameters, which can change the plan. Missing values are null.
+     * @return One line per step of the plan, indented under the step it belongs to, as the sqlite3 shell shows it.
+     * Empty if the statement has no plan, such as an INSERT of plain values.
+     * @throws SQLException If the statement cannot be prepared, throw an exception.
+     */
+    public static List<String> explain(Connection conn, String sql, Object... params) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+        try {
+            for (int i = 0; i < params.length; i++) { stmt.setObject(i + 1, params[i]); }
+            ResultSet rs = stmt.executeQuery();
+
+            // Each row has its own ID and the ID of the step it is part of, which is 0 at the top.
+            Map<Integer, Integer> depths = new HashMap<>();
+            List<String> lines = new ArrayList<>();
+            while (rs.next()) {
+                if (lines.isEmpty()) { lines.add("QUERY PLAN"); }
+                int depth = depths.getOrDefault(rs.getInt(2), 0) + 1;
+                depths.put(rs.getInt(1), depth);
+                lines.add(String.join("", Collections.nCopies(depth, "  ")) + rs.getString(4));
+            }
+            rs.close();
+            return lines;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Explains every known query and returns a warning for each table one of them scans that it should not. Run this
+     * after the schema is up to date.
+     * @param conn Connection to the database.
+     * @return The warnings, which are empty if every query uses an index where it should.
+     * @throws SQLException If the tables cannot be listed, throw an exception. A query that cannot be explained is
+     * reported as a warning instead.
+     */
+    public static List<String> check(Connection conn) throws SQLException {
+        // Only real tables count. CTEs and subqueries are always scanned, and virtual tables have their own indexes.
+        Set<String> tables = new HashSet<>();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT UPPER(NAME) FROM sqlite_master WHERE TYPE = 'table' " +
+                "AND SQL NOT LIKE 'CREATE VIRTUAL%'");
+        while (rs.next()) { tables.add(rs.getString(1)); }
+        rs.close();
+        stmt.close();
+
+        List<String> warnings = new ArrayList<>();
+        for (Known query : KNOWN) {
+            try {
+                for (String step : QueryPlans.explain(conn, query.sql)) {
+                    String table = QueryPlans.scannedTable(step.trim());
+                    if (table != null && tables.contains(table) && !query.scans.contains(table)) {
+                        warnings.add(query.name + " reads every row of " + table + " (" + step.trim() + ")");
+                    }
+                }
+            } catch (SQLException ex) {
+                warnings.add(query.name + " could not be explained: " + ex.getMessage());
+            }
+        }
+        return warnings;
+    }
+
+    // Returns the table a step of a plan scans, in upper case, or null if the step does not scan anything. Older
+    // versions of SQLite write "SCAN TABLE CARDS" where newer ones write "SCAN CARDS".
+    private static String scannedTable(String step) {
+        String[] words = step.split(" ");
+        if (words.length < 2 || !words[0].equals("SCAN")) { return null; }
+        String table = words[1].equals("TABLE") && words.length > 2 ? words[2] : words[1];
+        return table.toUpperCase(Locale.ROOT);
+    }
+}
@@ -1,121 +1,354 @@
-import java.io.*;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
-import java.util.Arrays;
-import java.util.Scanner;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 
 /**
- * This class reads two external CSV files and inserts the data into LINES and MOVES respectively. In the current
- * version of Adjust, this feature is for development purposes only and has not yet been fully integrated
- * into the application.
+ * This class reads the lines.csv and moves.csv files and inserts the data into LINES and MOVES respectively. It can
+ * also read a PGN file, replaying each game to produce the LINES and MOVES rows itself. In the current version of
+ * Adjust, this feature is for development purposes only and has not yet been fully integrated into the application.
+ *
+ * Each file is streamed through a CsvReader, so files of any size can be imported with constant memory. Rows are sent
+ * to the database in batches and committed in chunks, so an interrupted import keeps every chunk committed before the
+ * interruption. Rows are inserted with INSERT OR IGNORE, so running the import again with the same file skips the rows
+ * that are already there and continues with the rest.
+ *
+ * Run it with "java ReadCSV lines <file>", "java ReadCSV moves <file>", or "java ReadCSV pgn <file>", using "-" as
+ * the file to read standard input.
  * @author Jack Vandeleuv
  */
 public final class ReadCSV {
+    // Number of rows sent to the database in one batch.
+    private static final int BATCH_SIZE = 500;
+
+    // Number of rows committed in one transaction. Must be a multiple of BATCH_SIZE.
+    private static final int CHUNK_SIZE = 20000;
+
+    // Number of PGN games committed in one transaction.
+    private static final int GAME_CHUNK_SIZE = 1000;
+
+    // Number of opening tree nodes remembered while importing PGN. Older nodes are looked up in the database again.
+    private static final int NODE_CACHE_SIZE = 100000;
+
+    /**
+     * Copies the fields of one CSV record into the parameters of an insert statement.
+     */
+    private interface RowBinder {
+        void bind(CsvReader csv, PreparedStatement stmt) throws SQLException;
+    }
+
+    /**
+     * This static method reads a lines.csv file and inserts them into the database. Each row holds the ID, NAME, LINE,
+     * and ECO columns of LINES.
+     * @param path Path of the CSV file, or "-" to read standard input.
+     * @return The number of rows inserted.
+     * @throws IOException If the csv file cannot be read, an exception is thrown.
+     * @throws SQLException If the database transaction cannot be processed, an exception is thrown.
+     */
+    public static long ReadLines(String path) throws IOException, SQLException {
+        long inserted = ReadCSV.importRows("LINES", path, 4,
+                "INSERT OR IGNORE INTO LINES(ID, NAME, LINE, ECO) VALUES (?, ?, ?, ?)",
+                (csv, stmt) -> {
+                    stmt.setInt(1, csv.getInt(0));
+                    stmt.setString(2, csv.getString(1));
+                    stmt.setString(3, csv.getString(2));
+                    stmt.setString(4, csv.getString(3));
+                });
+        ReadCSV.linkLines();
+        return inserted;
+    }
 
     /**
-     * This static method reads a lines.csv file and inserts them into the database.
-     * @throws FileNotFoundException If the csv file cannot be found, an exception is thrown.
+     * This static method reads a moves.csv file and inserts them into the database. Each row holds the ID,
+     * ORDER_IN_LINE, BEFORE_FEN, AFTER_FEN, and LINES_ID columns of MOVES. The Zobrist keys of both positions are
+     * computed while importing.
+     * @param path Path of the CSV file, or "-" to read standard input.
+     * @return The number of rows inserted.
+     * @throws IOException If the csv file cannot be read, an exception is thrown.
      * @throws SQLException If the database transaction cannot be processed, an exception is thrown.
      */
-    public static void ReadLines() throws FileNotFoundException, SQLException {
-        // Insert new tuples into LINES.
-        PreparedStatement preStmt = Main.conn.prepareStatement("INSERT INTO LINES(ID, NAME, LINE, ECO) " +
-                "VALUES (?, ?, ?, ?)");
+    public static long ReadMoves(String path) throws IOException, SQLException {
+        // Reused for every row to check that both FEN strings describe a valid position, and to compute their Zobrist
+        // keys, before they are stored. The FEN strings are parsed straight out of the reader's buffer.
+        Position check = new Position();
+
+        long inserted = ReadCSV.importRows("MOVES", path, 5,
+                "INSERT OR IGNORE INTO MOVES(ID, ORDER_IN_LINE, BEFORE_FEN, AFTER_FEN, LINES_ID, BEFORE_KEY, " +
+                        "AFTER_KEY) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                (csv, stmt) -> {
+                    // Parsing throws an IllegalArgumentException if either FEN string is malformed.
+                    stmt.setLong(6, Zobrist.key(csv.getField(2), check));
+                    stmt.setLong(7, Zobrist.key(csv.getField(3), check));
+
+                    stmt.setInt(1, csv.getInt(0));
+                    stmt.setInt(2, csv.getInt(1));
+                    stmt.setString(3, csv.getString(2));
+                    stmt.setString(4, csv.getString(3));
+                    stmt.setInt(5, csv.getInt(4));
+                });
+        ReadCSV.linkLines();
+        return inserted;
+    }
+
+    // Links newly imported lines and moves into the opening tree. The lines and moves files can be imported in either
+    // order, so this runs after both.
+    private static void linkLines() throws SQLException {
+        Statement stmt = Main.conn.createStatement();
+        SchemaMigrator.linkLines(stmt);
+        stmt.close();
+        Main.conn.commit();
+    }
+
+    /**
+     * This static method reads a PGN file and adds each game to the database as a line. Every move of the main line is
+     * checked and replayed with MoveGenerator, and the MOVES rows are generated from the positions. Games that share
+     * their first moves share the same MOVES rows in the opening tree, so each position in the tree is stored once.
+     *
+     * The line's name is taken from the Opening and Variation tags, or from the players if there is no Opening tag, and
+     * its ECO code from the ECO tag. A game with an illegal move is cut short before that move, with a message. Games
+     * whose moves are all already a line in the database are skipped, so the same file can be imported again after an
+     * interruption.
+     * @param path Path of the PGN file, or "-" to read standard input.
+     * @return The number of lines inserted.
+     * @throws IOException If the PGN file cannot be read, an exception is thrown.
+     * @throws SQLException If the database transaction cannot be processed, an exception is thrown.
+     */
+    public static long ReadPGN(String path) throws IOException, SQLException {
+        OpeningTree tree = new OpeningTree();
+        long start = System.nanoTime();
+        long games = 0;
+        long inserted = 0;
+
+        // Two positions are swapped back and forth as the moves are played, and the legal moves are generated into a
+        // single array.
+        Position pos = new Position();
+        Position next = new Position();
+        int[] legalMoves = new int[MoveGenerator.MAX_MOVES];
+        StringBuilder line = new StringBuilder();
 
-        // Instantiate scanner and pass a new File object (and pass an absolute path to that File object).
-        Scanner sc = new Scanner(new File("C://Users//jackv//IdeaProjects//AnkiChess//src//lines.csv"));
+        try (PgnReader pgn = new PgnReader(ReadCSV.open(path))) {
+            while (pgn.nextGame()) {
+                games = games + 1;
+                String fen = pgn.getTag("FEN");
+                try {
+                    pos.setFEN(fen != null ? fen : Position.START_FEN);
+                } catch (IllegalArgumentException ex) {
+                    System.out.println("Skipping game " + pgn.getGameNumber() + ": " + ex.getMessage());
+                    continue;
+                }
+                line.setLength(0);
+
+                // ORDER_IN_LINE is odd for white's moves, so a game starting with black to move starts at 2.
+                int order = pos.getSideToMove() == Position.WHITE ? 1 : 2;
+                int parent = 0;
+                boolean newNode = false;
+                while (pgn.nextMove()) {
+                    int move;
+                    try {
+                        move = MoveGenerator.parseSAN(pos, pgn.getMove(), legalMoves);
+                    } catch (IllegalArgumentException ex) {
+                        // The moves before this one may already be in the tree, so the line is kept up to here.
+                        System.out.println("Cutting game " + pgn.getGameNumber() + " short: " + ex.getMessage());
+                        break;
+                    }
 
-        while (sc.hasNextLine()) {
-            // Each iteration returns a line for the CSV.
-            String csvLine = sc.nextLine();
+                    // Write the move the way lines.csv does, as in "1. e4 e5 2. Nf3".
+                    if (line.length() > 0) { line.append(' '); }
+                    if (pos.getSideToMove() == Position.WHITE) {
+                        line.append(pos.getFullmoveNumber()).append(". ");
+                    } else if (line.length() == 0) {
+                        line.append(pos.getFullmoveNumber()).append("... ");
+                    }
+                    line.append(pgn.getMove());
 
-            // Validate the line to ensure it is not empty.
-            if (!csvLine.isEmpty()) {
+                    next.copyFrom(pos);
+                    next.makeMove(move);
+                    parent = tree.child(parent, newNode, pos, next, order);
+                    newNode = tree.wasCreated();
 
-                // Split each csv by comma and insert each value into a string array.
-                String[] lineArr = ReadCSV.parseCSVLine(csvLine, 4);
+                    Position swap = pos;
+                    pos = next;
+                    next = swap;
+                    order = order + 1;
+                }
 
-                // The ID field is an int, so we call parseInt and pass the String.
-                preStmt.setInt(1, Integer.parseInt(lineArr[0]));
-                preStmt.setString(2, lineArr[1]);
-                preStmt.setString(3, lineArr[2]);
-                preStmt.setString(4, lineArr[3]);
+                // The last node of the game is the line's leaf. If it already existed, the line may already be stored.
+                if (parent != 0 && (newNode || !tree.hasLine(parent))) {
+                    tree.addLine(ReadCSV.lineName(pgn), line.toString(), pgn.getTag("ECO"), parent);
+                    inserted = inserted + 1;
+                }
 
-                // Execute the insert operation
-                preStmt.executeUpdate();
+                if (games % GAME_CHUNK_SIZE == 0) {
+                    tree.flush();
+                    Main.conn.commit();
+                    ReadCSV.printProgress("PGN", games, inserted, tree, start);
+                }
             }
+            tree.flush();
+            Main.conn.commit();
+        } catch (IOException | SQLException ex) {
+            // Only the games since the last committed chunk are lost.
+            Main.conn.rollback();
+            throw ex;
+        } finally {
+            tree.close();
         }
 
-        // Commit the transaction.
-        System.out.println("makeLines finished");
-        Main.conn.commit();
+        System.out.print("PGN finished: ");
+        ReadCSV.printProgress("PGN", games, inserted, tree, start);
+        return inserted;
+    }
+
+    // Builds a line name from the tags of a game.
+    private static String lineName(PgnReader pgn) {
+        String opening = pgn.getTag("Opening");
+        if (opening != null) {
+            String variation = pgn.getTag("Variation");
+            return variation != null ? opening + ": " + variation : opening;
+        }
+        String white = pgn.getTag("White");
+        String black = pgn.getTag("Black");
+        if (white != null && black != null) { return white + " - " + black; }
+        String event = pgn.getTag("Event");
+        return event != null ? event : "Game " + pgn.getGameNumber();
+    }
+
+    private static void printProgress(String table, long games, long inserted, OpeningTree tree, long start) {
+        double seconds = Math.max((System.nanoTime() - start) / 1e9, 1e-9);
+        System.out.printf("%s: %d games read, %d lines inserted, %d positions added, %d positions shared, " +
+                "%.0f games/s%n", table, games, inserted, tree.getCreated(), tree.getShared(), games / seconds);
     }
 
     /**
-     * Private method that splits a CSV with quotes around each value into a String[].
-     * @param csvLine String representing line of the CSV.
-     * @param ePerRow Elements for this line of the CSV.
-     * @return A String[] with each String representing a value in the CSV.
+     * Streams a CSV file into a table, printing the progress after every committed chunk.
+     * @param table Name of the table, used in the progress messages.
+     * @param path Path of the CSV file, or "-" to read standard input.
+     * @param fieldsPerRow The number of fields every row must have.
+     * @param sql The insert statement.
+     * @param binder Sets the parameters of the insert statement from a row.
+     * @return The number of rows inserted.
+     * @throws IOException If the file cannot be read, or a row is malformed, throw an exception.
+     * @throws SQLException If the rows cannot be inserted, throw an exception. Chunks committed before the failure
+     * remain in the database.
      */
-    private static String[] parseCSVLine(String csvLine, int ePerRow) {
-        String[] lineArr = new String[ePerRow];
-        int count = 0;
-        boolean isData = false;
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < csvLine.length(); i++) {
-            if (csvLine.charAt(i) == '"') {
-                if (!isData) {
-                    isData = true;
-                } else {
-                    lineArr[count] = sb.toString();
-                    count = count + 1;
-                    sb = new StringBuilder();
-                    isData = false;
+    private static long importRows(String table, String path, int fieldsPerRow, String sql, RowBinder binder)
+            throws IOException, SQLException {
+        PreparedStatement preStmt = Main.conn.prepareStatement(sql);
+        long start = System.nanoTime();
+        long rows = 0;
+        long inserted = 0;
+
+        try (CsvReader csv = new CsvReader(ReadCSV.open(path))) {
+            while (csv.next()) {
+                if (csv.getFieldCount() != fieldsPerRow) {
+                    throw new IOException("Row " + csv.getRecordNumber() + " of " + path + " has " +
+                            csv.getFieldCount() + " fields instead of " + fieldsPerRow);
+                }
+
+                // A first row that does not start with a number is a header.
+                if (csv.getRecordNumber() == 1 && !ReadCSV.isInteger(csv.getField(0))) { continue; }
+
+                try {
+                    binder.bind(csv, preStmt);
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException("Row " + csv.getRecordNumber() + " of " + path + " is invalid: " +
+                            ex.getMessage(), ex);
+                }
+                preStmt.addBatch();
+                rows = rows + 1;
+
+                if (rows % BATCH_SIZE == 0) { inserted = inserted + ReadCSV.executeBatch(preStmt); }
+                if (rows % CHUNK_SIZE == 0) {
+                    Main.conn.commit();
+                    ReadCSV.printProgress(table, rows, inserted, start);
                 }
-            } else if (isData) {
-                sb.append(csvLine.charAt(i));
             }
+            inserted = inserted + ReadCSV.executeBatch(preStmt);
+            Main.conn.commit();
+        } catch (IOException | SQLException ex) {
+            // Only the rows since the last committed chunk are lost.
+            Main.conn.rollback();
+            throw ex;
+        } finally {
+            preStmt.close();
         }
-        return lineArr;
+
+        System.out.print(table + " finished: ");
+        ReadCSV.printProgress(table, rows, inserted, start);
+        return inserted;
     }
 
-    /**
-     * This static method reads a moves.csv file and inserts them into the database.
-     * @throws FileNotFoundException If the csv file cannot be found, an exception is thrown.
-     * @throws SQLException If the database transaction cannot be processed, an exception is thrown.
-     */
-    public static void ReadMoves() throws FileNotFoundException, SQLException {
-        // Insert new tuples into MOVES.
-        PreparedStatement preStmt = Main.conn.prepareStatement("INSERT INTO MOVES(ID, ORDER_IN_LINE, BEFORE_FEN, " +
-                "AFTER_FEN, LINES_ID) VALUES (?, ?, ?, ?, ?)");
+    // Opens a file, or standard input if the path is "-".
+    private static ReadableByteChannel open(String path) throws IOException {
+        if (path.equals("-")) { return Channels.newChannel(System.in); }
+        return FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+    }
 
-        // Instantiate scanner and pass a new File object (and pass an absolute path to that File object).
-        Scanner sc = new Scanner(new File("C://Users//jackv//IdeaProjects//AnkiChess//src//moves.csv"));
+    // Runs the pending batch and returns how many rows were inserted. Rows that were ignored because their ID already
+    // exists count as 0.
+    private static long executeBatch(PreparedStatement preStmt) throws SQLException {
+        long inserted = 0;
+        for (int count : preStmt.executeBatch()) {
+            if (count > 0 || count == Statement.SUCCESS_NO_INFO) { inserted = inserted + 1; }
+        }
+        return inserted;
+    }
 
-        while (sc.hasNextLine()) {
-            // Each iteration returns a line for the CSV.
-            String csvLine = sc.nextLine();
+    private static void printProgress(String table, long rows, long inserted, long start) {
+        double seconds = Math.max((System.nanoTime() - start) / 1e9, 1e-9);
+        System.out.printf("%s: %d rows read, %d inserted, %d already present, %.0f rows/s%n", table, rows, inserted,
+                rows - inserted, rows / seconds);
+    }
 
-            // Validate the line to ensure it is not empty.
-            if (!csvLine.isEmpty()) {
+    private static boolean isInteger(CharSequence field) {
+        if (field.length() == 0) { return false; }
+        for (int i = 0; i < field.length(); i++) {
+            if (field.charAt(i) < '0' || field.charAt(i) > '9') { return false; }
+        }
+        return true;
+    }
 
-                // Split the input by comma.
-                String[] lineArr = ReadCSV.parseCSVLine(csvLine, 5);
+    /**
+     * Imports a lines, moves, or PGN file into database.db.
+     * @param args The kind of file, "lines", "moves", or "pgn", followed by its path or "-" for standard input.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2 || !(args[0].equals("lines") || args[0].equals("moves") || args[0].equals("pgn"))) {
+            System.out.println("Usage: java ReadCSV lines|moves|pgn <file, or - for standard input>");
+            return;
+        }
 
-                // If the relevant field is an int, so we call parseInt and pass the String.
-                preStmt.setInt(1, Integer.parseInt(lineArr[0]));
-                preStmt.setInt(2, Integer.parseInt(lineArr[1]));
-                preStmt.setString(3, lineArr[2]);
-                preStmt.setString(4, lineArr[3]);
-                preStmt.setInt(5, Integer.parseInt(lineArr[4]));
+        try {
+            Class.forName("org.sqlite.JDBC");
+            // Only the writer connection is needed, so no reader connections are opened. The moves file can be
+            // imported before the lines file, and a PGN import inserts moves before their line, so foreign keys are
+            // not enforced.
+            ConnectionManager.Settings settings = ConnectionManager.Settings.fromSystemProperties();
+            settings.setReaders(0);
+            settings.setForeignKeys(false);
+            Main.connections = new ConnectionManager("jdbc:sqlite:database.db", settings);
+            Main.conn = Main.connections.getWriter();
+            SchemaMigrator.migrate(Main.conn);
 
-                // Execute the insertion operation.
-                preStmt.executeUpdate();
+            if (args[0].equals("lines")) {
+                ReadCSV.ReadLines(args[1]);
+            } else if (args[0].equals("moves")) {
+                ReadCSV.ReadMoves(args[1]);
+            } else {
+                ReadCSV.ReadPGN(args[1]);
             }
+            Main.connections.close();
+        } catch (ClassNotFoundException | IOException | SQLException ex) {
+            System.out.println("ReadCSV encountered an error");
+            System.out.println(ex.getMessage());
         }
-
-        // Commit the transaction.
-        System.out.println("makeMoves finished");
-        Main.conn.commit();
     }
 
     /**
@@ -131,4 +364,179 @@ public final class ReadCSV {
             System.out.println(rs.getInt(1));
         }
     }
+
+    /**
+     * The opening tree as it is written during a PGN import. New MOVES and LINES rows are given IDs above the highest
+     * ones in the database and inserted in batches. Nodes are found first among the rows not yet sent to the database,
+     * then in a cache of recently used nodes, and finally with an index lookup, so memory use stays bounded however
+     * large the file is.
+     */
+    private static final class OpeningTree {
+        private final PreparedStatement insertMove = Main.conn.prepareStatement("INSERT INTO MOVES(ID, " +
+                "ORDER_IN_LINE, BEFORE_FEN, AFTER_FEN, LINES_ID, BEFORE_KEY, AFTER_KEY, PARENT_ID) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        private final PreparedStatement insertLine = Main.conn.prepareStatement("INSERT INTO LINES(ID, NAME, " +
+                "LINE, ECO, LEAF_MOVES_ID) VALUES (?, ?, ?, ?, ?)");
+        private final PreparedStatement findChild = Main.conn.prepareStatement("SELECT ID FROM MOVES " +
+                "WHERE PARENT_ID IS ? AND AFTER_KEY = ? AND BEFORE_KEY = ? ORDER BY ID LIMIT 1");
+        private final PreparedStatement findLine = Main.conn.prepareStatement("SELECT 1 FROM LINES " +
+                "WHERE LEAF_MOVES_ID = ? LIMIT 1");
+
+        // Nodes inserted since the last flush, which the database cannot find yet.
+        private final Map<Node, Integer> pending = new HashMap<>();
+
+        // Recently used nodes, with the least recently used one dropped when the cache is full.
+        private final Map<Node, Integer> cache = new LinkedHashMap<Node, Integer>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Node, Integer> eldest) { return size() > NODE_CACHE_SIZE; }
+        };
+
+        private int nextMoveId;
+        private int nextLineId;
+        private int pendingLines;
+        private boolean created;
+        private long createdCount;
+        private long sharedCount;
+
+        private OpeningTree() throws SQLException {
+            nextMoveId = OpeningTree.maxId("MOVES") + 1;
+            nextLineId = OpeningTree.maxId("LINES") + 1;
+        }
+
+        /**
+         * Finds the node for a move, creating it if it does not exist yet.
+         * @param parent The node of the previous move, or 0 for the first move.
+         * @param parentIsNew True if the parent was created during this game, in which case it has no children yet.
+         * @param before The position before the move.
+         * @param after The position after the move.
+         * @param order The ply of the move, starting with 1 for white's first move.
+         * @return The ID of the node.
+         */
+        private int child(int parent, boolean parentIsNew, Position before, Position after, int order)
+                throws SQLException {
+            Node node = new Node(parent, before.getKey(), after.getKey());
+            Integer id = parentIsNew ? null : this.find(node);
+            created = id == null;
+            if (id != null) {
+                sharedCount = sharedCount + 1;
+                cache.put(node, id);
+                return id;
+            }
+
+            int newId = nextMoveId++;
+            insertMove.setInt(1, newId);
+            insertMove.setInt(2, order);
+            insertMove.setString(3, before.toFEN());
+            insertMove.setString(4, after.toFEN());
+            insertMove.setInt(5, nextLineId);
+            insertMove.setLong(6, node.beforeKey);
+            insertMove.setLong(7, node.afterKey);
+            if (parent != 0) {
+                insertMove.setInt(8, parent);
+            } else {
+                insertMove.setNull(8, Types.INTEGER);
+            }
+            insertMove.addBatch();
+            pending.put(node, newId);
+            createdCount = createdCount + 1;
+            if (pending.size() >= BATCH_SIZE) { this.flush(); }
+            return newId;
+        }
+
+        private Integer find(Node node) throws SQLException {
+            Integer id = pending.get(node);
+            if (id == null) { id = cache.get(node); }
+            if (id != null) { return id; }
+
+            if (node.parent != 0) {
+                findChild.setInt(1, node.parent);
+            } else {
+                findChild.setNull(1, Types.INTEGER);
+            }
+            findChild.setLong(2, node.afterKey);
+            findChild.setLong(3, node.beforeKey);
+            ResultSet rs = findChild.executeQuery();
+            id = rs.next() ? rs.getInt(1) : null;
+            rs.close();
+            return id;
+        }
+
+        // True if the last call to child created a new node.
+        private boolean wasCreated() { return created; }
+
+        // True if a line already ends at the given node.
+        private boolean hasLine(int leaf) throws SQLException {
+            if (pendingLines > 0) { this.flush(); }
+            findLine.setInt(1, leaf);
+            ResultSet rs = findLine.executeQuery();
+            boolean found = rs.next();
+            rs.close();
+            return found;
+        }
+
+        // Adds a line. New nodes created for this line were already given its ID as their LINES_ID.
+        private void addLine(String name, String line, String eco, int leaf) throws SQLException {
+            insertLine.setInt(1, nextLineId++);
+            insertLine.setString(2, name);
+            insertLine.setString(3, line);
+            insertLine.setString(4, eco != null ? eco : "");
+            insertLine.setInt(5, leaf);
+            insertLine.addBatch();
+            pendingLines = pendingLines + 1;
+        }
+
+        // Sends the pending rows to the database. Pending nodes move to the cache, as the database can now find them.
+        private void flush() throws SQLException {
+            insertMove.executeBatch();
+            insertLine.executeBatch();
+            cache.putAll(pending);
+            pending.clear();
+            pendingLines = 0;
+        }
+
+        private long getCreated() { return createdCount; }
+        private long getShared() { return sharedCount; }
+
+        private void close() throws SQLException {
+            insertMove.close();
+            insertLine.close();
+            findChild.close();
+            findLine.close();
+        }
+
+        private static int maxId(String table) throws SQLException {
+            Statement stmt = Main.conn.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT MAX(ID) FROM " + table);
+            int max = rs.next() ? rs.getInt(1) : 0;
+            stmt.close();
+            return max;
+        }
+    }
+
+    /**
+     * Identifies a node of the opening tree by its parent and the positions before and after its move. The position
+     * before the move only matters for the first move, as every other node's parent already fixes it, but it lets
+     * games that start from a FEN position share the tree safely.
+     */
+    private static final class Node {
+        private final int parent;
+        private final long beforeKey;
+        private final long afterKey;
+
+        private Node(int parent, long beforeKey, long afterKey) {
+            this.parent = parent;
+            this.beforeKey = beforeKey;
+            this.afterKey = afterKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Node)) { return false; }
+            Node other = (Node) o;
+            return parent == other.parent && beforeKey == other.beforeKey && afterKey == other.afterKey;
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(parent, beforeKey, afterKey); }
+    }
 }
@@ -1,10 +1,10 @@
-import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.sql.ResultSet;
+import java.util.List;
 
 /*
  * The ReviewEngine class provides two public methods that read and write respectively from the database. This is used
- * during review session to get new cards for the user to review and update cards based on the results.
+ * during review session to get new cards for the user to review and update cards based on the results. The cards due in
+ * the deck are loaded into a DueQueue when the engine is created, so getting the next card does not query the database.
  *
  * superMemoAlgo method in this class is an implementation of the SuperMemo2 algorithm, an open-source, free-to-use
  * algorithm developed by SuperMemo World. To learn more, please visit the following website:
@@ -17,71 +17,103 @@ public final class ReviewEngine {
     // object, as only one deck is reviewed at a time.
     private final int deckId;
 
+    // In-memory queue of the cards in this deck that are due for review. It is loaded once when the review session
+    // starts, so pulling the next card does not require a query.
+    private final DueQueue dueQueue;
+
+    // Background writer that batches the results of reviews. When this is null, every grade is written and committed
+    // immediately.
+    private final ReviewWriter writer;
+
     /**
      * Constructor for ReviewEngine.
      * @param newDeckId Primary key of the deck currently being reviewed
      * @throws ClassNotFoundException If the JDBC Class cannot be found, throw an exception.
      * @throws SQLException If a database operation cannot be performed, throw an exception.
      */
-    public ReviewEngine(int newDeckId) throws ClassNotFoundException, SQLException { deckId = newDeckId; }
+    public ReviewEngine(int newDeckId) throws ClassNotFoundException, SQLException {
+        this(newDeckId, System.currentTimeMillis(), false);
+    }
+
+    /**
+     * Constructor for ReviewEngine that can write the results of reviews in the background.
+     * @param newDeckId Primary key of the deck currently being reviewed
+     * @param writeBehind If true, grades are applied in memory immediately and written to the database in batches.
+     * @throws ClassNotFoundException If the JDBC Class cannot be found, throw an exception.
+     * @throws SQLException If a database operation cannot be performed, throw an exception.
+     */
+    public ReviewEngine(int newDeckId, boolean writeBehind) throws ClassNotFoundException, SQLException {
+        this(newDeckId, System.currentTimeMillis(), writeBehind);
+    }
 
     /**
-     * Gets the first card identified based on the given parameters.
+     * Constructor for ReviewEngine that allows the order of cards which are due at the same time to be reproduced.
+     * @param newDeckId Primary key of the deck currently being reviewed
+     * @param seed Seed used to shuffle cards which are due at the same time.
+     * @param writeBehind If true, grades are applied in memory immediately and written to the database in batches.
+     * @throws ClassNotFoundException If the JDBC Class cannot be found, throw an exception.
+     * @throws SQLException If a database operation cannot be performed, throw an exception.
+     */
+    public ReviewEngine(int newDeckId, long seed, boolean writeBehind) throws ClassNotFoundException, SQLException {
+        deckId = newDeckId;
+
+        // Load every card in the deck that is currently due. This is the only query needed to pick cards during the
+        // session.
+        dueQueue = new DueQueue(seed);
+        Metrics.Probe probe = Metrics.start(Metrics.Kind.REVIEW, "review.load");
+        dueQueue.load(deckId, System.currentTimeMillis());
+        probe.stop();
+
+        // Only start the background writer once the queue has loaded successfully.
+        writer = writeBehind ? new ReviewWriter() : null;
+    }
+
+    /**
+     * Gets the card that has been due for review the longest. Cards that became due at the same time are shuffled.
      * @return Returns a ReviewCard object, which contains data derived from a single row of the CARDS table.
      * @throws SQLException If a database operation cannot be performed, throw an exception.
      * @throws ClassNotFoundException If the JDBC Class cannot be found, throw an exception.
      */
     public ReviewCard getNextCard() throws SQLException, ClassNotFoundException {
-        // This query pulls a single card from the database. As we are interested in information about the LINE and
-        // MOVE associated with the CARD, we must join those tables. The query filters by the primary key DECKS_ID.
-
-        // The statement: (? - CARDS.LAST_REVIEW) > (CARDS.IR_INTERVAL * 86400000) filters cards based on IR_INTERVAL,
-        // which is the amount of time (in days) that we should wait before showing the card to the user again. To
-        // achieve this, we find the difference in milliseconds between the current moment in time and the last review,
-        // and compare it to the IR_INTERVAL (there are 86400000 milliseconds in one day).
-        String query = "SELECT CARDS.ID, CARDS.REP_NUMBER, CARDS.EASY_FACTOR, CARDS.IR_INTERVAL, " +
-                        "LINES.NAME, LINES.LINE, " +
-                        "MOVES.BEFORE_FEN, MOVES.AFTER_FEN, MOVES.ORDER_IN_LINE " +
-                        "FROM CARDS JOIN CARDS_TO_MOVES ON CARDS.ID = CARDS_TO_MOVES.CARDS_ID " +
-                        "JOIN MOVES ON CARDS_TO_MOVES.MOVES_ID = MOVES.ID " +
-                        "JOIN LINES ON MOVES.LINES_ID = LINES.ID " +
-                        "WHERE CARDS.DECKS_ID = ? " +
-                        "AND (? - CARDS.LAST_REVIEW) > (CARDS.IR_INTERVAL * 86400000) " +
-                        "ORDER BY RANDOM() " +
-                        "LIMIT 1 ";
-
-        // Get the current UNIX time-stamp on this machine.
-        long currentTime = System.currentTimeMillis();
+        return this.getNextCard(null);
+    }
 
-        // Create a parameterized query.
-        PreparedStatement preStmt = Main.conn.prepareStatement(query);
-        preStmt.setInt(1, deckId);
-        preStmt.setLong(2, currentTime);
-
-        // Execute the query.
-        ResultSet rs = preStmt.executeQuery();
-
-        // Get the following columns from the result set. Because we used LIMIT 1, we only need to perform this
-        // operation once.
-        int id = rs.getInt("ID");
-        String name = rs.getString("NAME");
-        String line = rs.getString("LINE");
-        String beforeFEN = rs.getString("BEFORE_FEN");
-        String afterFEN = rs.getString("AFTER_FEN");
-        int orderInLine = rs.getInt("ORDER_IN_LINE");
-        int repNum = rs.getInt("REP_NUMBER");
-        double interval = rs.getDouble("IR_INTERVAL");
-        double easFactor = rs.getDouble("EASY_FACTOR");
-
-        // Validate the different String values and return a new ReviewCard using the queried information.
-        if (name != null && line != null && beforeFEN != null && afterFEN != null) {
-            return new ReviewCard(id, name, beforeFEN, afterFEN, orderInLine, repNum, interval, easFactor);
-        } else {
-            // If a ReviewCard was not successfully generated, throw an exception.
-           throw new RuntimeException("ReviewCard could not be successfully generated");
+    /**
+     * Gets the card that has been due for review the longest, using its positions if they have already been parsed.
+     * @param pipeline The pipeline that prepared the next cards in the background, or null.
+     * @return Returns a ReviewCard object, which contains data derived from a single row of the CARDS table.
+     * @throws SQLException If a database operation cannot be performed, throw an exception.
+     * @throws ClassNotFoundException If the JDBC Class cannot be found, throw an exception.
+     */
+    ReviewCard getNextCard(ReviewPipeline pipeline) throws SQLException, ClassNotFoundException {
+        Metrics.Probe probe = Metrics.start(Metrics.Kind.REVIEW, "review.next");
+        // Cards are filtered based on IR_INTERVAL, which is the amount of time (in days) that we should wait before
+        // showing the card to the user again. The queue orders cards by LAST_REVIEW + IR_INTERVAL, so the card at the
+        // front is due if that moment has already passed.
+        DueQueue.Entry entry = dueQueue.peek(System.currentTimeMillis());
+
+        // If no card is due, throw an exception. The session is effectively over, so start writing any queued grades.
+        if (entry == null) {
+            if (writer != null) { writer.requestFlush(); }
+            throw new RuntimeException("ReviewCard could not be successfully generated");
         }
+
+        ReviewPipeline.Prepared prepared = pipeline == null ? null : pipeline.getPrepared(entry.getCardId());
+        ReviewCard card = new ReviewCard(entry.getCardId(), entry.getLineName(), entry.getBeforeFEN(),
+                entry.getAfterFEN(), entry.getOrderInLine(), entry.getRepNum(), entry.getInterval(),
+                entry.getEasFactor(), prepared);
+        probe.stop();
+        return card;
     }
 
+    /**
+     * Returns the cards that will be shown after the current one if no grade changes the order. The first card is the
+     * one getNextCard returns.
+     * @param count The most cards to return.
+     * @return Up to count cards that are due now, in the order they will be shown.
+     */
+    public List<DueQueue.Entry> getUpcoming(int count) { return dueQueue.peek(System.currentTimeMillis(), count); }
+
     /**
      *
      * @param grade This parameter is the self-rating assigned by the user.
@@ -90,47 +122,73 @@ public final class ReviewEngine {
      * @throws ClassNotFoundException If the JDBC Class cannot be found, throw an exception.
      */
     public void updateCard(int grade, int cardId) throws SQLException, ClassNotFoundException {
-        // Select the relevant card using the primary key.
-        String query = "SELECT REP_NUMBER, EASY_FACTOR, IR_INTERVAL FROM CARDS WHERE ID = ?";
-        PreparedStatement preStmt = Main.conn.prepareStatement(query);
-        preStmt.setInt(1, cardId);
+        Metrics.Probe probe = Metrics.start(Metrics.Kind.REVIEW, "review.grade");
+
+        // In write-behind mode the queue already holds the card's current parameters, so the SELECT can be skipped.
+        DueQueue.Entry entry = dueQueue.get(cardId);
+        if (writer != null && entry != null) {
+            double[] memoResult = ReviewEngine.superMemoAlgo(grade, entry.getRepNum(), entry.getEasFactor(),
+                    entry.getInterval());
+            long currentTime = System.currentTimeMillis();
 
-        // Execute a parameterized query.
-        ResultSet rs = preStmt.executeQuery();
+            // Apply the result in memory right away and let the writer persist it with the next batch.
+            this.reschedule(cardId, memoResult, currentTime);
+            writer.enqueue(cardId, memoResult, currentTime);
+            probe.stop();
+            return;
+        }
 
-        // Get the REP_NUMBER, IR_INTERVAL, and EASY_FACTOR. These are the inputs for the SuperMemo algorithm.
-        int repNum = rs.getInt("REP_NUMBER");
-        long interval = rs.getLong("IR_INTERVAL");
-        double easFactor = rs.getDouble("EASY_FACTOR");
+        // Get the REP_NUMBER, EASY_FACTOR, and IR_INTERVAL of the card. These are the inputs for the SuperMemo
+        // algorithm.
+        CardDao cardDao = new CardDao(Main.conn);
+        double[] params = cardDao.getReviewParams(cardId);
 
         // Call the method that implements the SuperMemo algorithm. Pass three parameters currently attached to the
         // card, along with the user-identified self-rating. The result is an array of doubles, the elements of which
         // are the new values for each of the three SuperMemo parameters.
-        double[] memoResult = this.superMemoAlgo(grade, repNum, easFactor, interval);
+        double[] memoResult = ReviewEngine.superMemoAlgo(grade, (int) params[0], params[1], params[2]);
 
         // Update the card with three new parameters and a new "LAST_REVIEW" timestamp reflecting the current time.
-        String query2 = "UPDATE CARDS " +
-                        "SET REP_NUMBER = ?, " +
-                        "EASY_FACTOR = ?, " +
-                        "IR_INTERVAL = ?, " +
-                        "LAST_REVIEW = ? " +
-                        "WHERE ID = ? ";
-
-        PreparedStatement preStmt2 = Main.conn.prepareStatement(query2);
-
-        // Get the current UNIX timestamp from the system.
         long currentTime = System.currentTimeMillis();
-        preStmt2.setDouble(1, memoResult[0]);
-        preStmt2.setDouble(2, memoResult[1]);
-        preStmt2.setDouble(3, memoResult[2]);
-        preStmt2.setLong(4, currentTime);
-        preStmt2.setInt(5, cardId);
-
-        // Execute the parameterized query.
-        preStmt2.executeUpdate();
+        cardDao.updateReview(cardId, memoResult[0], memoResult[1], memoResult[2], currentTime);
 
         // Commit the transaction.
         Main.conn.commit();
+
+        // Move the card to its new place in the due queue, so it is not shown again until it is due.
+        this.reschedule(cardId, memoResult, currentTime);
+        probe.stop();
+    }
+
+    /**
+     * Moves a reviewed card to its new place in the due queue and updates the deck counts kept by DeckStats.
+     * @param cardId Primary key of the card that was reviewed.
+     * @param memoResult The new REP_NUMBER, EASY_FACTOR, and IR_INTERVAL of the card.
+     * @param currentTime UNIX time-stamp of the review.
+     */
+    private void reschedule(int cardId, double[] memoResult, long currentTime) {
+        DueQueue.Entry entry = dueQueue.get(cardId);
+        if (entry == null) { return; }
+
+        long oldDueAt = entry.getDueAt();
+        int oldState = DeckStats.stateOf(entry.getRepNum(), entry.getInterval());
+        dueQueue.reschedule(cardId, (int) memoResult[0], memoResult[1], memoResult[2], currentTime);
+        DeckStats.cardReviewed(deckId, oldDueAt, oldState, entry.getDueAt(),
+                DeckStats.stateOf(entry.getRepNum(), entry.getInterval()));
+    }
+
+    /**
+     * @return The number of grades given during this session that have not yet been committed to the database.
+     */
+    public int getPendingWrites() { return writer == null ? 0 : writer.getPendingCount(); }
+
+    /**
+     * Ends the review session, writing any grades that are still queued. This should be called when the user leaves
+     * the review menu.
+     * @throws SQLException If a database operation cannot be performed, throw an exception.
+     */
+    public void endSession() throws SQLException {
+        if (writer != null) { writer.close(); }
     }
 
     /**
@@ -143,7 +201,7 @@ public final class ReviewEngine {
      * @param interval Inter-Repetition Interval: the number of days to wait before the next review.
      * @return Returns a double array with three values: repNum, easFactor, and interval.
      */
-    private double[] superMemoAlgo(int grade, int repNum, double easFactor, double interval) {
+    static double[] superMemoAlgo(int grade, int repNum, double easFactor, double interval) {
         if (grade >= 3) {
             // If this conditional is triggered, the user gave a positive grade (3, 4, or 5).
             if (repNum == 0) {
@@ -191,6 +249,13 @@ public final class ReviewEngine {
         // Position of the board after the move is made, represented in standard FEN chess notation.
         private final String afterFEN;
 
+        // The same two positions, parsed into Position objects.
+        private final Position beforePosition;
+        private final Position afterPosition;
+
+        // The positions parsed and drawn ahead of time by a ReviewPipeline, or null.
+        private final ReviewPipeline.Prepared prepared;
+
         // The sequence of the move in the line. The sequence starts with 1, which is the first move made by white
         // in the sequence of chess moves.
         private final int orderInLine;
@@ -200,13 +265,16 @@ public final class ReviewEngine {
         private final double interval;
 
         // Constructor for ReviewCard with parameters representing the different fields we need to display the card
-        // to the user.
+        // to the user. The positions are parsed here unless they were prepared already.
         ReviewCard(int newId, String newName, String newBeforeFEN, String newAfterFEN,
-                   int newOrderInLine, int rep, double eas, double inter) {
+                   int newOrderInLine, int rep, double eas, double inter, ReviewPipeline.Prepared newPrepared) {
             id = newId;
             lineName = newName;
             beforeFEN = newBeforeFEN;
             afterFEN = newAfterFEN;
+            prepared = newPrepared;
+            beforePosition = prepared != null ? prepared.getBeforePosition() : Position.fromFEN(newBeforeFEN);
+            afterPosition = prepared != null ? prepared.getAfterPosition() : Position.fromFEN(newAfterFEN);
             orderInLine = newOrderInLine;
             repNum = rep;
             easFactor = eas;
@@ -218,6 +286,9 @@ public final class ReviewEngine {
         public String getLineName() { return lineName; }
         public String getBeforeFEN() { return beforeFEN; }
         public String getAfterFEN() { return afterFEN; }
+        public Position getBeforePosition() { return beforePosition; }
+        public Position getAfterPosition() { return afterPosition; }
+        public ReviewPipeline.Prepared getPrepared() { return prepared; }
         public int getOrderInLine() {return orderInLine;}
 
         // Getter that calculates the time before review for each of the different user options.
@@ -0,0 +1,159 @@
+import java.awt.image.BufferedImage;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class prepares the next few cards of a review session in the background while the user is looking at the
+ * current one. For each card it parses the positions before and after the move, and draws both onto board images with
+ * ChessBoardComponent.render. When the user grades a card, the next card's positions and images are usually ready, so
+ * showing it only swaps them in.
+ *
+ * The cards are taken from the front of the ReviewEngine's due queue. Every grade makes a card due at least a day
+ * later, so grading only moves the current card out of the way, and the cards prepared are the ones shown next. A card
+ * that was not prepared in time is parsed and drawn as usual. The pipeline must only be used on the Event Dispatch
+ * Thread.
+ */
+public final class ReviewPipeline {
+    // Number of cards after the current one that are prepared. The user takes a few seconds per card, and preparing one
+    // takes well under a millisecond, so a handful is plenty.
+    public static final int DEFAULT_DEPTH = 5;
+
+    /**
+     * The positions of one card, parsed and drawn ahead of time. Objects of this class are not changed once prepared.
+     */
+    public static final class Prepared {
+        private final Position beforePosition;
+        private final Position afterPosition;
+
+        // True if white makes the move, in which case both images show the board from white's side.
+        private final boolean whiteToMove;
+
+        // Both positions drawn at the given square size.
+        private final BufferedImage beforeImage;
+        private final BufferedImage afterImage;
+        private final int squareSize;
+
+        private Prepared(String beforeFEN, String afterFEN, int size) throws NoSuchFieldException {
+            beforePosition = Position.fromFEN(beforeFEN);
+            afterPosition = Position.fromFEN(afterFEN);
+            whiteToMove = beforePosition.getSideToMove() == Position.WHITE;
+            beforeImage = ChessBoardComponent.render(beforePosition, whiteToMove, size);
+            afterImage = ChessBoardComponent.render(afterPosition, whiteToMove, size);
+            squareSize = size;
+        }
+
+        // Getters for the instance variables in this object.
+        public Position getBeforePosition() { return beforePosition; }
+        public Position getAfterPosition() { return afterPosition; }
+        public boolean isWhiteToMove() { return whiteToMove; }
+        public BufferedImage getBeforeImage() { return beforeImage; }
+        public BufferedImage getAfterImage() { return afterImage; }
+        public int getSquareSize() { return squareSize; }
+    }
+
+    private final ReviewEngine engine;
+    private final int depth;
+
+    // Single background thread that prepares the cards, one at a time, in the order they will be shown.
+    private final ExecutorService worker;
+
+    // The cards that are being prepared or are ready, by card ID.
+    private final Map<Integer, CompletableFuture<Prepared>> cards = new HashMap<>();
+
+    /**
+     * Constructor for ReviewPipeline, which prepares DEFAULT_DEPTH cards ahead.
+     * @param newEngine The engine of the review session.
+     */
+    public ReviewPipeline(ReviewEngine newEngine) { this(newEngine, DEFAULT_DEPTH); }
+
+    /**
+     * Constructor for ReviewPipeline.
+     * @param newEngine The engine of the review session.
+     * @param newDepth Number of cards after the current one to prepare.
+     */
+    public ReviewPipeline(ReviewEngine newEngine, int newDepth) {
+        if (newDepth < 1) { throw new IllegalArgumentException("The pipeline must prepare at least one card!"); }
+        engine = newEngine;
+        depth = newDepth;
+
+        // Use a daemon thread so the pipeline never keeps the program alive on its own.
+        worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "review-prefetch");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Gets the next card to review, with its positions and board images if they have been prepared.
+     * @return The card that has been due for review the longest.
+     * @throws SQLException If a database operation cannot be performed, throw an exception.
+     * @throws ClassNotFoundException If the JDBC Class cannot be found, throw an exception.
+     */
+    public ReviewEngine.ReviewCard next() throws SQLException, ClassNotFoundException {
+        return engine.getNextCard(this);
+    }
+
+    /**
+     * Starts preparing the cards that come after the one being shown, and forgets any that are no longer coming up.
+     * Call this once the current card is on the screen.
+     * @param squareSize Side length of one square of the board in pixels, which the images are drawn at.
+     */
+    public void prefetch(int squareSize) {
+        Set<Integer> upcoming = new HashSet<>();
+        for (DueQueue.Entry entry : engine.getUpcoming(depth + 1)) {
+            int cardId = entry.getCardId();
+            upcoming.add(cardId);
+
+            // Cards drawn before the board was resized are drawn again.
+            Prepared ready = this.getPrepared(cardId);
+            if (cards.containsKey(cardId) && (ready == null || ready.getSquareSize() == squareSize)) { continue; }
+
+            String beforeFEN = entry.getBeforeFEN();
+            String afterFEN = entry.getAfterFEN();
+            cards.put(cardId, CompletableFuture.supplyAsync(() -> {
+                try {
+                    return new Prepared(beforeFEN, afterFEN, squareSize);
+                } catch (NoSuchFieldException ex) {
+                    throw new IllegalStateException(ex.getMessage(), ex);
+                }
+            }, worker));
+        }
+
+        // Drop the cards that have been reviewed, or that a grade pushed out of the next few.
+        Iterator<Map.Entry<Integer, CompletableFuture<Prepared>>> it = cards.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, CompletableFuture<Prepared>> entry = it.next();
+            if (!upcoming.contains(entry.getKey())) {
+                entry.getValue().cancel(false);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @param cardId Primary key of a card.
+     * @return The card's prepared positions and images, or null if they are not ready. This never waits.
+     */
+    public Prepared getPrepared(int cardId) {
+        CompletableFuture<Prepared> future = cards.get(cardId);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) { return null; }
+        return future.join();
+    }
+
+    /**
+     * Stops preparing cards. This should be called when the review session ends.
+     */
+    public void close() {
+        for (CompletableFuture<Prepared> future : cards.values()) { future.cancel(false); }
+        cards.clear();
+        worker.shutdown();
+    }
+}
@@ -0,0 +1,212 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class queues the results of reviews and writes them to the CARDS table in the background. Instead of committing
+ * once per grade, the queued updates are written in a single transaction whenever enough grades have been collected or
+ * enough time has passed, whichever comes first. Any grades still waiting are written when the writer is closed or when
+ * the JVM shuts down.
+ *
+ * The updates themselves are run on the database thread, through Database.call, like all other database work.
+ */
+public final class ReviewWriter {
+    // Number of queued grades that triggers an immediate flush.
+    public static final int DEFAULT_BATCH_SIZE = 25;
+
+    // Maximum time, in milliseconds, that a grade waits in the queue before it is written.
+    public static final long DEFAULT_FLUSH_MILLIS = 5000;
+
+    private final int batchSize;
+
+    // Grades that have been queued but not yet handed to a flush. Guarded by this object's lock.
+    private List<PendingGrade> pending = new ArrayList<>();
+
+    // Number of grades that are currently being written by a flush but have not been committed yet.
+    private int inFlight = 0;
+
+    // Single background thread that runs the timed and size-triggered flushes.
+    private final ScheduledExecutorService scheduler;
+
+    // Thread registered with the JVM to flush any remaining grades on shutdown.
+    private final Thread shutdownHook;
+
+    private boolean closed = false;
+
+    /**
+     * Constructor for ReviewWriter using the default batch size and flush interval.
+     */
+    public ReviewWriter() { this(DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_MILLIS); }
+
+    /**
+     * Constructor for ReviewWriter.
+     * @param newBatchSize Number of queued grades that triggers a flush.
+     * @param flushMillis Maximum time in milliseconds between flushes while grades are waiting.
+     */
+    public ReviewWriter(int newBatchSize, long flushMillis) {
+        if (newBatchSize < 1 || flushMillis < 1) {
+            throw new IllegalArgumentException("Batch size and flush interval must be positive!");
+        }
+        batchSize = newBatchSize;
+
+        // Use a daemon thread so the writer never keeps the program alive on its own.
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "review-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+
+        // Write anything left in the queue if the program exits while a session is still open.
+        shutdownHook = new Thread(this::flushQuietly, "review-writer-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Queues the result of one review. The update is written by a later flush.
+     * @param cardId Primary key of the card that was reviewed.
+     * @param memoResult The new REP_NUMBER, EASY_FACTOR, and IR_INTERVAL of the card, in that order.
+     * @param lastReview UNIX time-stamp of the review.
+     */
+    public void enqueue(int cardId, double[] memoResult, long lastReview) {
+        boolean full;
+        synchronized (this) {
+            if (closed) { throw new IllegalStateException("Can't queue a grade on a closed ReviewWriter!"); }
+            pending.add(new PendingGrade(cardId, memoResult[0], memoResult[1], memoResult[2], lastReview));
+            full = pending.size() >= batchSize;
+        }
+
+        // If the batch is full, write it on the background thread rather than on the caller's thread.
+        if (full) { scheduler.execute(this::flushQuietly); }
+    }
+
+    /**
+     * Writes every queued grade to the database in a single transaction. This can be called on any thread other than
+     * the Event Dispatch Thread, including the database thread itself.
+     * @throws SQLException If a database operation cannot be performed, throw an exception. The grades that could not
+     * be written are put back at the front of the queue.
+     */
+    public void flush() throws SQLException {
+        Metrics.Probe probe = Metrics.start(Metrics.Kind.REVIEW, "review.flush");
+        Database.call(() -> {
+            this.flushBatch();
+            return null;
+        });
+        probe.stop();
+    }
+
+    // Takes the queued grades and writes them. This runs on the database thread, which runs one task at a time, so
+    // flushes never overlap and batches are written in the order they were taken from the queue. No lock is held while
+    // waiting for the database thread, as a flush may be waited on by a task running there.
+    private void flushBatch() throws SQLException {
+        List<PendingGrade> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) { return; }
+            batch = pending;
+            pending = new ArrayList<>();
+            inFlight = batch.size();
+        }
+
+        try {
+            ReviewWriter.write(batch);
+        } catch (SQLException ex) {
+            // Put the grades back in front of anything queued in the meantime.
+            synchronized (this) {
+                batch.addAll(pending);
+                pending = batch;
+            }
+            throw ex;
+        } finally {
+            synchronized (this) { inFlight = 0; }
+        }
+    }
+
+    /**
+     * Writes a batch of grades in a single transaction. This runs on the database thread.
+     * @param batch The grades to write.
+     * @throws SQLException If a database operation cannot be performed, throw an exception. The partial batch is rolled
+     * back.
+     */
+    private static void write(List<PendingGrade> batch) throws SQLException {
+        try {
+            // Run one update per grade, in the order the grades were given, so the last grade for a card wins.
+            CardDao cardDao = new CardDao(Main.conn);
+            for (PendingGrade grade : batch) {
+                cardDao.updateReview(grade.cardId, grade.repNum, grade.easFactor, grade.interval, grade.lastReview);
+            }
+
+            // Commit the updates as one transaction.
+            Main.conn.commit();
+        } catch (SQLException ex) {
+            // Undo the partial batch.
+            Main.conn.rollback();
+            throw ex;
+        }
+    }
+
+    /**
+     * Asks the background thread to write every queued grade now, without waiting for it. Does nothing once the writer
+     * is closed.
+     */
+    public synchronized void requestFlush() {
+        if (!closed) { scheduler.execute(this::flushQuietly); }
+    }
+
+    /**
+     * @return The number of grades that have been given but not yet committed to the database.
+     */
+    public synchronized int getPendingCount() { return pending.size() + inFlight; }
+
+    /**
+     * Writes any remaining grades and stops the background thread. The writer cannot be used after it is closed.
+     * @throws SQLException If a database operation cannot be performed, throw an exception.
+     */
+    public void close() throws SQLException {
+        synchronized (this) {
+            if (closed) { return; }
+            closed = true;
+        }
+        scheduler.shutdown();
+
+        // The shutdown hook is only removed once the queue has been written, so grades that could not be written now
+        // are tried again when the program exits.
+        this.flush();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ex) {
+            // The JVM is already shutting down, in which case the hook flushes the queue itself.
+        }
+    }
+
+    // Flush used by the background thread and the shutdown hook, where there is no caller to pass an exception to.
+    private void flushQuietly() {
+        try {
+            this.flush();
+        } catch (SQLException ex) {
+            System.out.println("ReviewWriter encountered an error");
+            System.out.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * The new SuperMemo2 parameters of one card, waiting to be written to the CARDS table.
+     */
+    private static final class PendingGrade {
+        private final int cardId;
+        private final double repNum;
+        private final double easFactor;
+        private final double interval;
+        private final long lastReview;
+
+        PendingGrade(int newCardId, double rep, double eas, double inter, long newLastReview) {
+            cardId = newCardId;
+            repNum = rep;
+            easFactor = eas;
+            interval = inter;
+            lastReview = newLastReview;
+        }
+    }
+}
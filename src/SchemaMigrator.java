@@ -0,0 +1,408 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * This class brings the database schema up to date when the program starts. The schema version is stored in SQLite's
+ * user_version header field. Each migration has a number, and every migration with a number higher than the stored
+ * version is applied in order, in its own transaction, together with the update to user_version.
+ *
+ * Migrations only ever add tables, columns, views, indexes, and triggers, or rebuild a table to change its constraints.
+ * They never drop user data: rows that a rebuilt table can no longer hold are moved to a side table instead. Each
+ * migration can safely run against a database where part of it already exists.
+ */
+public final class SchemaMigrator {
+    /**
+     * A single numbered change to the schema.
+     */
+    private interface Migration {
+        void apply(Statement stmt) throws SQLException;
+    }
+
+    // The migrations, in order. The migration at index i brings the schema to version i + 1. New migrations must only
+    // ever be appended to this array.
+    private static final Migration[] MIGRATIONS = {
+            SchemaMigrator::createBaseTables,
+            SchemaMigrator::createJoinIndexes,
+            SchemaMigrator::addDueAt,
+            SchemaMigrator::addPositionKeys,
+            SchemaMigrator::addOpeningTree,
+            SchemaMigrator::addLineSearch,
+            SchemaMigrator::addCardInsertView,
+            SchemaMigrator::addCascadingDeletes,
+            SchemaMigrator::addCardPageIndex
+    };
+
+    private SchemaMigrator() {}
+
+    /**
+     * Applies every migration that has not yet been applied to the database behind the given connection.
+     * @param conn Connection to the database. Auto commit must be turned off.
+     * @throws SQLException If a migration cannot be applied, throw an exception. Migrations applied before the failing
+     * one remain committed.
+     */
+    public static void migrate(Connection conn) throws SQLException {
+        Statement stmt = conn.createStatement();
+        int version = SchemaMigrator.getVersion(stmt);
+
+        for (int i = version; i < MIGRATIONS.length; i++) {
+            try {
+                // Apply the migration and record the new version in the same transaction, so a crash can never leave
+                // a migration half-applied or applied without being recorded.
+                MIGRATIONS[i].apply(stmt);
+                stmt.execute("PRAGMA user_version = " + (i + 1));
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw new SQLException("Schema migration " + (i + 1) + " failed: " + ex.getMessage(), ex);
+            }
+        }
+        stmt.close();
+    }
+
+    /**
+     * @return The schema version this build of the program expects.
+     */
+    public static int getLatestVersion() { return MIGRATIONS.length; }
+
+    /**
+     * Reads the schema version stored in the database.
+     * @param stmt Statement used to run the query.
+     * @return The value of user_version, which is 0 for a database that has never been migrated.
+     * @throws SQLException If the query cannot be executed, throw an exception.
+     */
+    private static int getVersion(Statement stmt) throws SQLException {
+        ResultSet rs = stmt.executeQuery("PRAGMA user_version");
+        int version = rs.next() ? rs.getInt(1) : 0;
+        rs.close();
+        return version;
+    }
+
+    /**
+     * Checks whether a table already has a given column. SQLite has no ADD COLUMN IF NOT EXISTS, so this check makes
+     * column migrations idempotent.
+     * @param stmt Statement used to run the query.
+     * @param table Name of the table.
+     * @param column Name of the column.
+     * @return True if the column exists.
+     * @throws SQLException If the query cannot be executed, throw an exception.
+     */
+    private static boolean hasColumn(Statement stmt, String table, String column) throws SQLException {
+        ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")");
+        boolean found = false;
+        while (rs.next()) {
+            if (rs.getString("name").equalsIgnoreCase(column)) { found = true; }
+        }
+        rs.close();
+        return found;
+    }
+
+    /**
+     * Migration 1: the original tables. These definitions match the ones previously created by InitDB.makeTables, but
+     * existing tables are left untouched instead of being dropped.
+     */
+    private static void createBaseTables(Statement stmt) throws SQLException {
+        // DECKS holds the user-created decks.
+        stmt.execute("CREATE TABLE IF NOT EXISTS DECKS(" +
+                        "ID INTEGER PRIMARY KEY," +
+                        "NAME TEXT)");
+
+        // REP_NUMBER, EASY_FACTOR, IR_INTERVAL, and LAST_REVIEW each refer to a parameter in the SuperMemo2 algorithm.
+        stmt.execute("CREATE TABLE IF NOT EXISTS CARDS(" +
+                        "ID INTEGER PRIMARY KEY," +
+                        "REP_NUMBER REAL," +
+                        "EASY_FACTOR REAL," +
+                        "IR_INTERVAL REAL," +
+                        "LAST_REVIEW REAL," +
+                        "DECKS_ID TEXT," +
+                        "FOREIGN KEY (DECKS_ID) REFERENCES DECKS(ID))");
+
+        // CARDS_TO_MOVES specifies the relationships between CARDS and MOVES.
+        stmt.execute("CREATE TABLE IF NOT EXISTS CARDS_TO_MOVES(" +
+                        "CARDS_ID INTEGER," +
+                        "MOVES_ID INTEGER," +
+                        "FOREIGN KEY (CARDS_ID) REFERENCES CARDS(ID)," +
+                        "FOREIGN KEY (MOVES_ID) REFERENCES MOVES(ID))");
+
+        // LINES holds the opening lines, written in Standard Algebraic Notation, with their ECO codes.
+        stmt.execute("CREATE TABLE IF NOT EXISTS LINES(" +
+                        "ID INTEGER PRIMARY KEY," +
+                        "NAME TEXT," +
+                        "LINE TEXT," +
+                        "ECO TEXT)");
+
+        // MOVES holds each move of each line, with the positions before and after the move in FEN notation.
+        stmt.execute("CREATE TABLE IF NOT EXISTS MOVES(" +
+                        "ID INTEGER PRIMARY KEY," +
+                        "ORDER_IN_LINE INTEGER," +
+                        "BEFORE_FEN TEXT," +
+                        "AFTER_FEN TEXT," +
+                        "LINES_ID INTEGER," +
+                        "FOREIGN KEY (LINES_ID) REFERENCES LINES(ID))");
+    }
+
+    /**
+     * Migration 2: indexes for the joins between CARDS, CARDS_TO_MOVES, MOVES, and LINES, and for the duplicate check
+     * on BEFORE_FEN. Each index on CARDS_TO_MOVES contains both columns, so the join can be answered from the index
+     * alone in either direction.
+     */
+    private static void createJoinIndexes(Statement stmt) throws SQLException {
+        stmt.execute("CREATE INDEX IF NOT EXISTS CARDS_TO_MOVES_CARDS_IDX ON CARDS_TO_MOVES(CARDS_ID, MOVES_ID)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS CARDS_TO_MOVES_MOVES_IDX ON CARDS_TO_MOVES(MOVES_ID, CARDS_ID)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS MOVES_LINES_IDX ON MOVES(LINES_ID, ORDER_IN_LINE)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS MOVES_BEFORE_FEN_IDX ON MOVES(BEFORE_FEN)");
+    }
+
+    /**
+     * Migration 3: a stored DUE_AT column on CARDS, holding the UNIX time-stamp in milliseconds at which the card is
+     * due (LAST_REVIEW plus IR_INTERVAL days). Triggers keep it up to date whenever a card is inserted or its review
+     * parameters change, and the index on (DECKS_ID, DUE_AT) answers "which cards in this deck are due" directly.
+     */
+    private static void addDueAt(Statement stmt) throws SQLException {
+        if (!SchemaMigrator.hasColumn(stmt, "CARDS", "DUE_AT")) {
+            stmt.execute("ALTER TABLE CARDS ADD COLUMN DUE_AT INTEGER");
+        }
+
+        // Fill in the column for existing cards.
+        stmt.execute("UPDATE CARDS SET DUE_AT = CAST(LAST_REVIEW + IR_INTERVAL * 86400000 AS INTEGER)");
+
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS CARDS_DUE_AT_INSERT AFTER INSERT ON CARDS " +
+                        "BEGIN " +
+                        "UPDATE CARDS SET DUE_AT = CAST(NEW.LAST_REVIEW + NEW.IR_INTERVAL * 86400000 AS INTEGER) " +
+                        "WHERE ID = NEW.ID; " +
+                        "END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS CARDS_DUE_AT_UPDATE AFTER UPDATE OF LAST_REVIEW, IR_INTERVAL " +
+                        "ON CARDS " +
+                        "BEGIN " +
+                        "UPDATE CARDS SET DUE_AT = CAST(NEW.LAST_REVIEW + NEW.IR_INTERVAL * 86400000 AS INTEGER) " +
+                        "WHERE ID = NEW.ID; " +
+                        "END");
+
+        // The deck comes first, as every due query filters by deck.
+        stmt.execute("CREATE INDEX IF NOT EXISTS CARDS_DECKS_DUE_IDX ON CARDS(DECKS_ID, DUE_AT)");
+    }
+
+    /**
+     * Migration 4: BEFORE_KEY and AFTER_KEY columns on MOVES, holding the Zobrist keys of the positions before and
+     * after each move. Duplicate positions are found by comparing keys instead of FEN strings, which ignores the move
+     * clocks and catches transpositions. SQLite cannot compute the keys, so existing rows are filled in here.
+     */
+    private static void addPositionKeys(Statement stmt) throws SQLException {
+        if (!SchemaMigrator.hasColumn(stmt, "MOVES", "BEFORE_KEY")) {
+            stmt.execute("ALTER TABLE MOVES ADD COLUMN BEFORE_KEY INTEGER");
+        }
+        if (!SchemaMigrator.hasColumn(stmt, "MOVES", "AFTER_KEY")) {
+            stmt.execute("ALTER TABLE MOVES ADD COLUMN AFTER_KEY INTEGER");
+        }
+
+        PreparedStatement update = stmt.getConnection().prepareStatement(
+                "UPDATE MOVES SET BEFORE_KEY = ?, AFTER_KEY = ? WHERE ID = ?");
+        ResultSet rs = stmt.executeQuery("SELECT ID, BEFORE_FEN, AFTER_FEN FROM MOVES WHERE BEFORE_KEY IS NULL " +
+                "OR AFTER_KEY IS NULL");
+        Position scratch = new Position();
+        while (rs.next()) {
+            // A row with a missing or malformed FEN string keeps NULL keys, and is never treated as a duplicate.
+            String beforeFEN = rs.getString("BEFORE_FEN");
+            String afterFEN = rs.getString("AFTER_FEN");
+            if (beforeFEN == null || afterFEN == null) { continue; }
+            try {
+                update.setLong(1, Zobrist.key(beforeFEN, scratch));
+                update.setLong(2, Zobrist.key(afterFEN, scratch));
+            } catch (IllegalArgumentException ex) {
+                continue;
+            }
+            update.setInt(3, rs.getInt("ID"));
+            update.addBatch();
+        }
+        rs.close();
+        update.executeBatch();
+        update.close();
+
+        stmt.execute("CREATE INDEX IF NOT EXISTS MOVES_BEFORE_KEY_IDX ON MOVES(BEFORE_KEY)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS MOVES_AFTER_KEY_IDX ON MOVES(AFTER_KEY)");
+    }
+
+    /**
+     * Migration 5: the opening tree. MOVES.PARENT_ID points to the move played before each move, so lines that share
+     * their first moves can share the same MOVES rows, and LINES.LEAF_MOVES_ID points to the last move of each line.
+     * The moves of a line are found by following PARENT_ID back from its leaf. Existing lines are linked up as separate
+     * chains, so cards made from them keep their moves.
+     */
+    private static void addOpeningTree(Statement stmt) throws SQLException {
+        if (!SchemaMigrator.hasColumn(stmt, "MOVES", "PARENT_ID")) {
+            stmt.execute("ALTER TABLE MOVES ADD COLUMN PARENT_ID INTEGER REFERENCES MOVES(ID)");
+        }
+        if (!SchemaMigrator.hasColumn(stmt, "LINES", "LEAF_MOVES_ID")) {
+            stmt.execute("ALTER TABLE LINES ADD COLUMN LEAF_MOVES_ID INTEGER REFERENCES MOVES(ID)");
+        }
+        SchemaMigrator.linkLines(stmt);
+
+        // A node's children are looked up by their position, so the importer can tell whether a move already exists.
+        stmt.execute("CREATE INDEX IF NOT EXISTS MOVES_PARENT_IDX ON MOVES(PARENT_ID, AFTER_KEY)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS LINES_LEAF_IDX ON LINES(LEAF_MOVES_ID)");
+    }
+
+    /**
+     * Migration 6: LINES_FTS, an FTS5 full-text index over the name, ECO code, and moves of each line, used by
+     * LineSearch. It is an external content table, so the text is not stored twice, and triggers on LINES keep it in
+     * step with every insert, update, and delete. Prefix indexes for two and three characters make the as-you-type
+     * searches on short words fast.
+     */
+    private static void addLineSearch(Statement stmt) throws SQLException {
+        stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS LINES_FTS USING fts5(" +
+                        "NAME, ECO, LINE, " +
+                        "content='LINES', content_rowid='ID', " +
+                        "tokenize='unicode61 remove_diacritics 2', prefix='2 3')");
+
+        // An external content index is updated by inserting the old values with the special 'delete' command, and
+        // then the new ones.
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS LINES_FTS_INSERT AFTER INSERT ON LINES " +
+                        "BEGIN " +
+                        "INSERT INTO LINES_FTS(rowid, NAME, ECO, LINE) VALUES (NEW.ID, NEW.NAME, NEW.ECO, NEW.LINE); " +
+                        "END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS LINES_FTS_DELETE AFTER DELETE ON LINES " +
+                        "BEGIN " +
+                        "INSERT INTO LINES_FTS(LINES_FTS, rowid, NAME, ECO, LINE) " +
+                        "VALUES ('delete', OLD.ID, OLD.NAME, OLD.ECO, OLD.LINE); " +
+                        "END");
+        // Only changes to the indexed columns touch the index, so linking lines into the opening tree does not.
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS LINES_FTS_UPDATE AFTER UPDATE OF NAME, ECO, LINE ON LINES " +
+                        "BEGIN " +
+                        "INSERT INTO LINES_FTS(LINES_FTS, rowid, NAME, ECO, LINE) " +
+                        "VALUES ('delete', OLD.ID, OLD.NAME, OLD.ECO, OLD.LINE); " +
+                        "INSERT INTO LINES_FTS(rowid, NAME, ECO, LINE) VALUES (NEW.ID, NEW.NAME, NEW.ECO, NEW.LINE); " +
+                        "END");
+
+        // Index the lines that already exist.
+        stmt.execute("INSERT INTO LINES_FTS(LINES_FTS) VALUES ('rebuild')");
+    }
+
+    /**
+     * Migration 7: NEW_CARDS, a view of each card with the move it was made from, which cards are created through.
+     * Inserting a row into the view runs a trigger that inserts the card and then its CARDS_TO_MOVES link, using the
+     * ID SQLite has just assigned to the card. A whole batch of cards can then be created without the program having
+     * to read the new IDs back or guess them.
+     */
+    private static void addCardInsertView(Statement stmt) throws SQLException {
+        stmt.execute("CREATE VIEW IF NOT EXISTS NEW_CARDS AS " +
+                        "SELECT CARDS.DECKS_ID, CARDS_TO_MOVES.MOVES_ID, CARDS.LAST_REVIEW " +
+                        "FROM CARDS JOIN CARDS_TO_MOVES ON CARDS.ID = CARDS_TO_MOVES.CARDS_ID");
+
+        // Inside a trigger, last_insert_rowid() is the ID of the row the trigger itself last inserted. REP_NUMBER,
+        // EASY_FACTOR, and IR_INTERVAL start at the SuperMemo2 defaults of 0, 2.5, and 0.
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS NEW_CARDS_INSERT INSTEAD OF INSERT ON NEW_CARDS " +
+                        "BEGIN " +
+                        "INSERT INTO CARDS(ID, DECKS_ID, REP_NUMBER, EASY_FACTOR, IR_INTERVAL, LAST_REVIEW) " +
+                        "VALUES (NULL, NEW.DECKS_ID, 0, 2.5, 0, NEW.LAST_REVIEW); " +
+                        "INSERT INTO CARDS_TO_MOVES(CARDS_ID, MOVES_ID) VALUES (last_insert_rowid(), NEW.MOVES_ID); " +
+                        "END");
+    }
+
+    /**
+     * Migration 8: ON DELETE CASCADE foreign keys from CARDS to DECKS and from CARDS_TO_MOVES to CARDS, so deleting a
+     * deck or a card is one DELETE and can never leave rows behind. SQLite cannot change a table's constraints, so both
+     * tables are rebuilt and renamed into place, and their view, triggers, and indexes are created again. DECKS_ID
+     * becomes an INTEGER, as the keys it refers to are. Cards whose deck is gone, links whose card or move is gone, and
+     * cards without a move are left behind by the old deletes. The new foreign keys cannot hold them, so they are moved
+     * to CARDS_ORPHANED and CARDS_TO_MOVES_ORPHANED, which nothing else reads, and the number moved is printed.
+     */
+    private static void addCascadingDeletes(Statement stmt) throws SQLException {
+        // The view refers to both tables, and renaming a table checks every view in the schema.
+        stmt.execute("DROP VIEW IF EXISTS NEW_CARDS");
+        stmt.execute("DROP TABLE IF EXISTS CARDS_NEW");
+        stmt.execute("DROP TABLE IF EXISTS CARDS_TO_MOVES_NEW");
+
+        stmt.execute("CREATE TABLE CARDS_NEW(" +
+                        "ID INTEGER PRIMARY KEY," +
+                        "REP_NUMBER REAL," +
+                        "EASY_FACTOR REAL," +
+                        "IR_INTERVAL REAL," +
+                        "LAST_REVIEW REAL," +
+                        "DECKS_ID INTEGER," +
+                        "DUE_AT INTEGER," +
+                        "FOREIGN KEY (DECKS_ID) REFERENCES DECKS(ID) ON DELETE CASCADE)");
+        stmt.execute("INSERT INTO CARDS_NEW(ID, REP_NUMBER, EASY_FACTOR, IR_INTERVAL, LAST_REVIEW, DECKS_ID, DUE_AT) " +
+                        "SELECT ID, REP_NUMBER, EASY_FACTOR, IR_INTERVAL, LAST_REVIEW, CAST(DECKS_ID AS INTEGER), " +
+                        "DUE_AT FROM CARDS " +
+                        "WHERE CAST(DECKS_ID AS INTEGER) IN (SELECT ID FROM DECKS) " +
+                        "AND ID IN (SELECT CARDS_TO_MOVES.CARDS_ID FROM CARDS_TO_MOVES " +
+                        "JOIN MOVES ON CARDS_TO_MOVES.MOVES_ID = MOVES.ID)");
+
+        // The new links refer to CARDS_NEW, which the rename below turns into a reference to CARDS.
+        stmt.execute("CREATE TABLE CARDS_TO_MOVES_NEW(" +
+                        "CARDS_ID INTEGER," +
+                        "MOVES_ID INTEGER," +
+                        "FOREIGN KEY (CARDS_ID) REFERENCES CARDS_NEW(ID) ON DELETE CASCADE," +
+                        "FOREIGN KEY (MOVES_ID) REFERENCES MOVES(ID))");
+        stmt.execute("INSERT INTO CARDS_TO_MOVES_NEW(CARDS_ID, MOVES_ID) " +
+                        "SELECT CARDS_ID, MOVES_ID FROM CARDS_TO_MOVES " +
+                        "WHERE CARDS_ID IN (SELECT ID FROM CARDS_NEW) AND MOVES_ID IN (SELECT ID FROM MOVES)");
+
+        // Keep the rows that were not copied, as they were, in side tables without foreign keys.
+        stmt.execute("CREATE TABLE IF NOT EXISTS CARDS_ORPHANED(" +
+                        "ID INTEGER PRIMARY KEY," +
+                        "REP_NUMBER REAL," +
+                        "EASY_FACTOR REAL," +
+                        "IR_INTERVAL REAL," +
+                        "LAST_REVIEW REAL," +
+                        "DECKS_ID TEXT," +
+                        "DUE_AT INTEGER)");
+        int orphanedCards = stmt.executeUpdate("INSERT OR REPLACE INTO CARDS_ORPHANED(" +
+                        "ID, REP_NUMBER, EASY_FACTOR, IR_INTERVAL, LAST_REVIEW, DECKS_ID, DUE_AT) " +
+                        "SELECT ID, REP_NUMBER, EASY_FACTOR, IR_INTERVAL, LAST_REVIEW, DECKS_ID, DUE_AT FROM CARDS " +
+                        "WHERE ID NOT IN (SELECT ID FROM CARDS_NEW)");
+        stmt.execute("CREATE TABLE IF NOT EXISTS CARDS_TO_MOVES_ORPHANED(" +
+                        "CARDS_ID INTEGER," +
+                        "MOVES_ID INTEGER)");
+        int orphanedLinks = stmt.executeUpdate("INSERT INTO CARDS_TO_MOVES_ORPHANED(CARDS_ID, MOVES_ID) " +
+                        "SELECT CARDS_ID, MOVES_ID FROM CARDS_TO_MOVES " +
+                        "WHERE NOT IFNULL(CARDS_ID IN (SELECT ID FROM CARDS_NEW) " +
+                        "AND MOVES_ID IN (SELECT ID FROM MOVES), 0)");
+        if (orphanedCards > 0 || orphanedLinks > 0) {
+            System.out.println("Schema migration 8 moved " + orphanedCards + " card(s) without a deck or move to " +
+                    "CARDS_ORPHANED and " + orphanedLinks + " broken link(s) to CARDS_TO_MOVES_ORPHANED");
+        }
+
+        // Drop the child table first, so dropping CARDS has nothing to cascade to.
+        stmt.execute("DROP TABLE CARDS_TO_MOVES");
+        stmt.execute("DROP TABLE CARDS");
+        stmt.execute("ALTER TABLE CARDS_NEW RENAME TO CARDS");
+        stmt.execute("ALTER TABLE CARDS_TO_MOVES_NEW RENAME TO CARDS_TO_MOVES");
+
+        // Dropping the tables dropped their indexes and triggers. The index on CARDS_TO_MOVES(CARDS_ID, ...) is also
+        // what the cascade uses to find a card's links.
+        SchemaMigrator.createJoinIndexes(stmt);
+        SchemaMigrator.addDueAt(stmt);
+        SchemaMigrator.addCardInsertView(stmt);
+    }
+
+    /**
+     * Migration 9: an index on CARDS(DECKS_ID). SQLite adds the card ID to the end of every index, so this index is in
+     * effect on (DECKS_ID, ID), which lets the deck builder read a deck's cards a page at a time by a range of IDs, and
+     * list every ID of a deck in order without sorting.
+     */
+    private static void addCardPageIndex(Statement stmt) throws SQLException {
+        stmt.execute("CREATE INDEX IF NOT EXISTS CARDS_DECKS_IDX ON CARDS(DECKS_ID)");
+    }
+
+    /**
+     * Links lines stored one row per move, as in moves.csv, into the opening tree. Each move's parent is the move
+     * before it in the same line, and each line's leaf is its last move. Rows and lines that are already linked are
+     * left alone, so this can be run again after every CSV import.
+     * @param stmt Statement used to run the updates.
+     * @throws SQLException If the updates cannot be executed, throw an exception.
+     */
+    static void linkLines(Statement stmt) throws SQLException {
+        stmt.execute("UPDATE MOVES SET PARENT_ID = (" +
+                        "SELECT PREVIOUS.ID FROM MOVES AS PREVIOUS " +
+                        "WHERE PREVIOUS.LINES_ID = MOVES.LINES_ID " +
+                        "AND PREVIOUS.ORDER_IN_LINE = MOVES.ORDER_IN_LINE - 1) " +
+                        "WHERE PARENT_ID IS NULL AND ORDER_IN_LINE > 1");
+        stmt.execute("UPDATE LINES SET LEAF_MOVES_ID = (" +
+                        "SELECT MOVES.ID FROM MOVES WHERE MOVES.LINES_ID = LINES.ID " +
+                        "ORDER BY MOVES.ORDER_IN_LINE DESC LIMIT 1) " +
+                        "WHERE LEAF_MOVES_ID IS NULL");
+    }
+}
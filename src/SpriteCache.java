@@ -0,0 +1,80 @@
+import javax.swing.ImageIcon;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * This class holds the twelve piece images used to draw the board. Each image is read from the img directory and
+ * decoded once, the first time it is needed. The decoded images are then scaled to the current square size and kept,
+ * so repainting a position does not read any files or create any images. The scaled images are only rebuilt when the
+ * square size changes, which happens when the board is resized.
+ */
+public final class SpriteCache {
+    // The twelve pieces in FEN notation. Upper-case letters are white pieces and lower-case letters are black pieces.
+    // The position of a letter in this string is the index of its image in the arrays below, and is the same as the
+    // piece index used by Position.
+    public static final String PIECES = Position.PIECE_CHARS;
+
+    // Decoded images at their original resolution, indexed like PIECES.
+    private static BufferedImage[] originals;
+
+    // Images scaled to the current square size, indexed like PIECES.
+    private static final ImageIcon[] scaled = new ImageIcon[PIECES.length()];
+    private static int scaledWidth = -1;
+    private static int scaledHeight = -1;
+
+    private SpriteCache() {}
+
+    /**
+     * Returns the image for a piece, scaled to the given square size.
+     * @param piece The index of the piece, as used by Position.
+     * @param width Width of a square in pixels.
+     * @param height Height of a square in pixels.
+     * @return An ImageIcon of the piece. The same object is returned until the square size changes.
+     * @throws NoSuchFieldException If the piece has no image in the img directory.
+     */
+    public static synchronized ImageIcon get(int piece, int width, int height) throws NoSuchFieldException {
+        // Rescale the whole set at once, as a new size means the board was resized and every piece will be needed.
+        if (width != scaledWidth || height != scaledHeight) { SpriteCache.rescale(width, height); }
+        return scaled[piece];
+    }
+
+    // Reads and decodes all twelve images. The Piece subclasses decide which file belongs to each piece.
+    private static void decode() throws NoSuchFieldException {
+        Metrics.Probe probe = Metrics.start(Metrics.Kind.IMAGE, "sprites.decode");
+        BufferedImage[] images = new BufferedImage[PIECES.length()];
+        for (int i = 0; i < images.length; i++) {
+            // ImageIcon waits until the file has been fully loaded before returning.
+            Image image = Piece.fromFEN(PIECES.charAt(i), 0).getImage().getImage();
+            images[i] = SpriteCache.draw(image, image.getWidth(null), image.getHeight(null));
+        }
+        originals = images;
+        probe.stop();
+    }
+
+    // Scales every piece to the given square size.
+    private static void rescale(int width, int height) throws NoSuchFieldException {
+        if (originals == null) { SpriteCache.decode(); }
+        Metrics.Probe probe = Metrics.start(Metrics.Kind.IMAGE, "sprites.rescale");
+        for (int i = 0; i < scaled.length; i++) {
+            scaled[i] = new ImageIcon(SpriteCache.draw(originals[i], width, height));
+        }
+        scaledWidth = width;
+        scaledHeight = height;
+        probe.stop();
+    }
+
+    // Draws an image onto a new translucent image of the given size, scaling it smoothly.
+    private static BufferedImage draw(Image image, int width, int height) {
+        BufferedImage result = new BufferedImage(Math.max(width, 1), Math.max(height, 1),
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = result.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.drawImage(image, 0, 0, result.getWidth(), result.getHeight(), null);
+        g.dispose();
+        return result;
+    }
+}
@@ -0,0 +1,152 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps the prepared statements of one connection open for as long as the connection is, so each query is
+ * parsed by SQLite once instead of every time it runs. Statements are looked up by their SQL text. Callers must not
+ * close a statement they get from the cache, but should close its ResultSets as usual.
+ *
+ * There is one cache per connection, found with StatementCache.of. A connection is only ever used by one thread at a
+ * time (the database thread for the writer, or the thread that has borrowed a reader), so a cache needs no locking of
+ * its own. The hit, miss, and open statement counts are kept for every cache together.
+ */
+public final class StatementCache {
+    // The most statements kept open for one connection. The program only has a few dozen distinct queries, so this is
+    // only reached if SQL is built with values in it, in which case the least recently used statement is closed.
+    public static final int MAX_STATEMENTS = 64;
+
+    // The cache of every connection that has used one.
+    private static final Map<Connection, StatementCache> caches = new IdentityHashMap<>();
+
+    // Counts for every cache together.
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong open = new AtomicLong();
+
+    private final Connection conn;
+
+    // Open statements, by SQL text, in order of last use.
+    private final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    private StatementCache(Connection newConn) { conn = newConn; }
+
+    /**
+     * @param conn A connection.
+     * @return The statement cache of the connection, which is created the first time it is asked for.
+     */
+    public static StatementCache of(Connection conn) {
+        synchronized (caches) {
+            return caches.computeIfAbsent(conn, StatementCache::new);
+        }
+    }
+
+    /**
+     * Closes every statement cached for a connection and forgets the cache. This should be called before the
+     * connection is closed.
+     * @param conn A connection.
+     */
+    public static void release(Connection conn) {
+        StatementCache cache;
+        synchronized (caches) { cache = caches.remove(conn); }
+        if (cache != null) { cache.clear(); }
+    }
+
+    /**
+     * Returns the prepared statement for a query, preparing it if this connection has not run the query before. Any
+     * parameters and batched rows left over from the last use are cleared.
+     * @param sql The query.
+     * @return The statement, which must not be closed.
+     * @throws SQLException If the query cannot be prepared, throw an exception.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        return this.prepare(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Returns the prepared statement for an INSERT whose generated keys are read afterwards with getGeneratedKeys.
+     * @param sql The query.
+     * @return The statement, which must not be closed.
+     * @throws SQLException If the query cannot be prepared, throw an exception.
+     */
+    public PreparedStatement prepareReturningKeys(String sql) throws SQLException {
+        return this.prepare(sql, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    private PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        // The same SQL prepared with and without generated keys are two different statements.
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "KEYS:" + sql : sql;
+        PreparedStatement stmt = statements.get(key);
+        if (stmt != null) {
+            hits.incrementAndGet();
+            stmt.clearParameters();
+            stmt.clearBatch();
+            return stmt;
+        }
+
+        misses.incrementAndGet();
+        stmt = conn.prepareStatement(sql, autoGeneratedKeys);
+        statements.put(key, stmt);
+        open.incrementAndGet();
+
+        if (statements.size() > MAX_STATEMENTS) {
+            Iterator<PreparedStatement> eldest = statements.values().iterator();
+            StatementCache.close(eldest.next());
+            eldest.remove();
+        }
+        return stmt;
+    }
+
+    /**
+     * @return The number of statements open in this cache.
+     */
+    public int size() { return statements.size(); }
+
+    // Closes every statement in this cache.
+    private void clear() {
+        for (PreparedStatement stmt : statements.values()) { StatementCache.close(stmt); }
+        statements.clear();
+    }
+
+    private static void close(PreparedStatement stmt) {
+        open.decrementAndGet();
+        try {
+            stmt.close();
+        } catch (SQLException ex) {
+            System.out.println("StatementCache encountered an error");
+            System.out.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * @return The number of times a statement was found in a cache, across every connection.
+     */
+    public static long getHitCount() { return hits.get(); }
+
+    /**
+     * @return The number of times a statement had to be prepared, across every connection.
+     */
+    public static long getMissCount() { return misses.get(); }
+
+    /**
+     * @return The number of native statements currently held open by the caches of every connection.
+     */
+    public static long getOpenCount() { return open.get(); }
+
+    /**
+     * @return A one-line summary of the counts, such as "Statement cache: 120 hits, 9 misses (93% hit rate), 9 open".
+     */
+    public static String summary() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        long rate = total == 0 ? 0 : Math.round(100.0 * hitCount / total);
+        return "Statement cache: " + hitCount + " hits, " + misses.get() + " misses (" + rate + "% hit rate), " +
+                open.get() + " open";
+    }
+}
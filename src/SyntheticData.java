@@ -0,0 +1,536 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * This class fills a database with synthetic decks and cards, so the program can be benchmarked and tested at sizes
+ * no real user has yet. The same options and seed always produce the same rows. Like ReadCSV, this is a development
+ * tool and is not used by the application itself.
+ *
+ * The lines form an opening tree: most lines branch off a move of an earlier line, as real openings do, and every move
+ * is a legal move with its FEN strings and Zobrist keys. A line that picks a move its branch point already has follows
+ * the existing move, as ReadCSV does, so no move has two children for the same move. Each deck has one card for every
+ * move, except that a move between the same two positions as an earlier move, reached through a transposition, gets
+ * no second card. A share of the cards are new; the rest have a review history that is simulated with the program's own
+ * SuperMemo2 implementation, from a first review at a random time in the past up to a reference time, so their
+ * repetition numbers, easiness factors, intervals, and due times are spread as they would be after months of use.
+ * The reference time is fixed rather than taken from the clock, so the same options and seed give the same
+ * LAST_REVIEW and DUE_AT values on every run. Cards are due relative to the reference time, so a database meant to be
+ * reviewed in the program should be generated with today's date.
+ *
+ * Every row is inserted in batches in one transaction. The indexes and triggers of the tables being filled are dropped
+ * first and created again at the end, as building an index once is much faster than updating it for every row, and
+ * the values the triggers would fill in are written directly. Run it with
+ * "java SyntheticData [database file] [decks] [cards per deck] [seed] [reference date]", such as
+ * "java SyntheticData load.db 10 100000 1 2022-10-18". The reference date is midnight UTC of a yyyy-MM-dd date, and
+ * is 2022-10-18 if not given.
+ */
+public final class SyntheticData {
+    /**
+     * The size and shape of the data to generate.
+     */
+    public static final class Options {
+        // Number of decks to create.
+        private int decks = 1;
+
+        // Number of cards in each deck. Every deck has a card for each distinct move of the tree, so the decks overlap.
+        private int cardsPerDeck = 1000;
+
+        // Share of the cards that have never been reviewed.
+        private double newFraction = 0.3;
+
+        // Longest line, in plies. Lines are between half this and this long.
+        private int maxPlies = 16;
+
+        // How many days before the reference time the oldest first review can be.
+        private int historyDays = 180;
+
+        // Seed for every random choice.
+        private long seed = 1;
+
+        // UNIX time-stamp that the review histories end at, in place of the current time.
+        private long referenceTime = DEFAULT_REFERENCE_TIME;
+
+        // Setters for the options, each of which is checked.
+        public void setDecks(int value) {
+            if (value < 1) { throw new IllegalArgumentException("There must be at least one deck!"); }
+            decks = value;
+        }
+        public void setCardsPerDeck(int value) {
+            if (value < 1) { throw new IllegalArgumentException("There must be at least one card per deck!"); }
+            cardsPerDeck = value;
+        }
+        public void setNewFraction(double value) {
+            if (value < 0 || value > 1) { throw new IllegalArgumentException("The new fraction must be from 0 to 1!"); }
+            newFraction = value;
+        }
+        public void setMaxPlies(int value) {
+            if (value < 2) { throw new IllegalArgumentException("Lines must be at least two plies long!"); }
+            maxPlies = value;
+        }
+        public void setHistoryDays(int value) {
+            if (value < 1) { throw new IllegalArgumentException("The history must be at least one day long!"); }
+            historyDays = value;
+        }
+        public void setSeed(long value) { seed = value; }
+        public void setReferenceTime(long value) {
+            if (value < 0) { throw new IllegalArgumentException("The reference time cannot be before 1970!"); }
+            referenceTime = value;
+        }
+
+        // Getters for the options.
+        public int getDecks() { return decks; }
+        public int getCardsPerDeck() { return cardsPerDeck; }
+        public double getNewFraction() { return newFraction; }
+        public int getMaxPlies() { return maxPlies; }
+        public int getHistoryDays() { return historyDays; }
+        public long getSeed() { return seed; }
+        public long getReferenceTime() { return referenceTime; }
+    }
+
+    // Number of rows sent to the database in one batch.
+    private static final int BATCH_SIZE = 10000;
+
+    // Tables whose indexes and triggers are dropped while they are filled.
+    private static final String[] BULK_TABLES = {"MOVES", "LINES", "CARDS", "CARDS_TO_MOVES"};
+
+    // Share of the lines that start from the starting position rather than branching off an earlier line.
+    private static final double NEW_ROOT_FRACTION = 0.05;
+
+    // Relative frequency of each self-rating from 0 to 5. Most reviews are passed, and a few are forgotten.
+    private static final int[] GRADE_WEIGHTS = {2, 3, 5, 20, 45, 25};
+
+    private static final long MS_PER_DAY = 86400000L;
+
+    // Reference time used unless another is given: midnight UTC on 2022-10-18.
+    public static final long DEFAULT_REFERENCE_TIME = 1666051200000L;
+
+    private final Options options;
+    private final Random random;
+    private final Connection conn;
+
+    // The opening tree as it is built: each move's parent (0 for a first move), its encoded move, its ply, its first
+    // child and next sibling (0 for none), and whether it gets a card. Move n of the tree is at index n - 1, and has
+    // the ID firstMoveId + n - 1. The arrays grow when the tree needs more moves than there are cards in a deck.
+    private int[] parents;
+    private int[] encoded;
+    private byte[] plies;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private boolean[] carded;
+    private int moveCount = 0;
+
+    // The first of the first moves, whose siblings are the other first moves.
+    private int firstRoot = 0;
+
+    // The positions before and after every move that has a card, and the number of those moves.
+    private final Set<KeyPair> cardedMoves = new HashSet<>();
+    private int cardCount = 0;
+
+    private SyntheticData(Connection newConn, Options newOptions) {
+        conn = newConn;
+        options = newOptions;
+        random = new Random(options.getSeed());
+        parents = new int[options.getCardsPerDeck()];
+        encoded = new int[options.getCardsPerDeck()];
+        plies = new byte[options.getCardsPerDeck()];
+        firstChildren = new int[options.getCardsPerDeck()];
+        nextSiblings = new int[options.getCardsPerDeck()];
+        carded = new boolean[options.getCardsPerDeck()];
+    }
+
+    /**
+     * Adds synthetic lines, moves, decks, and cards to a database. New rows are given IDs above the highest ones in
+     * the database, so existing rows are left alone. The indexes and triggers of the tables that are filled are
+     * dropped for the load and created again before the transaction is committed at the end.
+     * @param conn Connection to the database, with auto commit turned off. Foreign keys should not be enforced, as
+     * moves are inserted before their lines.
+     * @param options The size and shape of the data.
+     * @throws SQLException If the rows cannot be inserted, throw an exception.
+     */
+    public static void generate(Connection conn, Options options) throws SQLException {
+        SyntheticData generator = new SyntheticData(conn, options);
+        try {
+            List<String> schema = SyntheticData.dropIndexes(conn);
+            generator.run();
+            SyntheticData.createIndexes(conn, schema);
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        }
+    }
+
+    private void run() throws SQLException {
+        int firstMoveId = SyntheticData.maxId(conn, "MOVES") + 1;
+        int firstLineId = SyntheticData.maxId(conn, "LINES") + 1;
+        int firstDeckId = SyntheticData.maxId(conn, "DECKS") + 1;
+        int firstCardId = SyntheticData.maxId(conn, "CARDS") + 1;
+
+        this.insertTree(firstMoveId, firstLineId);
+        this.insertDecks(firstDeckId, firstCardId, firstMoveId);
+    }
+
+    // Grows the opening tree one line at a time until it has a move for every card in a deck, inserting the moves and
+    // the lines as it goes. A line follows the existing moves of the tree for as long as it picks them.
+    private void insertTree(int firstMoveId, int firstLineId) throws SQLException {
+        PreparedStatement insertMove = conn.prepareStatement("INSERT INTO MOVES(ID, ORDER_IN_LINE, BEFORE_FEN, " +
+                "AFTER_FEN, LINES_ID, BEFORE_KEY, AFTER_KEY, PARENT_ID) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        PreparedStatement insertLine = conn.prepareStatement("INSERT INTO LINES(ID, NAME, LINE, ECO, LEAF_MOVES_ID) " +
+                "VALUES (?, ?, ?, ?, ?)");
+
+        Position pos = new Position();
+        Position next = new Position();
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int[] path = new int[options.getMaxPlies()];
+        StringBuilder san = new StringBuilder();
+        int lineId = firstLineId;
+
+        while (cardCount < options.getCardsPerDeck()) {
+            // Branch off a random move of an earlier line, or start a new root line.
+            int branch = moveCount == 0 || random.nextDouble() < NEW_ROOT_FRACTION ? 0
+                    : 1 + random.nextInt(moveCount);
+            int length = options.getMaxPlies() / 2 + random.nextInt(options.getMaxPlies() / 2 + 1);
+            if (branch != 0 && plies[branch - 1] >= length) { branch = 0; }
+
+            // Replay the moves from the root to the branch point, which also gives the start of the line's moves.
+            int depth = 0;
+            for (int node = branch; node != 0; node = parents[node - 1]) { path[depth++] = node; }
+            pos.setFEN(Position.START_FEN);
+            san.setLength(0);
+            for (int i = depth - 1; i >= 0; i--) {
+                int move = encoded[path[i] - 1];
+                san.append(MoveGenerator.toSAN(pos, move, moves)).append(' ');
+                pos.makeMove(move);
+            }
+
+            // The FEN string of pos, or null until a move from it is inserted. Each new move starts from the position
+            // the previous one ended in, so its FEN string is only made once.
+            String fen = null;
+            int parent = branch;
+            boolean added = false;
+            for (int ply = depth + 1; ply <= length && cardCount < options.getCardsPerDeck(); ply++) {
+                int count = MoveGenerator.generate(pos, moves);
+                if (count == 0) { break; }
+                int move = moves[random.nextInt(count)];
+                san.append(MoveGenerator.toSAN(pos, move, moves)).append(' ');
+                next.copyFrom(pos);
+                next.makeMove(move);
+
+                // Follow the move if the tree already has it.
+                int child = this.findChild(parent, move);
+                if (child != 0) {
+                    parent = child;
+                    pos.copyFrom(next);
+                    fen = null;
+                    continue;
+                }
+
+                this.addNode(parent, move, ply, pos.getKey(), next.getKey());
+                added = true;
+                int moveId = firstMoveId + moveCount - 1;
+
+                insertMove.setInt(1, moveId);
+                insertMove.setInt(2, ply);
+                if (fen == null) { fen = pos.toFEN(); }
+                String nextFen = next.toFEN();
+                insertMove.setString(3, fen);
+                insertMove.setString(4, nextFen);
+                insertMove.setInt(5, lineId);
+                insertMove.setLong(6, pos.getKey());
+                insertMove.setLong(7, next.getKey());
+                if (parent != 0) {
+                    insertMove.setInt(8, firstMoveId + parent - 1);
+                } else {
+                    insertMove.setNull(8, Types.INTEGER);
+                }
+                SyntheticData.addBatch(insertMove, moveCount);
+
+                parent = moveCount;
+                pos.copyFrom(next);
+                fen = nextFen;
+            }
+
+            // A line that only follows existing moves, or branches from a position with no legal moves, adds nothing.
+            if (!added) { continue; }
+
+            insertLine.setInt(1, lineId);
+            insertLine.setString(2, "Synthetic Opening " + lineId);
+            insertLine.setString(3, san.toString().trim());
+            insertLine.setString(4, String.format("%c%02d", 'A' + random.nextInt(5), random.nextInt(100)));
+            insertLine.setInt(5, firstMoveId + parent - 1);
+            SyntheticData.addBatch(insertLine, lineId);
+            lineId = lineId + 1;
+        }
+
+        insertMove.executeBatch();
+        insertMove.close();
+        insertLine.executeBatch();
+        insertLine.close();
+    }
+
+    // Creates the decks and their cards. Each deck starts at a random move, and takes every move with a card from there
+    // on, so no deck has two cards for the same pair of positions.
+    private void insertDecks(int firstDeckId, int firstCardId, int firstMoveId) throws SQLException {
+        PreparedStatement insertDeck = conn.prepareStatement("INSERT INTO DECKS(ID, NAME) VALUES (?, ?)");
+        PreparedStatement insertCard = conn.prepareStatement("INSERT INTO CARDS(ID, REP_NUMBER, EASY_FACTOR, " +
+                "IR_INTERVAL, LAST_REVIEW, DECKS_ID, DUE_AT) VALUES (?, ?, ?, ?, ?, ?, ?)");
+        PreparedStatement insertLink = conn.prepareStatement("INSERT INTO CARDS_TO_MOVES(CARDS_ID, MOVES_ID) " +
+                "VALUES (?, ?)");
+
+        long now = options.getReferenceTime();
+        double[] card = new double[4];
+        int cardId = firstCardId;
+        for (int d = 0; d < options.getDecks(); d++) {
+            int deckId = firstDeckId + d;
+            insertDeck.setInt(1, deckId);
+            insertDeck.setString(2, "Synthetic Deck " + (d + 1));
+            insertDeck.executeUpdate();
+
+            int offset = random.nextInt(moveCount);
+            for (int i = 0; i < moveCount; i++) {
+                int node = (offset + i) % moveCount;
+                if (!carded[node]) { continue; }
+
+                this.simulate(card, now);
+                insertCard.setInt(1, cardId);
+                insertCard.setInt(2, (int) card[0]);
+                insertCard.setDouble(3, card[1]);
+                insertCard.setDouble(4, card[2]);
+                insertCard.setLong(5, (long) card[3]);
+                insertCard.setInt(6, deckId);
+                // The same value as the CARDS_DUE_AT_INSERT trigger computes.
+                insertCard.setLong(7, (long) (card[3] + card[2] * MS_PER_DAY));
+                SyntheticData.addBatch(insertCard, cardId);
+
+                insertLink.setInt(1, cardId);
+                insertLink.setInt(2, firstMoveId + node);
+                SyntheticData.addBatch(insertLink, cardId);
+                cardId = cardId + 1;
+            }
+        }
+
+        for (PreparedStatement stmt : new PreparedStatement[]{insertCard, insertLink}) {
+            stmt.executeBatch();
+            stmt.close();
+        }
+        insertDeck.close();
+    }
+
+    // Returns the child of a node that plays the given move, or 0 if it has none. Node 0 is the starting position.
+    private int findChild(int parent, int move) {
+        int child = parent != 0 ? firstChildren[parent - 1] : firstRoot;
+        while (child != 0 && encoded[child - 1] != move) { child = nextSiblings[child - 1]; }
+        return child;
+    }
+
+    // Adds a move to the tree as the newest child of its parent. It gets a card unless an earlier move has the same
+    // positions before and after it.
+    private void addNode(int parent, int move, int ply, long beforeKey, long afterKey) {
+        if (moveCount == parents.length) {
+            int capacity = parents.length + parents.length / 2 + 1;
+            parents = Arrays.copyOf(parents, capacity);
+            encoded = Arrays.copyOf(encoded, capacity);
+            plies = Arrays.copyOf(plies, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            carded = Arrays.copyOf(carded, capacity);
+        }
+
+        parents[moveCount] = parent;
+        encoded[moveCount] = move;
+        plies[moveCount] = (byte) ply;
+        nextSiblings[moveCount] = parent != 0 ? firstChildren[parent - 1] : firstRoot;
+        carded[moveCount] = cardedMoves.add(new KeyPair(beforeKey, afterKey));
+        if (carded[moveCount]) { cardCount = cardCount + 1; }
+        moveCount = moveCount + 1;
+        if (parent != 0) {
+            firstChildren[parent - 1] = moveCount;
+        } else {
+            firstRoot = moveCount;
+        }
+    }
+
+    /**
+     * Makes up the review history of one card.
+     * @param card Receives the card's REP_NUMBER, EASY_FACTOR, IR_INTERVAL, and LAST_REVIEW, in that order.
+     * @param now The reference time, as a UNIX time-stamp.
+     */
+    private void simulate(double[] card, long now) {
+        // A new card was added at some point in the last month and has never been reviewed.
+        if (random.nextDouble() < options.getNewFraction()) {
+            card[0] = 0;
+            card[1] = 2.5;
+            card[2] = 0;
+            card[3] = now - (long) (random.nextDouble() * 30 * MS_PER_DAY);
+            return;
+        }
+
+        // Review the card from a random day in the past until the reference time. The user comes back to a card up to a
+        // few days after it is due, so some cards are overdue then, and the rest are due at different times after it.
+        long time = now - (long) ((0.01 + random.nextDouble()) * options.getHistoryDays() * MS_PER_DAY);
+        int repNum = 0;
+        double easFactor = 2.5;
+        double interval = 0;
+        long lastReview;
+        do {
+            double[] result = ReviewEngine.superMemoAlgo(this.randomGrade(), repNum, easFactor, interval);
+            repNum = (int) result[0];
+            easFactor = result[1];
+            interval = result[2];
+            lastReview = time;
+            time = lastReview + (long) ((interval + random.nextDouble() * 3) * MS_PER_DAY);
+        } while (time < now);
+
+        card[0] = repNum;
+        card[1] = easFactor;
+        card[2] = interval;
+        card[3] = lastReview;
+    }
+
+    // Picks a self-rating according to GRADE_WEIGHTS.
+    private int randomGrade() {
+        int pick = random.nextInt(Arrays.stream(GRADE_WEIGHTS).sum());
+        int grade = 0;
+        while (pick >= GRADE_WEIGHTS[grade]) {
+            pick = pick - GRADE_WEIGHTS[grade];
+            grade = grade + 1;
+        }
+        return grade;
+    }
+
+    // Adds the current parameters to a statement's batch, and sends the batch every BATCH_SIZE rows.
+    private static void addBatch(PreparedStatement stmt, int row) throws SQLException {
+        stmt.addBatch();
+        if (row % BATCH_SIZE == 0) { stmt.executeBatch(); }
+    }
+
+    // Drops the indexes and triggers of BULK_TABLES, and returns the statements that create them again. Indexes SQLite
+    // made for constraints have no statement and are kept.
+    private static List<String> dropIndexes(Connection conn) throws SQLException {
+        List<String> schema = new ArrayList<>();
+        List<String> drops = new ArrayList<>();
+        PreparedStatement find = conn.prepareStatement("SELECT type, name, sql FROM sqlite_master " +
+                "WHERE type IN ('index', 'trigger') AND tbl_name = ? AND sql IS NOT NULL");
+        for (String table : BULK_TABLES) {
+            find.setString(1, table);
+            ResultSet rs = find.executeQuery();
+            while (rs.next()) {
+                schema.add(rs.getString(3));
+                drops.add("DROP " + rs.getString(1).toUpperCase() + " " + rs.getString(2));
+            }
+            rs.close();
+        }
+        find.close();
+
+        Statement stmt = conn.createStatement();
+        for (String drop : drops) { stmt.execute(drop); }
+        stmt.close();
+        return schema;
+    }
+
+    // Creates the indexes and triggers that dropIndexes dropped, and fills the line search index, whose trigger did
+    // not see the new lines.
+    private static void createIndexes(Connection conn, List<String> schema) throws SQLException {
+        Statement stmt = conn.createStatement();
+        for (String sql : schema) { stmt.execute(sql); }
+        stmt.execute("INSERT INTO LINES_FTS(LINES_FTS) VALUES ('rebuild')");
+        stmt.close();
+    }
+
+    // Returns the highest ID in a table, or 0 if it is empty.
+    private static int maxId(Connection conn, String table) throws SQLException {
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT MAX(ID) FROM " + table);
+        int max = rs.next() ? rs.getInt(1) : 0;
+        rs.close();
+        stmt.close();
+        return max;
+    }
+
+    /**
+     * Generates synthetic data into a database file, creating it if it does not exist.
+     * @param args The database file, and optionally the number of decks, the number of cards per deck, the seed, and
+     * the reference date.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 5) {
+            System.out.println("Usage: java SyntheticData <database file> [decks] [cards per deck] [seed] " +
+                    "[reference date]");
+            return;
+        }
+
+        Options options = new Options();
+        if (args.length > 1) { options.setDecks(Integer.parseInt(args[1])); }
+        if (args.length > 2) { options.setCardsPerDeck(Integer.parseInt(args[2])); }
+        if (args.length > 3) { options.setSeed(Long.parseLong(args[3])); }
+        if (args.length > 4) {
+            options.setReferenceTime(LocalDate.parse(args[4]).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli());
+        }
+
+        try {
+            Class.forName("org.sqlite.JDBC");
+            long start = System.nanoTime();
+            SyntheticData.generateFile(args[0], options);
+            System.out.printf("Generated %d deck(s) of %d cards in %.1f s%n", options.getDecks(),
+                    options.getCardsPerDeck(), (System.nanoTime() - start) / 1e9);
+        } catch (ClassNotFoundException | SQLException ex) {
+            System.out.println("SyntheticData encountered an error");
+            System.out.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * Opens a database file, brings its schema up to date, and generates synthetic data into it.
+     * @param file The database file, which is created if it does not exist.
+     * @param options The size and shape of the data.
+     * @throws SQLException If the database cannot be opened or written, throw an exception.
+     */
+    public static void generateFile(String file, Options options) throws SQLException {
+        // Only the writer is needed. Moves are inserted before their lines, so foreign keys are not enforced, and a
+        // crash only loses a file that can be generated again, so nothing waits for the disk.
+        ConnectionManager.Settings settings = ConnectionManager.Settings.fromSystemProperties();
+        settings.setReaders(0);
+        settings.setForeignKeys(false);
+        settings.setSynchronous("OFF");
+        try (ConnectionManager manager = new ConnectionManager("jdbc:sqlite:" + file, settings)) {
+            SchemaMigrator.migrate(manager.getWriter());
+            SyntheticData.generate(manager.getWriter(), options);
+        }
+    }
+
+    /**
+     * The Zobrist keys of the positions before and after a move, which identify the move for a card.
+     */
+    private static final class KeyPair {
+        private final long beforeKey;
+        private final long afterKey;
+
+        private KeyPair(long beforeKey, long afterKey) {
+            this.beforeKey = beforeKey;
+            this.afterKey = afterKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof KeyPair)) { return false; }
+            KeyPair other = (KeyPair) o;
+            return beforeKey == other.beforeKey && afterKey == other.afterKey;
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(beforeKey, afterKey); }
+    }
+}
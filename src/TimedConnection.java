@@ -0,0 +1,160 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class wraps a JDBC connection so that every statement it runs, and every commit and rollback, is timed with
+ * Metrics. The wrapper is a dynamic proxy: calls are passed to the real connection unchanged, and the statements it
+ * prepares or creates are wrapped the same way.
+ *
+ * A prepared statement is recorded under its SQL text, and a plain statement under the SQL passed to execute. The time
+ * of a query is the time to run it to its first row; reading the rest of the ResultSet is not included.
+ *
+ * A statement that takes longer than the slow query threshold is printed together with the parameters it was run with
+ * and its EXPLAIN QUERY PLAN, so a full table scan shows up in the log the first time it is slow. A batch is only
+ * printed if it is slow per row, so a large batch of fast inserts is not reported, and its parameters are those of the
+ * last row.
+ */
+public final class TimedConnection implements InvocationHandler {
+    // Longest parameter value printed in the slow query log. The JSON arrays of IDs can be very long.
+    private static final int MAX_VALUE_LENGTH = 200;
+
+    private final Connection conn;
+    private final long slowNanos;
+
+    private TimedConnection(Connection newConn, long slowMillis) {
+        conn = newConn;
+        slowNanos = slowMillis < 0 ? Long.MAX_VALUE : slowMillis * 1000000L;
+    }
+
+    /**
+     * @param conn A connection.
+     * @param slowMillis Statements that take longer than this many milliseconds are logged. A negative number turns
+     * the log off.
+     * @return A connection that times everything it runs and otherwise behaves exactly like the one given.
+     */
+    public static Connection wrap(Connection conn, long slowMillis) {
+        return (Connection) Proxy.newProxyInstance(TimedConnection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new TimedConnection(conn, slowMillis));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "commit":
+            case "rollback":
+                Metrics.Probe probe = Metrics.start(Metrics.Kind.COMMIT, method.getName());
+                try {
+                    return TimedConnection.call(conn, method, args);
+                } finally {
+                    probe.stop();
+                }
+            case "prepareStatement":
+                PreparedStatement prepared = (PreparedStatement) TimedConnection.call(conn, method, args);
+                return this.wrapStatement(PreparedStatement.class, prepared, (String) args[0]);
+            case "createStatement":
+                Statement created = (Statement) TimedConnection.call(conn, method, args);
+                return this.wrapStatement(Statement.class, created, null);
+            default:
+                return TimedConnection.call(conn, method, args);
+        }
+    }
+
+    // Wraps a statement so each execution is timed. The SQL of a prepared statement is known up front; for a plain
+    // statement it is the first argument of each execute call. The parameters of a prepared statement are copied as
+    // they are set, so they can be logged.
+    private <T extends Statement> T wrapStatement(Class<T> type, T stmt, String preparedSql) {
+        List<Object> params = new ArrayList<>();
+
+        // Number of rows added to the batch since it was last sent.
+        int[] batchRows = new int[1];
+
+        // The name a prepared statement is recorded under is built once here, not on every execute.
+        String preparedName = preparedSql != null ? "sql " + preparedSql : null;
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            if (preparedSql != null && name.startsWith("set") && args != null && args.length >= 2
+                    && args[0] instanceof Integer) {
+                // Parameters are numbered from 1. The second argument of setNull is a type, not a value.
+                int index = (Integer) args[0];
+                while (params.size() < index) { params.add(null); }
+                params.set(index - 1, name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                params.clear();
+            } else if (name.equals("addBatch")) {
+                batchRows[0] = batchRows[0] + 1;
+            } else if (name.equals("clearBatch")) {
+                batchRows[0] = 0;
+            }
+            if (!name.startsWith("execute")) { return TimedConnection.call(stmt, method, args); }
+
+            // executeBatch and executeLargeBatch send every row added since the last batch.
+            int rows = 1;
+            if (name.endsWith("Batch")) {
+                rows = Math.max(batchRows[0], 1);
+                batchRows[0] = 0;
+            }
+
+            String sql = preparedSql != null ? preparedSql : args != null && args.length > 0 ? (String) args[0] : "";
+            Metrics.Probe probe = Metrics.start(Metrics.Kind.SQL, preparedName != null ? preparedName : "sql " + sql);
+            long start = System.nanoTime();
+            try {
+                return TimedConnection.call(stmt, method, args);
+            } finally {
+                probe.stop();
+                long elapsed = System.nanoTime() - start;
+                if (elapsed / rows > slowNanos && !sql.isEmpty()) { this.logSlow(sql, params, elapsed, rows); }
+            }
+        };
+        Object wrapped = Proxy.newProxyInstance(TimedConnection.class.getClassLoader(), new Class<?>[]{type}, handler);
+        return type.cast(wrapped);
+    }
+
+    // Prints a slow statement with its parameters and query plan, if it has one. The plan is read on the real
+    // connection, on the thread that ran the statement, so reading it is not timed or logged itself.
+    private void logSlow(String sql, List<Object> params, long nanos, int rows) {
+        Metrics.increment("slow queries");
+        StringBuilder out = new StringBuilder();
+        String text = sql.replaceAll("\\s+", " ").trim();
+        if (rows > 1) {
+            out.append(String.format("Slow batch (%d ms for %d rows): %s%n", nanos / 1000000, rows, text));
+        } else {
+            out.append(String.format("Slow query (%d ms): %s%n", nanos / 1000000, text));
+        }
+        if (!params.isEmpty()) { out.append("    Parameters: ").append(TimedConnection.format(params)).append('\n'); }
+        try {
+            for (String line : QueryPlans.explain(conn, sql, params.toArray())) {
+                out.append("    ").append(line).append('\n');
+            }
+        } catch (Exception ex) {
+            out.append("    No query plan: ").append(ex.getMessage()).append('\n');
+        }
+        System.out.print(out);
+    }
+
+    // Formats parameters as a list, quoting strings and shortening long values.
+    private static String format(List<Object> params) {
+        List<String> values = new ArrayList<>();
+        for (Object param : params) {
+            String value = param instanceof String ? "'" + param + "'" : String.valueOf(param);
+            if (value.length() > MAX_VALUE_LENGTH) { value = value.substring(0, MAX_VALUE_LENGTH - 3) + "..."; }
+            values.add(value);
+        }
+        return values.toString();
+    }
+
+    // Calls a method on the real object, throwing whatever it throws rather than the reflection wrapper.
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * This class holds the random numbers used to compute Zobrist keys. The key of a position is the exclusive or of one
+ * number for each piece on each square, one for the castling rights, one for the file of the en passant square, and
+ * one more if black is to move. Position keeps its key up to date as pieces are put on and removed from the board, so
+ * reading the key of a position costs nothing.
+ *
+ * The move clocks are not part of the key, so two positions that differ only in how they were reached get the same
+ * key. The en passant file is only included when a pawn can actually capture en passant, as otherwise the position is
+ * the same as one without an en passant square.
+ *
+ * Keys are stored in the MOVES table, so the numbers below must never change. They are generated with the SplitMix64
+ * algorithm from a fixed seed, which produces the same numbers on every platform and Java version.
+ */
+public final class Zobrist {
+    // One number for each piece on each square, indexed by piece and then by square.
+    static final long[][] PIECES = new long[12][64];
+
+    // One number for each combination of castling rights, indexed by the castling bits of Position.
+    static final long[] CASTLING = new long[16];
+
+    // One number for each file of the en passant square.
+    static final long[] EN_PASSANT = new long[8];
+
+    // Included when black is to move.
+    static final long BLACK_TO_MOVE;
+
+    static {
+        long[] state = {0x2B7E_1516_28AE_D2A6L};
+        for (int piece = 0; piece < 12; piece++) {
+            for (int sq = 0; sq < 64; sq++) { PIECES[piece][sq] = Zobrist.next(state); }
+        }
+
+        // No castling rights and no en passant square both hash to 0, so a bare board hashes to its pieces alone.
+        for (int i = 1; i < 16; i++) { CASTLING[i] = Zobrist.next(state); }
+        for (int file = 0; file < 8; file++) { EN_PASSANT[file] = Zobrist.next(state); }
+        BLACK_TO_MOVE = Zobrist.next(state);
+    }
+
+    private Zobrist() {}
+
+    /**
+     * Computes the key of a position described by a FEN string.
+     * @param fen The position in standard FEN chess notation.
+     * @param scratch A position that is overwritten while computing the key, so that no objects are created.
+     * @return The Zobrist key of the position.
+     * @throws IllegalArgumentException If the string is not a valid FEN string.
+     */
+    public static long key(CharSequence fen, Position scratch) {
+        scratch.setFEN(fen);
+        return scratch.getKey();
+    }
+
+    // Returns the next number of a SplitMix64 sequence and advances its state.
+    private static long next(long[] state) {
+        long z = state[0] += 0x9E37_79B9_7F4A_7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58_476D_1CE4_E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D0_49BB_1331_11EBL;
+        return z ^ (z >>> 31);
+    }
+}